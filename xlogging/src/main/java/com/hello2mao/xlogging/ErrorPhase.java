@@ -0,0 +1,17 @@
+package com.hello2mao.xlogging;
+
+/**
+ * Where an error happened in a transaction
+ */
+public enum ErrorPhase {
+    NONE,
+    CONNECT,
+    TLS_HANDSHAKE,
+    // writing request
+    REQUEST,
+    // reading response
+    RESPONSE,
+    CLOSE,
+    // other socket calls, e.g. getInputStream()/setOption()
+    OTHER
+}
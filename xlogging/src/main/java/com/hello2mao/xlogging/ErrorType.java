@@ -0,0 +1,28 @@
+package com.hello2mao.xlogging;
+
+/**
+ * Error classified at capture time, stable across locales and Android versions
+ */
+public enum ErrorType {
+    NONE,
+    // host name could not be resolved
+    DNS,
+    CONNECT_REFUSED,
+    CONNECT_TIMEOUT,
+    // no route to host, network unreachable
+    NETWORK_UNREACHABLE,
+    READ_TIMEOUT,
+    WRITE_TIMEOUT,
+    TLS_HANDSHAKE,
+    // certificate or host name not trusted
+    TLS_CERTIFICATE,
+    // RST from peer
+    CONNECTION_RESET,
+    // EOF or broken pipe before the message finished
+    CONNECTION_CLOSED,
+    // socket closed or thread interrupted locally
+    CANCELLED,
+    // HTTP/2 RST_STREAM
+    STREAM_RESET,
+    UNKNOWN
+}
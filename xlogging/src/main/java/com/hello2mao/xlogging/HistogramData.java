@@ -0,0 +1,49 @@
+package com.hello2mao.xlogging;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of a histogram, time unit is ms
+ */
+public class HistogramData {
+
+    // counts[i] is the number of values <= bucketBounds[i],
+    // the last count is the number of values > the last bound
+    private long[] bucketBounds;
+    private long[] counts;
+    private long count;
+    private long sum;
+
+    public HistogramData(long[] bucketBounds, long[] counts, long count, long sum) {
+        this.bucketBounds = bucketBounds;
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public long[] getBucketBounds() {
+        return bucketBounds;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMean() {
+        return count == 0 ? -1L : sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + getMean() + " ms, bounds="
+                + Arrays.toString(bucketBounds) + ", counts=" + Arrays.toString(counts);
+    }
+}
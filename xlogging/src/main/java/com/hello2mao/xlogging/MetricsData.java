@@ -0,0 +1,194 @@
+package com.hello2mao.xlogging;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Snapshot of aggregated metrics
+ */
+public class MetricsData {
+
+    private HistogramData sslHandshakeFull;
+    private HistogramData sslHandshakeResumed;
+    private long downlinkBandwidth; // bytes/s
+    // bytes of parsed HTTP messages, headers included
+    private long httpBytesSent;
+    private long httpBytesReceived;
+    private long httpsBytesSent;
+    private long httpsBytesReceived;
+    // transactionsByStatusClass[i] counts status codes ixx, [0] counts failed transactions
+    private long[] transactionsByStatusClass;
+    // streaming responses, e.g. SSE, not counted in transactionsByStatusClass
+    private long streamingTransactions;
+    // WebSocket interval records, not counted in transactionsByStatusClass
+    private long webSocketIntervals;
+    // TLS connections on plain sockets, only bytes counted, not in transactionsByStatusClass
+    private long tlsConnections;
+    private long connectFailures;
+    private long sslFailures;
+    private Map<ErrorType, Long> failuresByType;
+    private Map<String, Long> failuresByHost;
+    // Server-Timing durations by metric name, and the rest of the response wait time
+    private Map<String, HistogramData> serverTimings;
+    private HistogramData serverTimingNetwork;
+
+    public HistogramData getSslHandshakeFull() {
+        return sslHandshakeFull;
+    }
+
+    public void setSslHandshakeFull(HistogramData sslHandshakeFull) {
+        this.sslHandshakeFull = sslHandshakeFull;
+    }
+
+    public HistogramData getSslHandshakeResumed() {
+        return sslHandshakeResumed;
+    }
+
+    public void setSslHandshakeResumed(HistogramData sslHandshakeResumed) {
+        this.sslHandshakeResumed = sslHandshakeResumed;
+    }
+
+    public long getDownlinkBandwidth() {
+        return downlinkBandwidth;
+    }
+
+    public void setDownlinkBandwidth(long downlinkBandwidth) {
+        this.downlinkBandwidth = downlinkBandwidth;
+    }
+
+    public long getHttpBytesSent() {
+        return httpBytesSent;
+    }
+
+    public void setHttpBytesSent(long httpBytesSent) {
+        this.httpBytesSent = httpBytesSent;
+    }
+
+    public long getHttpBytesReceived() {
+        return httpBytesReceived;
+    }
+
+    public void setHttpBytesReceived(long httpBytesReceived) {
+        this.httpBytesReceived = httpBytesReceived;
+    }
+
+    public long getHttpsBytesSent() {
+        return httpsBytesSent;
+    }
+
+    public void setHttpsBytesSent(long httpsBytesSent) {
+        this.httpsBytesSent = httpsBytesSent;
+    }
+
+    public long getHttpsBytesReceived() {
+        return httpsBytesReceived;
+    }
+
+    public void setHttpsBytesReceived(long httpsBytesReceived) {
+        this.httpsBytesReceived = httpsBytesReceived;
+    }
+
+    public long[] getTransactionsByStatusClass() {
+        return transactionsByStatusClass;
+    }
+
+    public void setTransactionsByStatusClass(long[] transactionsByStatusClass) {
+        this.transactionsByStatusClass = transactionsByStatusClass;
+    }
+
+    public long getStreamingTransactions() {
+        return streamingTransactions;
+    }
+
+    public void setStreamingTransactions(long streamingTransactions) {
+        this.streamingTransactions = streamingTransactions;
+    }
+
+    public long getWebSocketIntervals() {
+        return webSocketIntervals;
+    }
+
+    public void setWebSocketIntervals(long webSocketIntervals) {
+        this.webSocketIntervals = webSocketIntervals;
+    }
+
+    public long getTlsConnections() {
+        return tlsConnections;
+    }
+
+    public void setTlsConnections(long tlsConnections) {
+        this.tlsConnections = tlsConnections;
+    }
+
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    public void setConnectFailures(long connectFailures) {
+        this.connectFailures = connectFailures;
+    }
+
+    public long getSslFailures() {
+        return sslFailures;
+    }
+
+    public void setSslFailures(long sslFailures) {
+        this.sslFailures = sslFailures;
+    }
+
+    public Map<ErrorType, Long> getFailuresByType() {
+        return failuresByType;
+    }
+
+    public void setFailuresByType(Map<ErrorType, Long> failuresByType) {
+        this.failuresByType = failuresByType;
+    }
+
+    public Map<String, Long> getFailuresByHost() {
+        return failuresByHost;
+    }
+
+    public void setFailuresByHost(Map<String, Long> failuresByHost) {
+        this.failuresByHost = failuresByHost;
+    }
+
+    public Map<String, HistogramData> getServerTimings() {
+        return serverTimings;
+    }
+
+    public void setServerTimings(Map<String, HistogramData> serverTimings) {
+        this.serverTimings = serverTimings;
+    }
+
+    public HistogramData getServerTimingNetwork() {
+        return serverTimingNetwork;
+    }
+
+    public void setServerTimingNetwork(HistogramData serverTimingNetwork) {
+        this.serverTimingNetwork = serverTimingNetwork;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sslHandshakeFull:    ").append(sslHandshakeFull).append("\n");
+        sb.append("sslHandshakeResumed: ").append(sslHandshakeResumed).append("\n");
+        sb.append("downlinkBandwidth:   ").append(downlinkBandwidth).append(" bytes/s\n");
+        sb.append("httpBytes:           sent=").append(httpBytesSent)
+                .append(", received=").append(httpBytesReceived).append("\n");
+        sb.append("httpsBytes:          sent=").append(httpsBytesSent)
+                .append(", received=").append(httpsBytesReceived).append("\n");
+        sb.append("transactions:        ").append(Arrays.toString(transactionsByStatusClass))
+                .append("\n");
+        sb.append("streamingTransactions: ").append(streamingTransactions).append("\n");
+        sb.append("webSocketIntervals:  ").append(webSocketIntervals).append("\n");
+        sb.append("tlsConnections:      ").append(tlsConnections).append("\n");
+        sb.append("connectFailures:     ").append(connectFailures).append("\n");
+        sb.append("sslFailures:         ").append(sslFailures).append("\n");
+        sb.append("failuresByType:      ").append(failuresByType).append("\n");
+        sb.append("failuresByHost:      ").append(failuresByHost).append("\n");
+        sb.append("serverTimings:       ").append(serverTimings).append("\n");
+        sb.append("serverTimingNetwork: ").append(serverTimingNetwork);
+        return sb.toString();
+    }
+}
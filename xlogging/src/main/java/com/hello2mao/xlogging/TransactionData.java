@@ -2,6 +2,15 @@ package com.hello2mao.xlogging;
 
 import android.text.TextUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
 public class TransactionData {
 
     // Basic Info
@@ -22,11 +31,68 @@ public class TransactionData {
     private long requestTime; // requestEndTime - requestStartTime
     private long firstPackageTime; // responseStartTime - requestEndTime
     private long responseTime; // responseEndTime - requestEndTime
+    private long headerTime; // responseHeaderEndTime - responseStartTime
+    private long bodyTime; // responseEndTime - responseHeaderEndTime
 
     // Optional
     private String exception;
     private boolean socketReuse;
 
+    // SSL
+    private String tlsVersion;
+    private String cipherSuite;
+    private String alpnProtocol;
+    private boolean sslSessionResumed;
+
+    // Content
+    private String contentEncoding;
+    private long responseBodyBytes;
+    private long decodedBodyBytes;
+
+    // Upload
+    private long requestBodyBytes;
+    private long uploadBandwidth; // bytes/s
+    private int uploadStallCount;
+    private long uploadStallTime;
+
+    // Endpoint
+    private String endpoint; // normalized path, see XLoggingConfig.addPathTemplate
+
+    // Error
+    private ErrorType errorType;
+    private ErrorPhase errorPhase;
+
+    // Trace
+    private String traceId;
+
+    // Header
+    private Map<String, String> requestHeaders;
+    private Map<String, String> responseHeaders;
+
+    // Server-Timing, name of serverTimingIds[i] is XLogging.getServerTimingName(id)
+    private int[] serverTimingIds;
+    private long[] serverTimingDurations; // us
+
+    // Error Body
+    private String contentType;
+    // head of the raw body of a response with status >= 400, decoded on first getErrorBody()
+    private byte[] errorBodyBytes;
+    private String errorBody;
+
+    // WebSocket, one record per report interval of an upgraded connection, -1 otherwise
+    private long webSocketInterval; // ms covered by this record
+    private long webSocketMessagesSent;
+    private long webSocketMessagesReceived;
+    private long webSocketPingRtt; // ping sent -> pong received, average ms
+    private long webSocketPeerPingRtt; // ping received -> pong sent, average ms
+
+    // Streaming response, e.g. SSE or long poll, kept out of request metrics.
+    // Interval records carry the bytes and events since the previous one,
+    // the final record of the response has streamInterval -1 and covers all of it.
+    private boolean streaming;
+    private long streamInterval; // ms covered by an interval record
+    private long streamEvents; // SSE events, -1 if not counted
+
     public String getHost() {
         return host;
     }
@@ -147,6 +213,22 @@ public class TransactionData {
         this.responseTime = responseTime;
     }
 
+    public long getHeaderTime() {
+        return headerTime;
+    }
+
+    public void setHeaderTime(long headerTime) {
+        this.headerTime = headerTime;
+    }
+
+    public long getBodyTime() {
+        return bodyTime;
+    }
+
+    public void setBodyTime(long bodyTime) {
+        this.bodyTime = bodyTime;
+    }
+
     public String getException() {
         return exception;
     }
@@ -163,6 +245,306 @@ public class TransactionData {
         this.socketReuse = socketReuse;
     }
 
+    public String getTlsVersion() {
+        return tlsVersion;
+    }
+
+    public void setTlsVersion(String tlsVersion) {
+        this.tlsVersion = tlsVersion;
+    }
+
+    public String getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public void setCipherSuite(String cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    public String getAlpnProtocol() {
+        return alpnProtocol;
+    }
+
+    public void setAlpnProtocol(String alpnProtocol) {
+        this.alpnProtocol = alpnProtocol;
+    }
+
+    public boolean isSslSessionResumed() {
+        return sslSessionResumed;
+    }
+
+    public void setSslSessionResumed(boolean sslSessionResumed) {
+        this.sslSessionResumed = sslSessionResumed;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public long getResponseBodyBytes() {
+        return responseBodyBytes;
+    }
+
+    public void setResponseBodyBytes(long responseBodyBytes) {
+        this.responseBodyBytes = responseBodyBytes;
+    }
+
+    public long getDecodedBodyBytes() {
+        return decodedBodyBytes;
+    }
+
+    public void setDecodedBodyBytes(long decodedBodyBytes) {
+        this.decodedBodyBytes = decodedBodyBytes;
+    }
+
+    /**
+     * decodedBodyBytes / responseBodyBytes
+     *
+     * @return double, -1 if unknown
+     */
+    public double getCompressionRatio() {
+        if (responseBodyBytes <= 0 || decodedBodyBytes < 0) {
+            return -1;
+        }
+        return (double) decodedBodyBytes / responseBodyBytes;
+    }
+
+    public long getRequestBodyBytes() {
+        return requestBodyBytes;
+    }
+
+    public void setRequestBodyBytes(long requestBodyBytes) {
+        this.requestBodyBytes = requestBodyBytes;
+    }
+
+    public long getUploadBandwidth() {
+        return uploadBandwidth;
+    }
+
+    public void setUploadBandwidth(long uploadBandwidth) {
+        this.uploadBandwidth = uploadBandwidth;
+    }
+
+    public int getUploadStallCount() {
+        return uploadStallCount;
+    }
+
+    public void setUploadStallCount(int uploadStallCount) {
+        this.uploadStallCount = uploadStallCount;
+    }
+
+    public long getUploadStallTime() {
+        return uploadStallTime;
+    }
+
+    public void setUploadStallTime(long uploadStallTime) {
+        this.uploadStallTime = uploadStallTime;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public ErrorType getErrorType() {
+        return errorType;
+    }
+
+    public void setErrorType(ErrorType errorType) {
+        this.errorType = errorType;
+    }
+
+    public ErrorPhase getErrorPhase() {
+        return errorPhase;
+    }
+
+    public void setErrorPhase(ErrorPhase errorPhase) {
+        this.errorPhase = errorPhase;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    // allowlisted headers, see XLoggingConfig.addCapturedRequestHeader
+    public Map<String, String> getRequestHeaders() {
+        return requestHeaders != null ? requestHeaders : Collections.<String, String>emptyMap();
+    }
+
+    public void setRequestHeaders(Map<String, String> requestHeaders) {
+        this.requestHeaders = requestHeaders;
+    }
+
+    // allowlisted headers, see XLoggingConfig.addCapturedResponseHeader
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders != null ? responseHeaders : Collections.<String, String>emptyMap();
+    }
+
+    public void setResponseHeaders(Map<String, String> responseHeaders) {
+        this.responseHeaders = responseHeaders;
+    }
+
+    public int[] getServerTimingIds() {
+        return serverTimingIds != null ? serverTimingIds : new int[0];
+    }
+
+    public void setServerTimingIds(int[] serverTimingIds) {
+        this.serverTimingIds = serverTimingIds;
+    }
+
+    public long[] getServerTimingDurations() {
+        return serverTimingDurations != null ? serverTimingDurations : new long[0];
+    }
+
+    public void setServerTimingDurations(long[] serverTimingDurations) {
+        this.serverTimingDurations = serverTimingDurations;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Head of the error response body, decoded with the charset of Content-Type (default UTF-8).
+     * Gzip bodies are inflated as far as the captured bytes go.
+     *
+     * @return String, null if the response is not an error or has no body
+     */
+    public synchronized String getErrorBody() {
+        if (errorBody == null && errorBodyBytes != null) {
+            errorBody = decodeErrorBody();
+            errorBodyBytes = null;
+        }
+        return errorBody;
+    }
+
+    public synchronized void setErrorBodyBytes(byte[] errorBodyBytes) {
+        this.errorBodyBytes = errorBodyBytes;
+        this.errorBody = null;
+    }
+
+    private String decodeErrorBody() {
+        byte[] bytes = errorBodyBytes;
+        if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+            bytes = inflate(bytes);
+        }
+        return new String(bytes, getCharset());
+    }
+
+    private Charset getCharset() {
+        if (contentType != null) {
+            int index = contentType.toLowerCase(Locale.US).indexOf("charset=");
+            if (index != -1) {
+                String charset = contentType.substring(index + "charset=".length());
+                int end = charset.indexOf(';');
+                if (end != -1) {
+                    charset = charset.substring(0, end);
+                }
+                charset = charset.trim().replace("\"", "");
+                try {
+                    return Charset.forName(charset);
+                } catch (IllegalArgumentException e) {
+                    // unknown charset, fall through
+                }
+            }
+        }
+        return Charset.forName("UTF-8");
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        byte[] buffer = new byte[512];
+        try {
+            GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // truncated body, keep what was inflated
+        }
+        return out.size() > 0 ? out.toByteArray() : bytes;
+    }
+
+    public long getWebSocketInterval() {
+        return webSocketInterval;
+    }
+
+    public void setWebSocketInterval(long webSocketInterval) {
+        this.webSocketInterval = webSocketInterval;
+    }
+
+    public long getWebSocketMessagesSent() {
+        return webSocketMessagesSent;
+    }
+
+    public void setWebSocketMessagesSent(long webSocketMessagesSent) {
+        this.webSocketMessagesSent = webSocketMessagesSent;
+    }
+
+    public long getWebSocketMessagesReceived() {
+        return webSocketMessagesReceived;
+    }
+
+    public void setWebSocketMessagesReceived(long webSocketMessagesReceived) {
+        this.webSocketMessagesReceived = webSocketMessagesReceived;
+    }
+
+    public long getWebSocketPingRtt() {
+        return webSocketPingRtt;
+    }
+
+    public void setWebSocketPingRtt(long webSocketPingRtt) {
+        this.webSocketPingRtt = webSocketPingRtt;
+    }
+
+    public long getWebSocketPeerPingRtt() {
+        return webSocketPeerPingRtt;
+    }
+
+    public void setWebSocketPeerPingRtt(long webSocketPeerPingRtt) {
+        this.webSocketPeerPingRtt = webSocketPeerPingRtt;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public long getStreamInterval() {
+        return streamInterval;
+    }
+
+    public void setStreamInterval(long streamInterval) {
+        this.streamInterval = streamInterval;
+    }
+
+    public long getStreamEvents() {
+        return streamEvents;
+    }
+
+    public void setStreamEvents(long streamEvents) {
+        this.streamEvents = streamEvents;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -172,6 +554,9 @@ public class TransactionData {
         sb.append("protocol:         ").append(protocol).append("\n");
         sb.append("port:             ").append(port).append("\n");
         sb.append("pathAndQuery:     ").append(pathAndQuery).append("\n");
+        if (!TextUtils.isEmpty(endpoint)) {
+            sb.append("endpoint:         ").append(endpoint).append("\n");
+        }
         sb.append("requestMethod:    ").append(requestMethod).append("\n");
         sb.append("statusCode:       ").append(statusCode).append("\n");
         sb.append("bytesSent:        ").append(bytesSent).append(" bytes\n");
@@ -181,6 +566,7 @@ public class TransactionData {
         }
         if (sslHandshakeTime != -1L) {
             sb.append("sslHandshakeTime: ").append(sslHandshakeTime).append(" ms\n");
+            sb.append("sslSessionResumed: ").append(sslSessionResumed).append("\n");
         }
         if (requestTime != -1L) {
             sb.append("requestTime:      ").append(requestTime).append(" ms\n");
@@ -191,9 +577,101 @@ public class TransactionData {
         if (responseTime != -1L) {
             sb.append("responseTime:     ").append(responseTime).append(" ms\n");
         }
+        if (headerTime != -1L) {
+            sb.append("headerTime:       ").append(headerTime).append(" ms\n");
+        }
+        if (bodyTime != -1L) {
+            sb.append("bodyTime:         ").append(bodyTime).append(" ms\n");
+        }
         if (!TextUtils.isEmpty(exception)) {
             sb.append("exception:        ").append(exception).append("\n");
         }
+        if (errorType != ErrorType.NONE) {
+            sb.append("errorType:        ").append(errorType).append(" (").append(errorPhase)
+                    .append(")\n");
+        }
+        if (!TextUtils.isEmpty(tlsVersion)) {
+            sb.append("tlsVersion:       ").append(tlsVersion).append("\n");
+        }
+        if (!TextUtils.isEmpty(cipherSuite)) {
+            sb.append("cipherSuite:      ").append(cipherSuite).append("\n");
+        }
+        if (!TextUtils.isEmpty(alpnProtocol)) {
+            sb.append("alpnProtocol:     ").append(alpnProtocol).append("\n");
+        }
+        if (!TextUtils.isEmpty(contentEncoding)) {
+            sb.append("contentEncoding:  ").append(contentEncoding).append("\n");
+        }
+        if (responseBodyBytes != -1L) {
+            sb.append("responseBodyBytes: ").append(responseBodyBytes).append(" bytes\n");
+        }
+        if (decodedBodyBytes != -1L) {
+            sb.append("decodedBodyBytes: ").append(decodedBodyBytes).append(" bytes\n");
+        }
+        if (getCompressionRatio() > 0) {
+            sb.append("compressionRatio: ").append(Math.round(getCompressionRatio() * 100) / 100.0)
+                    .append("\n");
+        }
+        if (requestBodyBytes != -1L) {
+            sb.append("requestBodyBytes: ").append(requestBodyBytes).append(" bytes\n");
+        }
+        if (uploadBandwidth != -1L) {
+            sb.append("uploadBandwidth:  ").append(uploadBandwidth).append(" bytes/s\n");
+        }
+        if (uploadStallCount > 0) {
+            sb.append("uploadStalls:     ").append(uploadStallCount).append(", ")
+                    .append(uploadStallTime).append(" ms\n");
+        }
+        if (!TextUtils.isEmpty(traceId)) {
+            sb.append("traceId:          ").append(traceId).append("\n");
+        }
+        if (requestHeaders != null) {
+            sb.append("requestHeaders:   ").append(requestHeaders).append("\n");
+        }
+        if (responseHeaders != null) {
+            sb.append("responseHeaders:  ").append(responseHeaders).append("\n");
+        }
+        if (serverTimingIds != null) {
+            sb.append("serverTiming:     ");
+            for (int i = 0; i < serverTimingIds.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(XLogging.getServerTimingName(serverTimingIds[i])).append('=')
+                        .append(serverTimingDurations[i] / 1000.0).append(" ms");
+            }
+            sb.append("\n");
+        }
+        if (!TextUtils.isEmpty(contentType)) {
+            sb.append("contentType:      ").append(contentType).append("\n");
+        }
+        if (getErrorBody() != null) {
+            sb.append("errorBody:        ").append(getErrorBody()).append("\n");
+        }
+        if (webSocketInterval != -1L) {
+            sb.append("webSocketInterval: ").append(webSocketInterval).append(" ms\n");
+        }
+        if (webSocketMessagesSent != -1L) {
+            sb.append("webSocketMessagesSent: ").append(webSocketMessagesSent).append("\n");
+        }
+        if (webSocketMessagesReceived != -1L) {
+            sb.append("webSocketMessagesReceived: ").append(webSocketMessagesReceived).append("\n");
+        }
+        if (webSocketPingRtt != -1L) {
+            sb.append("webSocketPingRtt: ").append(webSocketPingRtt).append(" ms\n");
+        }
+        if (webSocketPeerPingRtt != -1L) {
+            sb.append("webSocketPeerPingRtt: ").append(webSocketPeerPingRtt).append(" ms\n");
+        }
+        if (streaming) {
+            sb.append("streaming:        ").append(streaming).append("\n");
+        }
+        if (streamInterval != -1L) {
+            sb.append("streamInterval:   ").append(streamInterval).append(" ms\n");
+        }
+        if (streamEvents != -1L) {
+            sb.append("streamEvents:     ").append(streamEvents).append("\n");
+        }
         sb.append("socketReuse:      ").append(socketReuse);
         return sb.toString();
     }
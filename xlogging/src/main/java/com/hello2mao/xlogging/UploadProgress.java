@@ -0,0 +1,82 @@
+package com.hello2mao.xlogging;
+
+/**
+ * Snapshot of a request body upload in progress
+ */
+public class UploadProgress {
+
+    private String host;
+    private String pathAndQuery;
+    private long startTime;
+    private long bodyBytes;
+    private long bandwidth; // bytes/s
+    private int stallCount;
+    private long stallTime;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public String getPathAndQuery() {
+        return pathAndQuery;
+    }
+
+    public void setPathAndQuery(String pathAndQuery) {
+        this.pathAndQuery = pathAndQuery;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public void setBodyBytes(long bodyBytes) {
+        this.bodyBytes = bodyBytes;
+    }
+
+    /**
+     * Smoothed upload bandwidth
+     *
+     * @return bytes/s, -1 if not enough data yet
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(long bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    public void setStallCount(int stallCount) {
+        this.stallCount = stallCount;
+    }
+
+    public long getStallTime() {
+        return stallTime;
+    }
+
+    public void setStallTime(long stallTime) {
+        this.stallTime = stallTime;
+    }
+
+    @Override
+    public String toString() {
+        return host + pathAndQuery + ": " + bodyBytes + " bytes, " + bandwidth + " bytes/s, "
+                + stallCount + " stalls (" + stallTime + " ms)";
+    }
+}
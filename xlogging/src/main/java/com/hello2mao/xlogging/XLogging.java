@@ -3,17 +3,31 @@ package com.hello2mao.xlogging;
 import android.os.Build;
 
 import com.hello2mao.xlogging.internal.DefaultXLoggingCallback;
+import com.hello2mao.xlogging.internal.TraceContext;
+import com.hello2mao.xlogging.internal.io.UploadTracker;
 import com.hello2mao.xlogging.internal.log.AndroidXLog;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.BandwidthEstimator;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+import com.hello2mao.xlogging.internal.metrics.ServerTimingDictionary;
+import com.hello2mao.xlogging.internal.nio.MonitoredByteChannel;
+import com.hello2mao.xlogging.internal.nio.MonitoredSSLEngine;
 import com.hello2mao.xlogging.internal.ssl.Ssl;
 import com.hello2mao.xlogging.internal.tcp.tcpv1.TcpV1;
 import com.hello2mao.xlogging.internal.tcp.tcpv2.TcpV2;
 
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+
 public class XLogging {
 
     private static final XLog log = XLogManager.getAgentLog();
     private static XLoggingCallback callback = new DefaultXLoggingCallback();
+    private static XLoggingConfig config = new XLoggingConfig();
 
     /**
      * Install with callback
@@ -24,6 +38,16 @@ public class XLogging {
         install();
     }
 
+    /**
+     * Install with config and callback
+     * @param config XLoggingConfig
+     * @param callback XLoggingCallback
+     */
+    public static void install(XLoggingConfig config, XLoggingCallback callback) {
+        XLogging.config = config;
+        install(callback);
+    }
+
     /**
      * Install without callback
      */
@@ -56,7 +80,97 @@ public class XLogging {
         }
     }
 
+    /**
+     * Set callback without installing monitors, e.g. to collect records of an offline replay
+     * @param callback XLoggingCallback
+     */
+    public static void setCallback(XLoggingCallback callback) {
+        XLogging.callback = callback;
+    }
+
     public static XLoggingCallback getCallback() {
         return XLogging.callback;
     }
+
+    public static XLoggingConfig getConfig() {
+        return XLogging.config;
+    }
+
+    /**
+     * Get snapshot of aggregated metrics
+     *
+     * @return MetricsData
+     */
+    public static MetricsData getMetricsData() {
+        return Metrics.getMetricsData();
+    }
+
+    /**
+     * Register trace id for the next request written on the current thread,
+     * e.g. from an OkHttp interceptor. A trace id header in the request overrides it.
+     * Call clearNextTraceId() in a finally block after the request, the id is only taken
+     * by a request that is written, and otherwise expires after 30 s.
+     *
+     * @param traceId String
+     */
+    public static void setNextTraceId(String traceId) {
+        TraceContext.setNextTraceId(traceId);
+    }
+
+    /**
+     * Drop a trace id registered on the current thread and not taken by a request
+     */
+    public static void clearNextTraceId() {
+        TraceContext.clear();
+    }
+
+    /**
+     * Capture plain HTTP on a SocketChannel, which does not go through the socket monitor.
+     * Read and write through the returned channel, it is also a ScatteringByteChannel and
+     * GatheringByteChannel. configureBlocking, register and select stay on socketChannel.
+     *
+     * @param socketChannel SocketChannel
+     * @return ByteChannel
+     */
+    public static ByteChannel instrument(SocketChannel socketChannel) {
+        return new MonitoredByteChannel(socketChannel);
+    }
+
+    /**
+     * Capture HTTPS over NIO, use the returned engine in place of sslEngine
+     *
+     * @param sslEngine SSLEngine
+     * @return SSLEngine
+     */
+    public static SSLEngine instrument(SSLEngine sslEngine) {
+        return new MonitoredSSLEngine(sslEngine);
+    }
+
+    /**
+     * Get estimated device-wide downlink bandwidth, lock-free and cheap enough to call per request
+     *
+     * @return bytes/s, -1 if there are no large enough responses yet
+     */
+    public static long getDownlinkBandwidth() {
+        return BandwidthEstimator.getEstimate();
+    }
+
+    /**
+     * Get request bodies being uploaded right now, e.g. to adapt upload chunk size
+     *
+     * @return List
+     */
+    public static List<UploadProgress> getActiveUploads() {
+        return UploadTracker.getActiveUploads();
+    }
+
+    /**
+     * Get Server-Timing metric name of an id from TransactionData.getServerTimingIds()
+     *
+     * @param id int
+     * @return String, "other" once too many distinct names were seen
+     */
+    public static String getServerTimingName(int id) {
+        return ServerTimingDictionary.getName(id);
+    }
 }
@@ -0,0 +1,172 @@
+package com.hello2mao.xlogging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional features, configure before XLogging.install()
+ */
+public class XLoggingConfig {
+
+    // Read gzip ISIZE trailer to get decoded body size without inflating
+    private boolean measureDecodedSize = false;
+    // Upload throughput is sampled once per interval, ms
+    private long uploadSampleInterval = 500;
+    // A socket write blocking longer than this counts as an upload stall, ms
+    private long uploadStallThreshold = 1000;
+    // Templates like "/users/{id}/photos", {xxx} or * matches one path segment
+    private List<String> pathTemplates = new ArrayList<>();
+    // Distinct endpoints before new ones are reported as the overflow endpoint
+    private int maxEndpointCount = 500;
+    // Size of the LRU cache from raw path to endpoint
+    private int endpointCacheSize = 1024;
+    // Request header carrying the trace id, e.g. "traceparent" or "X-Request-Id", null to disable
+    private String traceIdHeader = null;
+    // Request headers copied into TransactionData, matched case-insensitively
+    private List<String> capturedRequestHeaders = new ArrayList<>();
+    // Response headers copied into TransactionData, e.g. "X-Cache", "Age", "Cache-Control"
+    private List<String> capturedResponseHeaders = new ArrayList<>();
+    // Max name + value length of captured headers per transaction, the rest is dropped
+    private int capturedHeaderBytes = 1024;
+    // Decode Server-Timing response header into TransactionData and per-metric histograms
+    private boolean decodeServerTiming = false;
+    // Max body bytes kept for responses with status >= 400, 0 to disable
+    private int errorBodyMaxBytes = 1024;
+    // Max bytes of error bodies buffered across all in-flight transactions
+    private int errorBodyMemoryLimit = 64 * 1024;
+    // A WebSocket connection is reported once per interval and when it closes, ms
+    private long webSocketReportInterval = 60 * 1000;
+    // A response still reading body after this long is streaming, like text/event-stream, ms.
+    // 0 detects text/event-stream only
+    private long streamingThreshold = 30 * 1000;
+    // A streaming response is reported once per interval and when it ends, ms
+    private long streamingReportInterval = 60 * 1000;
+
+    public boolean isMeasureDecodedSize() {
+        return measureDecodedSize;
+    }
+
+    public void setMeasureDecodedSize(boolean measureDecodedSize) {
+        this.measureDecodedSize = measureDecodedSize;
+    }
+
+    public long getUploadSampleInterval() {
+        return uploadSampleInterval;
+    }
+
+    public void setUploadSampleInterval(long uploadSampleInterval) {
+        this.uploadSampleInterval = uploadSampleInterval;
+    }
+
+    public long getUploadStallThreshold() {
+        return uploadStallThreshold;
+    }
+
+    public void setUploadStallThreshold(long uploadStallThreshold) {
+        this.uploadStallThreshold = uploadStallThreshold;
+    }
+
+    public List<String> getPathTemplates() {
+        return pathTemplates;
+    }
+
+    public void addPathTemplate(String pathTemplate) {
+        this.pathTemplates.add(pathTemplate);
+    }
+
+    public int getMaxEndpointCount() {
+        return maxEndpointCount;
+    }
+
+    public void setMaxEndpointCount(int maxEndpointCount) {
+        this.maxEndpointCount = maxEndpointCount;
+    }
+
+    public int getEndpointCacheSize() {
+        return endpointCacheSize;
+    }
+
+    public void setEndpointCacheSize(int endpointCacheSize) {
+        this.endpointCacheSize = endpointCacheSize;
+    }
+
+    public String getTraceIdHeader() {
+        return traceIdHeader;
+    }
+
+    public void setTraceIdHeader(String traceIdHeader) {
+        this.traceIdHeader = traceIdHeader;
+    }
+
+    public List<String> getCapturedRequestHeaders() {
+        return capturedRequestHeaders;
+    }
+
+    public void addCapturedRequestHeader(String headerName) {
+        this.capturedRequestHeaders.add(headerName);
+    }
+
+    public List<String> getCapturedResponseHeaders() {
+        return capturedResponseHeaders;
+    }
+
+    public void addCapturedResponseHeader(String headerName) {
+        this.capturedResponseHeaders.add(headerName);
+    }
+
+    public int getCapturedHeaderBytes() {
+        return capturedHeaderBytes;
+    }
+
+    public void setCapturedHeaderBytes(int capturedHeaderBytes) {
+        this.capturedHeaderBytes = capturedHeaderBytes;
+    }
+
+    public boolean isDecodeServerTiming() {
+        return decodeServerTiming;
+    }
+
+    public void setDecodeServerTiming(boolean decodeServerTiming) {
+        this.decodeServerTiming = decodeServerTiming;
+    }
+
+    public int getErrorBodyMaxBytes() {
+        return errorBodyMaxBytes;
+    }
+
+    public void setErrorBodyMaxBytes(int errorBodyMaxBytes) {
+        this.errorBodyMaxBytes = errorBodyMaxBytes;
+    }
+
+    public int getErrorBodyMemoryLimit() {
+        return errorBodyMemoryLimit;
+    }
+
+    public void setErrorBodyMemoryLimit(int errorBodyMemoryLimit) {
+        this.errorBodyMemoryLimit = errorBodyMemoryLimit;
+    }
+
+    public long getWebSocketReportInterval() {
+        return webSocketReportInterval;
+    }
+
+    public void setWebSocketReportInterval(long webSocketReportInterval) {
+        this.webSocketReportInterval = webSocketReportInterval;
+    }
+
+    public long getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    public void setStreamingThreshold(long streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    public long getStreamingReportInterval() {
+        return streamingReportInterval;
+    }
+
+    public void setStreamingReportInterval(long streamingReportInterval) {
+        this.streamingReportInterval = streamingReportInterval;
+    }
+}
@@ -0,0 +1,102 @@
+package com.hello2mao.xlogging.internal;
+
+import com.hello2mao.xlogging.internal.io.parser.HpackDecoder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP/2 connection state shared by the request and response side of one socket.
+ * Each HTTP/2 stream is recorded as its own TransactionState.
+ */
+public class Http2Connection {
+
+    public static final String PROTOCOL = "HTTP/2.0";
+
+    private final MonitoredSocket monitoredSocket;
+    private final Map<Integer, TransactionState> streams;
+    // open streams with a streaming response, e.g. SSE
+    private final Map<Integer, StreamingResponse> streamingResponses;
+    // HPACK contexts are per direction
+    private final HpackDecoder requestHpackDecoder;
+    private final HpackDecoder responseHpackDecoder;
+    private int streamCount;
+
+    public Http2Connection(MonitoredSocket monitoredSocket) {
+        this.monitoredSocket = monitoredSocket;
+        this.streams = new HashMap<>();
+        this.streamingResponses = new HashMap<>();
+        this.requestHpackDecoder = new HpackDecoder();
+        this.responseHpackDecoder = new HpackDecoder();
+        this.streamCount = 0;
+    }
+
+    /**
+     * Get TransactionState of stream, create one if the client opens a new stream
+     *
+     * @param streamId int
+     * @return TransactionState
+     */
+    public synchronized TransactionState openStream(int streamId) {
+        TransactionState transactionState = streams.get(streamId);
+        if (transactionState == null) {
+            transactionState = monitoredSocket.createTransactionState();
+            transactionState.setProtocol(PROTOCOL);
+            transactionState.setRequestStartTime(System.currentTimeMillis());
+            transactionState.setBytesSent(0);
+            transactionState.setBytesReceived(0);
+            transactionState.setResponseBodyBytes(0);
+            transactionState.setSocketReuse(streamCount > 0);
+            // streams are opened by the request side, on the thread writing the request
+            String traceId = TraceContext.poll();
+            if (traceId != null) {
+                transactionState.setTraceId(traceId);
+            }
+            streams.put(streamId, transactionState);
+            streamCount++;
+        }
+        return transactionState;
+    }
+
+    public synchronized TransactionState getStream(int streamId) {
+        return streams.get(streamId);
+    }
+
+    public synchronized StreamingResponse getStreamingResponse(int streamId) {
+        return streamingResponses.isEmpty() ? null : streamingResponses.get(streamId);
+    }
+
+    public synchronized void setStreamingResponse(int streamId,
+                                                  StreamingResponse streamingResponse) {
+        streamingResponses.put(streamId, streamingResponse);
+    }
+
+    public synchronized TransactionState closeStream(int streamId) {
+        StreamingResponse streamingResponse = streamingResponses.remove(streamId);
+        if (streamingResponse != null) {
+            streamingResponse.finish();
+        }
+        return streams.remove(streamId);
+    }
+
+    /**
+     * Remove all streams still open, used when the socket is closing
+     *
+     * @return List
+     */
+    public synchronized List<TransactionState> closeAllStreams() {
+        for (StreamingResponse streamingResponse : streamingResponses.values()) {
+            streamingResponse.finish();
+        }
+        streamingResponses.clear();
+        List<TransactionState> openStreams = new ArrayList<>(streams.values());
+        streams.clear();
+        return openStreams;
+    }
+
+    public HpackDecoder getHpackDecoder(boolean request) {
+        return request ? requestHpackDecoder : responseHpackDecoder;
+    }
+}
@@ -9,4 +9,15 @@ public interface MonitoredSocket {
     void enqueueTransactionState(TransactionState transactionState);
 
     String getName();
+
+    Http2Connection getHttp2Connection();
+
+    void setHttp2Connection(Http2Connection http2Connection);
+
+    WebSocketConnection getWebSocketConnection();
+
+    void setWebSocketConnection(WebSocketConnection webSocketConnection);
+
+    // TLS on this socket is parsed by a MonitoredOpenSSLSocketImplWrapper on top of it
+    boolean isSslWrapped();
 }
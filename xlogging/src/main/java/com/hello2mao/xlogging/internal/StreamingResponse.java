@@ -0,0 +1,147 @@
+package com.hello2mao.xlogging.internal;
+
+import com.hello2mao.xlogging.XLogging;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Response that stays open, e.g. SSE (Content-Type: text/event-stream) or a long poll
+ * still reading body after streamingThreshold. Body bytes, and SSE events of a body
+ * without Content-Encoding, are reported as one TransactionState per report interval,
+ * the response itself is reported at its end as usual but flagged as streaming.
+ */
+public class StreamingResponse {
+
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    private final TransactionState transactionState;
+    private final long reportInterval;
+    private final boolean countEvents;
+    private long intervalStartTime;
+
+    // counters of the current interval
+    private long bytesReceived;
+    private long events;
+    private long totalEvents;
+
+    // SSE lines end with CRLF, LF or CR, an empty line dispatches the event
+    private boolean lastCharCR;
+    private int lineLength;
+    // ":" lines are comments, e.g. keep-alives, and make no event
+    private boolean commentLine;
+    private boolean eventHasField;
+
+    /**
+     * @param transactionState TransactionState of the response
+     * @param startTime start of the first interval
+     * @param bytesReceived body bytes before the first interval ends
+     * @param countEvents true for an SSE body
+     */
+    public StreamingResponse(TransactionState transactionState, long startTime,
+                             long bytesReceived, boolean countEvents) {
+        this.transactionState = transactionState;
+        this.reportInterval = XLogging.getConfig().getStreamingReportInterval();
+        this.countEvents = countEvents;
+        this.intervalStartTime = startTime;
+        this.bytesReceived = bytesReceived;
+        transactionState.setStreaming(true);
+    }
+
+    /**
+     * Body bytes read
+     *
+     * @param buffer byte[]
+     * @param offset int
+     * @param count int
+     * @param now time of the read
+     * @return TransactionState to report, null if the interval is not over yet
+     */
+    public TransactionState bodyParsed(byte[] buffer, int offset, int count, long now) {
+        if (countEvents) {
+            for (int i = offset; i < offset + count; i++) {
+                countEvents(buffer[i]);
+            }
+        }
+        return bodyParsed(count, now);
+    }
+
+    /**
+     * Same as bodyParsed(byte[], int, int, long) for a direct buffer
+     *
+     * @param buffer ByteBuffer
+     * @param offset int, absolute
+     * @param count int
+     * @param now time of the read
+     * @return TransactionState to report, null if the interval is not over yet
+     */
+    public TransactionState bodyParsed(ByteBuffer buffer, int offset, int count, long now) {
+        if (countEvents) {
+            for (int i = offset; i < offset + count; i++) {
+                countEvents(buffer.get(i));
+            }
+        }
+        return bodyParsed(count, now);
+    }
+
+    /**
+     * Body bytes not scanned for events, e.g. HTTP/2 DATA padding
+     *
+     * @param count int
+     * @param now time of the read
+     * @return TransactionState to report, null if the interval is not over yet
+     */
+    public TransactionState bodyParsed(int count, long now) {
+        bytesReceived += count;
+        if (now - intervalStartTime < reportInterval) {
+            return null;
+        }
+        TransactionState intervalTransactionState =
+                transactionState.newIntervalTransactionState(intervalStartTime, now);
+        intervalTransactionState.setStreaming(true);
+        intervalTransactionState.setStreamInterval(now - intervalStartTime);
+        intervalTransactionState.setStreamEvents(countEvents ? events : -1L);
+        intervalTransactionState.setBytesReceived(bytesReceived);
+        intervalTransactionState.setResponseBodyBytes(bytesReceived);
+        this.intervalStartTime = now;
+        this.bytesReceived = 0;
+        this.events = 0;
+        return intervalTransactionState;
+    }
+
+    /**
+     * Response finished, the whole response goes to its own record
+     */
+    public void finish() {
+        transactionState.setStreamEvents(countEvents ? totalEvents : -1L);
+    }
+
+    public static boolean isEventStream(String contentType) {
+        return contentType.regionMatches(true, 0, EVENT_STREAM, 0, EVENT_STREAM.length());
+    }
+
+    private void countEvents(byte b) {
+        if (b == '\n' && lastCharCR) {
+            // CRLF, the line already ended at CR
+            lastCharCR = false;
+            return;
+        }
+        lastCharCR = b == '\r';
+        if (b != '\r' && b != '\n') {
+            if (lineLength == 0) {
+                commentLine = b == ':';
+            }
+            lineLength++;
+            return;
+        }
+        if (lineLength == 0) {
+            if (eventHasField) {
+                events++;
+                totalEvents++;
+                eventHasField = false;
+            }
+        } else if (!commentLine) {
+            eventHasField = true;
+        }
+        lineLength = 0;
+    }
+}
@@ -3,6 +3,8 @@ package com.hello2mao.xlogging.internal;
 public class TcpData {
     private long tcpConnectStartTime;
     private long tcpConnectEndTime;
+    // a MonitoredOpenSSLSocketImplWrapper runs TLS over this socket
+    private volatile boolean sslWrapped;
 
     public TcpData(long tcpConnectStartTime, long tcpConnectEndTime) {
         this.tcpConnectStartTime = tcpConnectStartTime;
@@ -16,5 +18,13 @@ public class TcpData {
     public long getTcpConnectEndTime() {
         return tcpConnectEndTime;
     }
+
+    public boolean isSslWrapped() {
+        return sslWrapped;
+    }
+
+    public void setSslWrapped(boolean sslWrapped) {
+        this.sslWrapped = sslWrapped;
+    }
 }
 
@@ -0,0 +1,53 @@
+package com.hello2mao.xlogging.internal;
+
+/**
+ * Trace id registered by the app for the next request written on the same thread.
+ * An id no request took within TRACE_ID_TTL is dropped, so a pooled thread does not
+ * attach it to an unrelated later request.
+ */
+public class TraceContext {
+
+    private static final long TRACE_ID_TTL = 30 * 1000L;
+
+    private static final ThreadLocal<PendingTraceId> nextTraceId = new ThreadLocal<>();
+
+    public static void setNextTraceId(String traceId) {
+        if (traceId == null) {
+            nextTraceId.remove();
+            return;
+        }
+        nextTraceId.set(new PendingTraceId(traceId, System.currentTimeMillis()));
+    }
+
+    public static void clear() {
+        nextTraceId.remove();
+    }
+
+    /**
+     * Take the registered trace id, so it is used by one request only
+     *
+     * @return String, null if not registered or expired
+     */
+    public static String poll() {
+        PendingTraceId pendingTraceId = nextTraceId.get();
+        if (pendingTraceId == null) {
+            return null;
+        }
+        nextTraceId.remove();
+        if (System.currentTimeMillis() - pendingTraceId.time > TRACE_ID_TTL) {
+            return null;
+        }
+        return pendingTraceId.traceId;
+    }
+
+    private static final class PendingTraceId {
+
+        private final String traceId;
+        private final long time;
+
+        PendingTraceId(String traceId, long time) {
+            this.traceId = traceId;
+            this.time = time;
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package com.hello2mao.xlogging.internal;
 
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.ErrorType;
 import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.internal.util.ErrorClassifier;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * record transaction state
  */
 public class TransactionState {
 
+    public static final int MAX_SERVER_TIMINGS = 8;
+
     // Basic Info
     private String host;
     private String ip;
@@ -28,6 +38,9 @@ public class TransactionState {
     // (5)响应时间=responseStartTime-requestEndTime
     // (6)首包时间=请求时间+响应时间
     // (7)接收时间=responseEndTime-responseStartTime
+    // (8)头部接收时间=responseHeaderEndTime-responseStartTime
+    // (9)body接收时间=responseEndTime-responseHeaderEndTime
+    // responseStartTime/responseHeaderEndTime/responseEndTime are stamped per socket read
     private long dnsLookupStartTime;
     private long dnsLookupEndTime;
     private long tcpConnectStartTime;
@@ -37,12 +50,73 @@ public class TransactionState {
     private long requestStartTime;
     private long requestEndTime;
     private long responseStartTime;
+    private long responseHeaderEndTime;
     private long responseEndTime;
 
     // Optional
     private String exception;
     private boolean socketReuse;
 
+    // SSL
+    private String tlsVersion;
+    private String cipherSuite;
+    private String alpnProtocol;
+    private boolean sslSessionResumed;
+
+    // Content
+    private String contentEncoding;
+    private long responseBodyBytes;
+    private long decodedBodyBytes;
+    private int responseBodyTrailer;
+
+    // Upload
+    private long requestBodyBytes;
+    private long uploadBandwidth; // bytes/s
+    private int uploadStallCount;
+    private long uploadStallTime;
+
+    // Endpoint
+    private String endpoint;
+
+    // Error
+    private ErrorType errorType;
+    private ErrorPhase errorPhase;
+
+    // Trace
+    private String traceId;
+
+    // Header
+    private Map<String, String> requestHeaders;
+    private Map<String, String> responseHeaders;
+    // name + value length of captured headers, request and response share the budget
+    private int capturedHeaderBytes;
+
+    // Server-Timing
+    // serverTimingIds[i] is a ServerTimingDictionary id, serverTimingDurations[i] is in us,
+    // allocated on the first entry and filled up to serverTimingCount
+    private int[] serverTimingIds;
+    private long[] serverTimingDurations;
+    private int serverTimingCount;
+
+    // Error Body
+    private String contentType;
+    // slab from ErrorBodyCapture, owned by this state until Harvest releases it
+    private byte[] errorBody;
+    // -1 if no slab was available under the memory cap
+    private int errorBodyLength;
+
+    // WebSocket
+    private long webSocketInterval;
+    private long webSocketMessagesSent;
+    private long webSocketMessagesReceived;
+    private long webSocketPingRtt;
+    private long webSocketPeerPingRtt;
+
+    // Streaming
+    private boolean streaming;
+    private long streamInterval;
+    private long streamEvents;
+
     // Other
     private State state;
 
@@ -77,45 +151,59 @@ public class TransactionState {
         this.requestStartTime = -1L;
         this.requestEndTime = -1L;
         this.responseStartTime = -1L;
+        this.responseHeaderEndTime = -1L;
         this.responseEndTime = -1L;
         // Optional
         this.exception = "";
         this.socketReuse = false;
+        // SSL
+        this.tlsVersion = "";
+        this.cipherSuite = "";
+        this.alpnProtocol = "";
+        this.sslSessionResumed = false;
+        // Content
+        this.contentEncoding = "";
+        this.responseBodyBytes = -1L;
+        this.decodedBodyBytes = -1L;
+        this.responseBodyTrailer = 0;
+        // Upload
+        this.requestBodyBytes = -1L;
+        this.uploadBandwidth = -1L;
+        this.uploadStallCount = 0;
+        this.uploadStallTime = 0L;
+        // Endpoint
+        this.endpoint = "";
+        // Error
+        this.errorType = ErrorType.NONE;
+        this.errorPhase = ErrorPhase.NONE;
+        // Trace
+        this.traceId = "";
+        // Header
+        this.requestHeaders = null;
+        this.responseHeaders = null;
+        this.capturedHeaderBytes = 0;
+        // Server-Timing
+        this.serverTimingIds = null;
+        this.serverTimingDurations = null;
+        this.serverTimingCount = 0;
+        // Error Body
+        this.contentType = "";
+        this.errorBody = null;
+        this.errorBodyLength = 0;
+        // WebSocket
+        this.webSocketInterval = -1L;
+        this.webSocketMessagesSent = -1L;
+        this.webSocketMessagesReceived = -1L;
+        this.webSocketPingRtt = -1L;
+        this.webSocketPeerPingRtt = -1L;
+        // Streaming
+        this.streaming = false;
+        this.streamInterval = -1L;
+        this.streamEvents = -1L;
         // Other
         this.state = State.READY;
     }
 
-    public TransactionState(TransactionState transactionState) {
-        this();
-        // Basic Info
-        this.host = transactionState.getHost();
-        this.ip = transactionState.getIp();
-        this.scheme = transactionState.getScheme();
-        this.protocol = transactionState.getProtocol();
-        this.port = transactionState.getPort();
-        this.pathAndQuery = transactionState.getPathAndQuery();
-        this.requestMethod = transactionState.getRequestMethod();
-        this.statusCode = transactionState.getStatusCode();
-        this.bytesSent = transactionState.getBytesSent();
-        this.bytesReceived = transactionState.getBytesReceived();
-        // Timing
-        this.dnsLookupStartTime = transactionState.getDnsLookupStartTime();
-        this.dnsLookupEndTime = transactionState.getDnsLookupEndTime();
-        this.tcpConnectStartTime = transactionState.getTcpConnectStartTime();
-        this.tcpConnectEndTime = transactionState.getTcpConnectEndTime();
-        this.sslHandshakeStartTime = transactionState.getSslHandshakeStartTime();
-        this.sslHandshakeEndTime = transactionState.getSslHandshakeEndTime();
-        this.requestStartTime = transactionState.getRequestStartTime();
-        this.requestEndTime = transactionState.getRequestEndTime();
-        this.responseStartTime = transactionState.getResponseStartTime();
-        this.responseEndTime = transactionState.getResponseEndTime();
-        // Optional
-        this.exception = transactionState.getException();
-        this.socketReuse = transactionState.isSocketReuse();
-        // Other
-        this.state = transactionState.getState();
-    }
-
     public TransactionData toTransactionData() {
         TransactionData transactionData = new TransactionData();
         transactionData.setHost(host);
@@ -153,15 +241,89 @@ public class TransactionState {
         } else {
             transactionData.setFirstPackageTime(-1L);
         }
+        if ((responseHeaderEndTime != -1L) && (responseStartTime != -1L)) {
+            transactionData.setHeaderTime(responseHeaderEndTime - responseStartTime);
+        } else {
+            transactionData.setHeaderTime(-1L);
+        }
+        if ((responseEndTime != -1L) && (responseHeaderEndTime != -1L)) {
+            transactionData.setBodyTime(responseEndTime - responseHeaderEndTime);
+        } else {
+            transactionData.setBodyTime(-1L);
+        }
         transactionData.setException(exception);
         transactionData.setSocketReuse(socketReuse);
+        transactionData.setTlsVersion(tlsVersion);
+        transactionData.setCipherSuite(cipherSuite);
+        transactionData.setAlpnProtocol(alpnProtocol);
+        transactionData.setSslSessionResumed(sslSessionResumed);
+        transactionData.setContentEncoding(contentEncoding);
+        transactionData.setResponseBodyBytes(responseBodyBytes);
+        transactionData.setDecodedBodyBytes(decodedBodyBytes);
+        transactionData.setRequestBodyBytes(requestBodyBytes);
+        transactionData.setUploadBandwidth(uploadBandwidth);
+        transactionData.setUploadStallCount(uploadStallCount);
+        transactionData.setUploadStallTime(uploadStallTime);
+        transactionData.setEndpoint(endpoint);
+        transactionData.setErrorType(errorType);
+        transactionData.setErrorPhase(errorPhase);
+        transactionData.setTraceId(traceId);
+        transactionData.setRequestHeaders(requestHeaders);
+        transactionData.setResponseHeaders(responseHeaders);
+        if (serverTimingCount > 0) {
+            transactionData.setServerTimingIds(Arrays.copyOf(serverTimingIds, serverTimingCount));
+            transactionData.setServerTimingDurations(
+                    Arrays.copyOf(serverTimingDurations, serverTimingCount));
+        }
+        transactionData.setContentType(contentType);
+        if (errorBody != null && errorBodyLength > 0) {
+            transactionData.setErrorBodyBytes(Arrays.copyOf(errorBody, errorBodyLength));
+        }
+        transactionData.setWebSocketInterval(webSocketInterval);
+        transactionData.setWebSocketMessagesSent(webSocketMessagesSent);
+        transactionData.setWebSocketMessagesReceived(webSocketMessagesReceived);
+        transactionData.setWebSocketPingRtt(webSocketPingRtt);
+        transactionData.setWebSocketPeerPingRtt(webSocketPeerPingRtt);
+        transactionData.setStreaming(streaming);
+        transactionData.setStreamInterval(streamInterval);
+        transactionData.setStreamEvents(streamEvents);
         return transactionData;
     }
 
+    /**
+     * New record for one interval of a long-lived connection or response,
+     * same endpoint as this one
+     *
+     * @param startTime long
+     * @param endTime long
+     * @return TransactionState
+     */
+    public TransactionState newIntervalTransactionState(long startTime, long endTime) {
+        TransactionState transactionState = new TransactionState();
+        transactionState.setHost(host);
+        transactionState.setIp(ip);
+        transactionState.setPort(port);
+        transactionState.setScheme(scheme);
+        transactionState.setPathAndQuery(pathAndQuery);
+        transactionState.setRequestMethod(requestMethod);
+        transactionState.setTraceId(traceId);
+        transactionState.setProtocol(protocol);
+        transactionState.setStatusCode(statusCode);
+        transactionState.setContentType(contentType);
+        transactionState.setSocketReuse(true);
+        transactionState.setRequestStartTime(startTime);
+        transactionState.setResponseEndTime(endTime);
+        return transactionState;
+    }
+
     public void endTransaction() {
+        endTransaction(System.currentTimeMillis());
+    }
+
+    public void endTransaction(long responseEndTime) {
         if (!isComplete()) {
             this.state = State.COMPLETE;
-            this.responseEndTime = System.currentTimeMillis();
+            this.responseEndTime = responseEndTime;
         }
     }
 
@@ -325,6 +487,14 @@ public class TransactionState {
         this.responseStartTime = responseStartTime;
     }
 
+    public long getResponseHeaderEndTime() {
+        return responseHeaderEndTime;
+    }
+
+    public void setResponseHeaderEndTime(long responseHeaderEndTime) {
+        this.responseHeaderEndTime = responseHeaderEndTime;
+    }
+
     public long getResponseEndTime() {
         return responseEndTime;
     }
@@ -341,6 +511,18 @@ public class TransactionState {
         this.exception = exception;
     }
 
+    /**
+     * Record exception message with its classified ErrorType
+     *
+     * @param exception Exception
+     * @param errorPhase ErrorPhase
+     */
+    public void setError(Exception exception, ErrorPhase errorPhase) {
+        this.exception = exception.getMessage();
+        this.errorType = ErrorClassifier.classify(exception, errorPhase);
+        this.errorPhase = errorPhase;
+    }
+
     public boolean isSocketReuse() {
         return socketReuse;
     }
@@ -349,6 +531,319 @@ public class TransactionState {
         this.socketReuse = socketReuse;
     }
 
+    public String getTlsVersion() {
+        return tlsVersion;
+    }
+
+    public void setTlsVersion(String tlsVersion) {
+        this.tlsVersion = tlsVersion;
+    }
+
+    public String getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public void setCipherSuite(String cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    public String getAlpnProtocol() {
+        return alpnProtocol;
+    }
+
+    public void setAlpnProtocol(String alpnProtocol) {
+        this.alpnProtocol = alpnProtocol;
+    }
+
+    public boolean isSslSessionResumed() {
+        return sslSessionResumed;
+    }
+
+    public void setSslSessionResumed(boolean sslSessionResumed) {
+        this.sslSessionResumed = sslSessionResumed;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public long getResponseBodyBytes() {
+        return responseBodyBytes;
+    }
+
+    public void setResponseBodyBytes(long responseBodyBytes) {
+        this.responseBodyBytes = responseBodyBytes;
+    }
+
+    public long getDecodedBodyBytes() {
+        return decodedBodyBytes;
+    }
+
+    public void setDecodedBodyBytes(long decodedBodyBytes) {
+        this.decodedBodyBytes = decodedBodyBytes;
+    }
+
+    public int getResponseBodyTrailer() {
+        return responseBodyTrailer;
+    }
+
+    public void setResponseBodyTrailer(int responseBodyTrailer) {
+        this.responseBodyTrailer = responseBodyTrailer;
+    }
+
+    public long getRequestBodyBytes() {
+        return requestBodyBytes;
+    }
+
+    public void setRequestBodyBytes(long requestBodyBytes) {
+        this.requestBodyBytes = requestBodyBytes;
+    }
+
+    public long getUploadBandwidth() {
+        return uploadBandwidth;
+    }
+
+    public void setUploadBandwidth(long uploadBandwidth) {
+        this.uploadBandwidth = uploadBandwidth;
+    }
+
+    public int getUploadStallCount() {
+        return uploadStallCount;
+    }
+
+    public void setUploadStallCount(int uploadStallCount) {
+        this.uploadStallCount = uploadStallCount;
+    }
+
+    public long getUploadStallTime() {
+        return uploadStallTime;
+    }
+
+    public void setUploadStallTime(long uploadStallTime) {
+        this.uploadStallTime = uploadStallTime;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public ErrorType getErrorType() {
+        return errorType;
+    }
+
+    public void setErrorType(ErrorType errorType) {
+        this.errorType = errorType;
+    }
+
+    public ErrorPhase getErrorPhase() {
+        return errorPhase;
+    }
+
+    public void setErrorPhase(ErrorPhase errorPhase) {
+        this.errorPhase = errorPhase;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public Map<String, String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public void setRequestHeaders(Map<String, String> requestHeaders) {
+        this.requestHeaders = requestHeaders;
+    }
+
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    public void setResponseHeaders(Map<String, String> responseHeaders) {
+        this.responseHeaders = responseHeaders;
+    }
+
+    public int getCapturedHeaderBytes() {
+        return capturedHeaderBytes;
+    }
+
+    public void setCapturedHeaderBytes(int capturedHeaderBytes) {
+        this.capturedHeaderBytes = capturedHeaderBytes;
+    }
+
+    public void addRequestHeader(String name, String value) {
+        this.requestHeaders = addHeader(requestHeaders, name, value);
+    }
+
+    public void addResponseHeader(String name, String value) {
+        this.responseHeaders = addHeader(responseHeaders, name, value);
+    }
+
+    /**
+     * Add header unless the transaction is out of header budget, repeated headers are joined by ", "
+     *
+     * @param headers Map, null if nothing captured yet
+     * @param name configured header name
+     * @param value String
+     * @return Map
+     */
+    private Map<String, String> addHeader(Map<String, String> headers, String name, String value) {
+        int size = name.length() + value.length();
+        if (capturedHeaderBytes + size > XLogging.getConfig().getCapturedHeaderBytes()) {
+            return headers;
+        }
+        capturedHeaderBytes += size;
+        if (headers == null) {
+            headers = new LinkedHashMap<>();
+        }
+        String previous = headers.get(name);
+        headers.put(name, previous == null ? value : previous + ", " + value);
+        return headers;
+    }
+
+    public int[] getServerTimingIds() {
+        return serverTimingIds;
+    }
+
+    public void setServerTimingIds(int[] serverTimingIds) {
+        this.serverTimingIds = serverTimingIds;
+    }
+
+    public long[] getServerTimingDurations() {
+        return serverTimingDurations;
+    }
+
+    public void setServerTimingDurations(long[] serverTimingDurations) {
+        this.serverTimingDurations = serverTimingDurations;
+    }
+
+    public int getServerTimingCount() {
+        return serverTimingCount;
+    }
+
+    public void setServerTimingCount(int serverTimingCount) {
+        this.serverTimingCount = serverTimingCount;
+    }
+
+    /**
+     * Add one Server-Timing entry, entries beyond MAX_SERVER_TIMINGS are dropped
+     *
+     * @param nameId ServerTimingDictionary id
+     * @param duration us
+     */
+    public void addServerTiming(int nameId, long duration) {
+        if (serverTimingIds == null) {
+            this.serverTimingIds = new int[MAX_SERVER_TIMINGS];
+            this.serverTimingDurations = new long[MAX_SERVER_TIMINGS];
+        }
+        if (serverTimingCount == MAX_SERVER_TIMINGS) {
+            return;
+        }
+        serverTimingIds[serverTimingCount] = nameId;
+        serverTimingDurations[serverTimingCount] = duration;
+        serverTimingCount++;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public byte[] getErrorBody() {
+        return errorBody;
+    }
+
+    public void setErrorBody(byte[] errorBody) {
+        this.errorBody = errorBody;
+    }
+
+    public int getErrorBodyLength() {
+        return errorBodyLength;
+    }
+
+    public void setErrorBodyLength(int errorBodyLength) {
+        this.errorBodyLength = errorBodyLength;
+    }
+
+    public long getWebSocketInterval() {
+        return webSocketInterval;
+    }
+
+    public void setWebSocketInterval(long webSocketInterval) {
+        this.webSocketInterval = webSocketInterval;
+    }
+
+    public long getWebSocketMessagesSent() {
+        return webSocketMessagesSent;
+    }
+
+    public void setWebSocketMessagesSent(long webSocketMessagesSent) {
+        this.webSocketMessagesSent = webSocketMessagesSent;
+    }
+
+    public long getWebSocketMessagesReceived() {
+        return webSocketMessagesReceived;
+    }
+
+    public void setWebSocketMessagesReceived(long webSocketMessagesReceived) {
+        this.webSocketMessagesReceived = webSocketMessagesReceived;
+    }
+
+    public long getWebSocketPingRtt() {
+        return webSocketPingRtt;
+    }
+
+    public void setWebSocketPingRtt(long webSocketPingRtt) {
+        this.webSocketPingRtt = webSocketPingRtt;
+    }
+
+    public long getWebSocketPeerPingRtt() {
+        return webSocketPeerPingRtt;
+    }
+
+    public void setWebSocketPeerPingRtt(long webSocketPeerPingRtt) {
+        this.webSocketPeerPingRtt = webSocketPeerPingRtt;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public long getStreamInterval() {
+        return streamInterval;
+    }
+
+    public void setStreamInterval(long streamInterval) {
+        this.streamInterval = streamInterval;
+    }
+
+    public long getStreamEvents() {
+        return streamEvents;
+    }
+
+    public void setStreamEvents(long streamEvents) {
+        this.streamEvents = streamEvents;
+    }
+
     public State getState() {
         return state;
     }
@@ -38,30 +38,4 @@ public class TransactionsCache {
         }
         return tcpDataCaches.get(fd);
     }
-
-    /**
-     * copy basic info
-     *
-     * @param monitoredSocket MonitoredSocket
-     * @param transactionState TransactionState
-     */
-    public static void setTransactionState(MonitoredSocket monitoredSocket,
-                                                  TransactionState transactionState) {
-        TransactionState currentTransactionState = monitoredSocket.dequeueTransactionState();
-        if (currentTransactionState != null) {
-            transactionState.setHost(currentTransactionState.getHost());
-            transactionState.setIp(currentTransactionState.getIp());
-            transactionState.setScheme(currentTransactionState.getScheme());
-            transactionState.setProtocol(currentTransactionState.getProtocol());
-            transactionState.setPort(currentTransactionState.getPort());
-            transactionState.setPathAndQuery(currentTransactionState.getPathAndQuery());
-            transactionState.setRequestMethod(currentTransactionState.getRequestMethod());
-            transactionState.setBytesSent(currentTransactionState.getBytesSent());
-            transactionState.setRequestStartTime(currentTransactionState.getRequestStartTime());
-            transactionState.setRequestEndTime(currentTransactionState.getRequestEndTime());
-        }
-    }
-
-
-
 }
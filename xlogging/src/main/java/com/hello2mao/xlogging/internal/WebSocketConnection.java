@@ -0,0 +1,163 @@
+package com.hello2mao.xlogging.internal;
+
+import com.hello2mao.xlogging.XLogging;
+
+/**
+ * WebSocket connection state shared by the request and response side of one socket
+ * after a 101 Switching Protocols. Frames are only counted, and the counters are reported
+ * as one TransactionState per report interval instead of one never-ending transaction.
+ */
+public class WebSocketConnection {
+
+    public static final String PROTOCOL = "websocket";
+    // outstanding pings per direction, older ones are dropped
+    private static final int MAX_PENDING_PINGS = 4;
+
+    // host, ip, port, scheme and path of the upgrade request
+    private final TransactionState upgradeTransactionState;
+    private final long reportInterval;
+    private long intervalStartTime;
+    private boolean closed;
+
+    // counters of the current interval
+    private long bytesSent;
+    private long bytesReceived;
+    private long messagesSent;
+    private long messagesReceived;
+    private final Direction sent;
+    private final Direction received;
+
+    public WebSocketConnection(TransactionState upgradeTransactionState) {
+        this.upgradeTransactionState = upgradeTransactionState;
+        this.reportInterval = XLogging.getConfig().getWebSocketReportInterval();
+        this.intervalStartTime = System.currentTimeMillis();
+        this.closed = false;
+        this.sent = new Direction();
+        this.received = new Direction();
+    }
+
+    /**
+     * Frame header parsed
+     *
+     * @param request true if written by this side
+     * @param frameLength header + payload length
+     * @param opcode int
+     * @param fin boolean
+     * @return TransactionState to report, null if the interval is not over yet
+     */
+    public synchronized TransactionState frameFound(boolean request, long frameLength, int opcode,
+                                                    boolean fin) {
+        if (closed) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (request) {
+            bytesSent += frameLength;
+        } else {
+            bytesReceived += frameLength;
+        }
+        switch (opcode) {
+            case 0x0: // continuation
+            case 0x1: // text
+            case 0x2: // binary
+                if (fin) {
+                    if (request) {
+                        messagesSent++;
+                    } else {
+                        messagesReceived++;
+                    }
+                }
+                break;
+            case 0x9: // ping, answered by a pong in the other direction
+                (request ? sent : received).pingSent(now);
+                break;
+            case 0xA: // pong
+                (request ? received : sent).pongReceived(now);
+                break;
+            default:
+                break;
+        }
+        if (now - intervalStartTime >= reportInterval) {
+            return report(now);
+        }
+        return null;
+    }
+
+    /**
+     * Close frame parsed or socket closing
+     *
+     * @return TransactionState of the last interval, null if already closed
+     */
+    public synchronized TransactionState close() {
+        if (closed) {
+            return null;
+        }
+        this.closed = true;
+        return report(System.currentTimeMillis());
+    }
+
+    private TransactionState report(long now) {
+        TransactionState transactionState =
+                upgradeTransactionState.newIntervalTransactionState(intervalStartTime, now);
+        transactionState.setProtocol(PROTOCOL);
+        transactionState.setStatusCode(101);
+        transactionState.setBytesSent(bytesSent);
+        transactionState.setBytesReceived(bytesReceived);
+        transactionState.setWebSocketInterval(now - intervalStartTime);
+        transactionState.setWebSocketMessagesSent(messagesSent);
+        transactionState.setWebSocketMessagesReceived(messagesReceived);
+        transactionState.setWebSocketPingRtt(sent.getAverageRtt());
+        transactionState.setWebSocketPeerPingRtt(received.getAverageRtt());
+        this.intervalStartTime = now;
+        this.bytesSent = 0;
+        this.bytesReceived = 0;
+        this.messagesSent = 0;
+        this.messagesReceived = 0;
+        sent.reset();
+        received.reset();
+        return transactionState;
+    }
+
+    /**
+     * Ping/pong round trips of pings sent by one side, pongs answer pings in order
+     */
+    private static class Direction {
+
+        private final long[] pingTimes = new long[MAX_PENDING_PINGS];
+        private int pendingHead;
+        private int pendingCount;
+        private long rttSum;
+        private long rttCount;
+
+        void pingSent(long time) {
+            if (pendingCount == MAX_PENDING_PINGS) {
+                // peer is not answering, forget the oldest
+                pendingHead = (pendingHead + 1) % MAX_PENDING_PINGS;
+                pendingCount--;
+            }
+            pingTimes[(pendingHead + pendingCount) % MAX_PENDING_PINGS] = time;
+            pendingCount++;
+        }
+
+        void pongReceived(long time) {
+            // unsolicited pongs are heartbeats, no round trip
+            if (pendingCount == 0) {
+                return;
+            }
+            rttSum += time - pingTimes[pendingHead];
+            rttCount++;
+            pendingHead = (pendingHead + 1) % MAX_PENDING_PINGS;
+            pendingCount--;
+        }
+
+        long getAverageRtt() {
+            return rttCount == 0 ? -1L : rttSum / rttCount;
+        }
+
+        void reset() {
+            // pending pings carry over to the next interval
+            rttSum = 0;
+            rttCount = 0;
+        }
+    }
+}
@@ -1,15 +1,58 @@
 package com.hello2mao.xlogging.internal.harvest;
 
+import android.text.TextUtils;
+
+import com.hello2mao.xlogging.ErrorType;
+import com.hello2mao.xlogging.TransactionData;
 import com.hello2mao.xlogging.XLogging;
 import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.io.ErrorBodyCapture;
+import com.hello2mao.xlogging.internal.io.parser.EncryptedStreamParser;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+import com.hello2mao.xlogging.internal.util.EndpointNormalizer;
+import com.hello2mao.xlogging.internal.util.HostResolver;
 
 public class Harvest {
 
     private static final XLog log = XLogManager.getAgentLog();
 
     public static void addHttpTransactionData(TransactionState transactionState) {
-        XLogging.getCallback().handle(transactionState.toTransactionData());
+        if (transactionState.getWebSocketInterval() != -1L) {
+            // counters of a WebSocket connection, the 101 upgrade was recorded once
+            Metrics.recordWebSocketInterval();
+        } else if (EncryptedStreamParser.PROTOCOL.equals(transactionState.getProtocol())) {
+            // TLS on a plain socket, no status code, only bytes
+            Metrics.recordTlsConnection();
+        } else if (!transactionState.isStreaming()) {
+            Metrics.recordTransaction(transactionState.getStatusCode());
+        } else if (transactionState.getStreamInterval() == -1L) {
+            // interval records are parts of one response
+            Metrics.recordStreamingTransaction();
+        }
+        if (TextUtils.isEmpty(transactionState.getHost())
+                && !TextUtils.isEmpty(transactionState.getIp())) {
+            transactionState.setHost(HostResolver.getHostName(transactionState.getIp()));
+        }
+        if (transactionState.getErrorType() != ErrorType.NONE) {
+            Metrics.recordFailure(transactionState.getHost(), transactionState.getErrorType());
+        }
+        // a streaming response waits for events, not for the server
+        if (transactionState.getServerTimingCount() > 0 && !transactionState.isStreaming()) {
+            long waitTime = -1L;
+            if (transactionState.getResponseStartTime() != -1L
+                    && transactionState.getRequestEndTime() != -1L) {
+                waitTime = transactionState.getResponseStartTime()
+                        - transactionState.getRequestEndTime();
+            }
+            Metrics.recordServerTiming(transactionState.getServerTimingIds(),
+                    transactionState.getServerTimingDurations(),
+                    transactionState.getServerTimingCount(), waitTime);
+        }
+        transactionState.setEndpoint(EndpointNormalizer.normalize(transactionState.getPathAndQuery()));
+        TransactionData transactionData = transactionState.toTransactionData();
+        ErrorBodyCapture.release(transactionState);
+        XLogging.getCallback().handle(transactionData);
     }
 }
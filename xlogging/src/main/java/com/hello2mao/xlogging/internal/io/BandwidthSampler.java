@@ -0,0 +1,62 @@
+package com.hello2mao.xlogging.internal.io;
+
+import com.hello2mao.xlogging.internal.metrics.BandwidthEstimator;
+
+/**
+ * Cut the reads of one socket into bandwidth samples for BandwidthEstimator. Every byte
+ * read counts, headers and framing included. Reads after the parser was given up are not
+ * sampled: nothing ends a response there, and under a monitored SSL socket the wrapper
+ * already samples the same transfer.
+ *
+ * A sample starts at a read and counts the bytes of the following reads, so the time
+ * spent waiting for the first bytes (server think time) is not included. A sample ends
+ * when it is large enough, after an idle gap or at the end of a response. Samples smaller
+ * than MIN_SAMPLE_BYTES are dropped, so small responses never count.
+ */
+public class BandwidthSampler {
+
+    private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+    private static final long MAX_SAMPLE_BYTES = 256 * 1024;
+    // a longer gap between two reads means the transfer was idle, ns
+    private static final long IDLE_GAP = 500 * 1000 * 1000L;
+
+    private long sampleStartTime = -1L;
+    private long lastReadTime;
+    private long sampleBytes;
+
+    /**
+     * Bytes of one socket read
+     *
+     * @param count int
+     */
+    public void add(int count) {
+        long now = System.nanoTime();
+        if (sampleStartTime != -1L && now - lastReadTime > IDLE_GAP) {
+            // bytes after an idle gap were not transferred during the sample
+            finish();
+        }
+        if (sampleStartTime == -1L) {
+            this.sampleStartTime = now;
+            this.sampleBytes = 0;
+        } else {
+            this.sampleBytes += count;
+            if (sampleBytes >= MAX_SAMPLE_BYTES) {
+                BandwidthEstimator.addSample(sampleBytes, now - sampleStartTime);
+                this.sampleStartTime = now;
+                this.sampleBytes = 0;
+            }
+        }
+        this.lastReadTime = now;
+    }
+
+    /**
+     * Response finished or transfer idle
+     */
+    public void finish() {
+        if (sampleStartTime != -1L && sampleBytes >= MIN_SAMPLE_BYTES) {
+            BandwidthEstimator.addSample(sampleBytes, lastReadTime - sampleStartTime);
+        }
+        this.sampleStartTime = -1L;
+        this.sampleBytes = 0;
+    }
+}
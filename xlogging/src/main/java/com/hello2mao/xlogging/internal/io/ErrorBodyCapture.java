@@ -0,0 +1,133 @@
+package com.hello2mao.xlogging.internal.io;
+
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingConfig;
+import com.hello2mao.xlogging.internal.TransactionState;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copy the head of error response bodies (status >= 400) into fixed-size slabs.
+ * Slabs are pooled, and at most errorBodyMemoryLimit bytes of slabs are in use at a time,
+ * transactions beyond that are recorded without body.
+ */
+public class ErrorBodyCapture {
+
+    private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger slabsInUse = new AtomicInteger();
+
+    /**
+     * Raw response body bytes, same as ContentEncodingUtil.addResponseBody
+     *
+     * @param transactionState TransactionState
+     * @param buffer byte[]
+     * @param offset int
+     * @param count int
+     */
+    public static void addResponseBody(TransactionState transactionState, byte[] buffer,
+                                       int offset, int count) {
+        byte[] errorBody = getErrorBody(transactionState);
+        if (errorBody == null) {
+            return;
+        }
+        int length = transactionState.getErrorBodyLength();
+        int copy = Math.min(count, errorBody.length - length);
+        if (copy > 0) {
+            System.arraycopy(buffer, offset, errorBody, length, copy);
+            transactionState.setErrorBodyLength(length + copy);
+        }
+    }
+
+    /**
+     * Same as addResponseBody(TransactionState, byte[], int, int) for a direct buffer
+     *
+     * @param transactionState TransactionState
+     * @param buffer ByteBuffer
+     * @param offset int, absolute
+     * @param count int
+     */
+    public static void addResponseBody(TransactionState transactionState, ByteBuffer buffer,
+                                       int offset, int count) {
+        byte[] errorBody = getErrorBody(transactionState);
+        if (errorBody == null) {
+            return;
+        }
+        int length = transactionState.getErrorBodyLength();
+        int copy = Math.min(count, errorBody.length - length);
+        for (int i = 0; i < copy; i++) {
+            errorBody[length + i] = buffer.get(offset + i);
+        }
+        if (copy > 0) {
+            transactionState.setErrorBodyLength(length + copy);
+        }
+    }
+
+    /**
+     * Slab of an error response, acquired at the first body bytes
+     *
+     * @param transactionState TransactionState
+     * @return null if not an error or no slab available
+     */
+    private static byte[] getErrorBody(TransactionState transactionState) {
+        if (transactionState.getStatusCode() < 400) {
+            return null;
+        }
+        byte[] errorBody = transactionState.getErrorBody();
+        if (errorBody == null) {
+            if (transactionState.getErrorBodyLength() != 0) {
+                // no slab available at the first body bytes
+                return null;
+            }
+            errorBody = acquire();
+            if (errorBody == null) {
+                transactionState.setErrorBodyLength(-1);
+                return null;
+            }
+            transactionState.setErrorBody(errorBody);
+        }
+        return errorBody;
+    }
+
+    /**
+     * Return the slab to the pool, called once the record is built
+     *
+     * @param transactionState TransactionState
+     */
+    public static void release(TransactionState transactionState) {
+        byte[] errorBody = transactionState.getErrorBody();
+        if (errorBody == null) {
+            return;
+        }
+        transactionState.setErrorBody(null);
+        slabsInUse.decrementAndGet();
+        if (errorBody.length == XLogging.getConfig().getErrorBodyMaxBytes()) {
+            pool.offer(errorBody);
+        }
+    }
+
+    private static byte[] acquire() {
+        XLoggingConfig config = XLogging.getConfig();
+        int slabSize = config.getErrorBodyMaxBytes();
+        if (slabSize <= 0) {
+            return null;
+        }
+        int maxSlabs = config.getErrorBodyMemoryLimit() / slabSize;
+        while (true) {
+            int inUse = slabsInUse.get();
+            if (inUse >= maxSlabs) {
+                return null;
+            }
+            if (slabsInUse.compareAndSet(inUse, inUse + 1)) {
+                break;
+            }
+        }
+        byte[] slab = pool.poll();
+        while (slab != null && slab.length != slabSize) {
+            // left over from a previous config
+            slab = pool.poll();
+        }
+        return slab != null ? slab : new byte[slabSize];
+    }
+}
@@ -1,5 +1,6 @@
 package com.hello2mao.xlogging.internal.io;
 
+import com.hello2mao.xlogging.ErrorPhase;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
 import com.hello2mao.xlogging.internal.TransactionState;
 import com.hello2mao.xlogging.internal.harvest.Harvest;
@@ -26,24 +27,42 @@ public class IOInstrument {
             log.verbose("instrumentOutputStream DelegateSame");
             return originParsingOutputStream;
         }
+        ParsingOutputStream newParsingOutputStream = newParsingOutputStream(monitoredSocket,
+                originOutputStream);
+        log.debug("Unsafe instrument OutputStream for " +  monitoredSocket.getName() + " success!");
+        return newParsingOutputStream;
+    }
+
+    /**
+     * Request parser of a channel, bytes are fed by ParsingOutputStream.bufferWritten
+     *
+     * @param monitoredSocket MonitoredSocket
+     * @return ParsingOutputStream without delegate
+     */
+    public static ParsingOutputStream instrumentChannelOutput(MonitoredSocket monitoredSocket) {
+        return newParsingOutputStream(monitoredSocket, null);
+    }
+
+    private static ParsingOutputStream newParsingOutputStream(MonitoredSocket monitoredSocket,
+                                                              OutputStream originOutputStream) {
         ParsingOutputStream newParsingOutputStream = new ParsingOutputStream(monitoredSocket,
                 originOutputStream);
         newParsingOutputStream.addStreamListener(new StreamListener() {
             @Override
             public void streamComplete(StreamEvent streamEvent) {
-                // do nothing for parsingOutputStream
+                // only HTTP/2 streams reset by the request side complete here
                 log.debug("ParsingOutputStream streamComplete");
+                Harvest.addHttpTransactionData(streamEvent.getTransactionState());
             }
 
             @Override
             public void streamError(StreamEvent streamEvent) {
                 log.debug("ParsingOutputStream streamError");
                 TransactionState transactionState = streamEvent.getTransactionState();
-                transactionState.setException(streamEvent.getException().getMessage());
+                transactionState.setError(streamEvent.getException(), ErrorPhase.REQUEST);
                 Harvest.addHttpTransactionData(transactionState);
             }
         });
-        log.debug("Unsafe instrument OutputStream for " +  monitoredSocket.getName() + " success!");
         return newParsingOutputStream;
     }
 
@@ -58,6 +77,24 @@ public class IOInstrument {
             log.verbose("instrumentInputStream DelegateSame");
             return originParsingInputStream;
         }
+        ParsingInputStream newParsingInputStream = newParsingInputStream(monitoredSocket,
+                originInputStream);
+        log.debug("Unsafe instrument InputStream for " +  monitoredSocket.getName() + " success!");
+        return newParsingInputStream;
+    }
+
+    /**
+     * Response parser of a channel, bytes are fed by ParsingInputStream.bufferRead
+     *
+     * @param monitoredSocket MonitoredSocket
+     * @return ParsingInputStream without delegate
+     */
+    public static ParsingInputStream instrumentChannelInput(MonitoredSocket monitoredSocket) {
+        return newParsingInputStream(monitoredSocket, null);
+    }
+
+    private static ParsingInputStream newParsingInputStream(MonitoredSocket monitoredSocket,
+                                                            InputStream originInputStream) {
         ParsingInputStream newParsingInputStream = new ParsingInputStream(monitoredSocket,
                 originInputStream);
         newParsingInputStream.addStreamListener(new StreamListener() {
@@ -71,11 +108,10 @@ public class IOInstrument {
             public void streamError(StreamEvent streamEvent) {
                 log.debug("ParsingInputStream streamError");
                 TransactionState transactionState = streamEvent.getTransactionState();
-                transactionState.setException(streamEvent.getException().getMessage());
+                transactionState.setError(streamEvent.getException(), ErrorPhase.RESPONSE);
                 Harvest.addHttpTransactionData(transactionState);
             }
         });
-        log.debug("Unsafe instrument InputStream for " +  monitoredSocket.getName() + " success!");
         return newParsingInputStream;
     }
 }
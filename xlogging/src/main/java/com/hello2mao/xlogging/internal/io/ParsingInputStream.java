@@ -3,24 +3,35 @@ package com.hello2mao.xlogging.internal.io;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import com.hello2mao.xlogging.internal.Http2Connection;
+import com.hello2mao.xlogging.XLogging;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
+import com.hello2mao.xlogging.internal.StreamingResponse;
 import com.hello2mao.xlogging.internal.TcpData;
 import com.hello2mao.xlogging.internal.TransactionState;
 import com.hello2mao.xlogging.internal.TransactionsCache;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
 import com.hello2mao.xlogging.internal.io.parser.AbstractParser;
+import com.hello2mao.xlogging.internal.io.parser.EncryptedStreamParser;
+import com.hello2mao.xlogging.internal.io.parser.Http2FrameParser;
 import com.hello2mao.xlogging.internal.io.parser.HttpParserHandler;
 import com.hello2mao.xlogging.internal.io.parser.HttpStatusLineParser;
 import com.hello2mao.xlogging.internal.io.parser.NoopLineParser;
+import com.hello2mao.xlogging.internal.io.parser.WebSocketFrameParser;
 import com.hello2mao.xlogging.internal.listener.StreamEvent;
 import com.hello2mao.xlogging.internal.listener.StreamListener;
 import com.hello2mao.xlogging.internal.listener.StreamListenerManager;
 import com.hello2mao.xlogging.internal.listener.StreamListenerSource;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+import com.hello2mao.xlogging.internal.util.ContentEncodingUtil;
+import com.hello2mao.xlogging.internal.util.StringCache;
 
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Wrap InputStream
@@ -35,17 +46,36 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
     private TransactionState transactionState;
     private FileDescriptor fd;
     private StreamListenerManager streamListenerManager;
+    private BandwidthSampler bandwidthSampler;
+    // time of the latest socket read, all response phases are stamped with it
+    private long readTime;
+    // time of the read holding the first byte of the current response, -1 between responses
+    private long messageStartTime = -1L;
+    private boolean protocolSwitched = false;
+    // current response if it is streaming
+    private StreamingResponse streamingResponse;
 
     public ParsingInputStream(MonitoredSocket monitoredSocket, InputStream inputStream) {
         this.monitoredSocket = monitoredSocket;
         this.inputStream = inputStream;
         this.responseParser = getInitialParser();
         this.streamListenerManager = new StreamListenerManager();
+        this.bandwidthSampler = new BandwidthSampler();
         this.readCount = 0;
     }
 
     @Override
     public AbstractParser getInitialParser() {
+        if (monitoredSocket.getHttp2Connection() != null) {
+            return new Http2FrameParser(this);
+        }
+        if (monitoredSocket.getWebSocketConnection() != null) {
+            return new WebSocketFrameParser(this, false);
+        }
+        if (protocolSwitched) {
+            // 101 to a protocol other than WebSocket
+            return NoopLineParser.DEFAULT;
+        }
         return new HttpStatusLineParser(this);
     }
 
@@ -57,6 +87,12 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
     @Override
     public void setNextParser(AbstractParser parser) {
         this.responseParser = parser;
+        if (parser == NoopLineParser.DEFAULT) {
+            // parsing given up, the current record never finishes
+            releaseErrorBody();
+            // no response boundaries from here on, so no more samples
+            bandwidthSampler.finish();
+        }
     }
 
     @Override
@@ -69,27 +105,100 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
         // ignore for response
     }
 
+    @Override
+    public void traceIdFound(String traceId) {
+        // ignore for response
+    }
+
+    @Override
+    public void headerFound(String name, String value) {
+        getTransactionState().addResponseHeader(name, value);
+    }
+
     @Override
     public void statusLineFound(int statusCode) {
-        TransactionState currentTransactionState;
-        if (readCount >= 1) { // tcp reuse
-            // More basic info will be copied to newTransactionState in finishedMessage
-            TransactionState newTransactionState = new TransactionState();
-            this.transactionState = newTransactionState;
-            currentTransactionState = newTransactionState;
-        } else {
-            currentTransactionState = getTransactionState();
-        }
-        currentTransactionState.setResponseStartTime(System.currentTimeMillis());
+        // the oldest request without response, same record for interim 1xx and final response
+        TransactionState currentTransactionState = getTransactionState();
+        if (currentTransactionState.getResponseStartTime() == -1L) {
+            currentTransactionState.setResponseStartTime(
+                    messageStartTime != -1L ? messageStartTime : readTime);
+        }
         currentTransactionState.setStatusCode(statusCode);
+        currentTransactionState.setResponseBodyBytes(0);
     }
 
+    @Override
+    public void contentEncodingFound(String contentEncoding) {
+        getTransactionState().setContentEncoding(StringCache.intern(contentEncoding));
+    }
+
+    @Override
+    public void contentTypeFound(String contentType) {
+        getTransactionState().setContentType(StringCache.intern(contentType));
+    }
+
+    @Override
+    public void headerEndFound() {
+        TransactionState currentTransactionState = getTransactionState();
+        currentTransactionState.setResponseHeaderEndTime(readTime);
+        if (currentTransactionState.getStatusCode() >= 200
+                && StreamingResponse.isEventStream(currentTransactionState.getContentType())) {
+            String contentEncoding = currentTransactionState.getContentEncoding();
+            this.streamingResponse = new StreamingResponse(currentTransactionState, readTime, 0,
+                    contentEncoding.length() == 0 || contentEncoding.equalsIgnoreCase("identity"));
+        }
+    }
 
     @Override
-    public void appendBody(String body) {
-        if (getTransactionState().getStatusCode() >= 400) {
-            // FIXME:Collect error body
-            log.debug("status code >= 400, body: " + body);
+    public void upgradeFound(String upgrade) {
+        this.protocolSwitched = true;
+        if ("websocket".equalsIgnoreCase(upgrade)) {
+            monitoredSocket.setWebSocketConnection(new WebSocketConnection(getTransactionState()));
+            log.debug("Switch " + monitoredSocket.getName() + " to WebSocket");
+        }
+    }
+
+    @Override
+    public void bodyParsed(byte[] buffer, int offset, int count) {
+        TransactionState currentTransactionState = getTransactionState();
+        checkStreaming(currentTransactionState);
+        ContentEncodingUtil.addResponseBody(currentTransactionState, buffer, offset, count);
+        ErrorBodyCapture.addResponseBody(currentTransactionState, buffer, offset, count);
+        if (streamingResponse != null) {
+            notifyStreamingInterval(streamingResponse.bodyParsed(buffer, offset, count, readTime));
+        }
+    }
+
+    @Override
+    public void bodyParsed(ByteBuffer buffer, int offset, int count) {
+        TransactionState currentTransactionState = getTransactionState();
+        checkStreaming(currentTransactionState);
+        ContentEncodingUtil.addResponseBody(currentTransactionState, buffer, offset, count);
+        ErrorBodyCapture.addResponseBody(currentTransactionState, buffer, offset, count);
+        if (streamingResponse != null) {
+            notifyStreamingInterval(streamingResponse.bodyParsed(buffer, offset, count, readTime));
+        }
+    }
+
+    private void checkStreaming(TransactionState currentTransactionState) {
+        if (streamingResponse != null) {
+            return;
+        }
+        long streamingThreshold = XLogging.getConfig().getStreamingThreshold();
+        long responseStartTime = currentTransactionState.getResponseStartTime();
+        if (streamingThreshold > 0 && responseStartTime != -1L
+                && readTime - responseStartTime >= streamingThreshold) {
+            // long poll, the body so far goes to the first interval
+            this.streamingResponse = new StreamingResponse(currentTransactionState,
+                    responseStartTime,
+                    Math.max(currentTransactionState.getResponseBodyBytes(), 0L), false);
+        }
+    }
+
+    private void notifyStreamingInterval(TransactionState intervalTransactionState) {
+        if (intervalTransactionState != null) {
+            streamListenerManager.notifyStreamComplete(
+                    new StreamEvent(this, intervalTransactionState));
         }
     }
 
@@ -106,16 +215,23 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
         readCount++;
         if (readCount > 1) {
             transactionState.setSocketReuse(true);
-            // copy basic info
-            TransactionsCache.setTransactionState(monitoredSocket, transactionState);
         }
         transactionState.setBytesReceived(bytesReceived);
-        transactionState.endTransaction();
+        Metrics.addBytesReceived(transactionState.getScheme(), bytesReceived);
+        bandwidthSampler.finish();
+        ContentEncodingUtil.finishResponseBody(transactionState);
+        if (streamingResponse != null) {
+            streamingResponse.finish();
+            this.streamingResponse = null;
+        }
+        transactionState.endTransaction(readTime);
+        this.messageStartTime = -1L;
         if (currentTime > 0L) {
             // Override
             transactionState.setResponseEndTime(currentTime);
         }
-        if (readCount == 1 && transactionState.getScheme().equals("https")) {
+        // channels have no fd, SSLEngine connect time is unknown
+        if (readCount == 1 && fd != null && transactionState.getScheme().equals("https")) {
             TcpData tcpData = TransactionsCache.getTcpData(fd);
             if (tcpData != null) {
                 transactionState.setTcpConnectStartTime(tcpData.getTcpConnectStartTime());
@@ -125,13 +241,22 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
             }
         }
         notifyStreamComplete();
+        // the next response belongs to the next queued request
+        this.transactionState = null;
     }
 
+    /**
+     * Record of the response being parsed, requests and responses pair up in FIFO order.
+     * A response without a parsed request, e.g. request parser disabled, gets a new record.
+     *
+     * @return TransactionState
+     */
     @Override
     public TransactionState getTransactionState() {
         if (transactionState == null) {
-            // FIXME: why new one?
-            transactionState = new TransactionState(monitoredSocket.dequeueTransactionState());
+            TransactionState requestTransactionState = monitoredSocket.dequeueTransactionState();
+            this.transactionState = requestTransactionState != null ? requestTransactionState
+                    : monitoredSocket.createTransactionState();
         }
         return transactionState;
     }
@@ -146,6 +271,59 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
         return requestMethod;
     }
 
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return monitoredSocket.getHttp2Connection();
+    }
+
+    @Override
+    public void http2StreamFinished(TransactionState transactionState) {
+        Metrics.addBytesSent(transactionState.getScheme(), transactionState.getBytesSent());
+        Metrics.addBytesReceived(transactionState.getScheme(), transactionState.getBytesReceived());
+        streamListenerManager.notifyStreamComplete(new StreamEvent(this, transactionState));
+    }
+
+    @Override
+    public void http2StreamingIntervalFound(TransactionState intervalTransactionState) {
+        notifyStreamingInterval(intervalTransactionState);
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return monitoredSocket.getWebSocketConnection();
+    }
+
+    @Override
+    public void webSocketRecordFinished(TransactionState transactionState) {
+        Metrics.addBytesSent(transactionState.getScheme(), transactionState.getBytesSent());
+        Metrics.addBytesReceived(transactionState.getScheme(), transactionState.getBytesReceived());
+        streamListenerManager.notifyStreamComplete(new StreamEvent(this, transactionState));
+    }
+
+    @Override
+    public boolean tlsFound() {
+        if (monitoredSocket.isSslWrapped()) {
+            return false;
+        }
+        // record enqueued by the request side, or a new one if it was not sniffed there
+        TransactionState currentTransactionState = getTransactionState();
+        currentTransactionState.setScheme("https");
+        currentTransactionState.setProtocol(EncryptedStreamParser.PROTOCOL);
+        currentTransactionState.setResponseStartTime(
+                messageStartTime != -1L ? messageStartTime : readTime);
+        return true;
+    }
+
+    @Override
+    public void tlsStreamFinished(TransactionState transactionState) {
+        transactionState.endTransaction(readTime);
+        Metrics.addBytesSent(transactionState.getScheme(), transactionState.getBytesSent());
+        Metrics.addBytesReceived(transactionState.getScheme(), transactionState.getBytesReceived());
+        streamListenerManager.notifyStreamComplete(new StreamEvent(this, transactionState));
+        this.transactionState = null;
+        this.messageStartTime = -1L;
+    }
+
     public void setFd(FileDescriptor fd) {
         this.fd = fd;
     }
@@ -155,10 +333,32 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
     }
 
     public void notifySocketClosing() {
-        if (transactionState != null && TextUtils.isEmpty(transactionState.getException()) &&
-                responseParser != null) {
+        bandwidthSampler.finish();
+        // HTTP/2 and WebSocket have no current transactionState, but still need closing
+        if ((transactionState != null && TextUtils.isEmpty(transactionState.getException())
+                || monitoredSocket.getHttp2Connection() != null
+                || monitoredSocket.getWebSocketConnection() != null) && responseParser != null) {
             responseParser.close();
         }
+        // a response still open here is dropped, or was recorded with its exception
+        releaseErrorBody();
+    }
+
+    private void releaseErrorBody() {
+        if (transactionState != null) {
+            ErrorBodyCapture.release(transactionState);
+        }
+    }
+
+    /**
+     * @param count bytes of the socket read, header and framing bytes included
+     */
+    private void readFinished(int count) {
+        bandwidthSampler.add(count);
+        this.readTime = System.currentTimeMillis();
+        if (messageStartTime == -1L) {
+            this.messageStartTime = readTime;
+        }
     }
 
     private void notifyStreamComplete() {
@@ -179,6 +379,35 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
         streamListenerManager.removeStreamListener(streamListener);
     }
 
+    /**
+     * Bytes read by a channel into buffer[position, position + count), -1 at end of stream
+     *
+     * @param buffer ByteBuffer
+     * @param position int
+     * @param count int
+     */
+    public void bufferRead(ByteBuffer buffer, int position, int count) {
+        if (responseParser == NoopLineParser.DEFAULT) {
+            return;
+        }
+        if (count > 0) {
+            readFinished(count);
+        }
+        try {
+            if (count == -1) {
+                responseParser.add(-1);
+            } else {
+                responseParser.add(buffer, position, count);
+            }
+        } catch (ThreadDeath threadDeath) {
+            throw threadDeath;
+        } catch (Throwable t) {
+            // Disable XLogging since error.
+            setNextParser(NoopLineParser.DEFAULT);
+            t.printStackTrace();
+        }
+    }
+
     private void addBufferToParser(byte[] buffer, int offset, int read) {
         try {
             responseParser.add(buffer, offset, read);
@@ -186,7 +415,7 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
             throw e;
         } catch (Throwable t) {
             // Disable XLogging since error.
-            responseParser = NoopLineParser.DEFAULT;
+            setNextParser(NoopLineParser.DEFAULT);
             t.printStackTrace();
         }
     }
@@ -234,6 +463,16 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
 
     @Override
     public int read() throws IOException {
+        if (responseParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                return inputStream.read();
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+        }
         int read;
         try {
             read = inputStream.read();
@@ -242,6 +481,9 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
             notifyStreamError(e);
             throw e;
         }
+        if (read != -1) {
+            readFinished(1);
+        }
         try {
             // add to response parser
             responseParser.add(read);
@@ -249,7 +491,7 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
             throw threadDeath;
         } catch (Throwable t) {
             // Disable XLogging since error.
-            this.responseParser = NoopLineParser.DEFAULT;
+            setNextParser(NoopLineParser.DEFAULT);
             t.printStackTrace();
         }
         return read;
@@ -257,8 +499,21 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
 
     @Override
     public int read(@NonNull byte[] buffer) throws IOException {
+        if (responseParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                return inputStream.read(buffer);
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+        }
         try {
             int read = inputStream.read(buffer);
+            if (read > 0) {
+                readFinished(read);
+            }
             // add to response parser
             addBufferToParser(buffer, 0, read);
             return read;
@@ -271,9 +526,22 @@ public class ParsingInputStream extends InputStream implements HttpParserHandler
 
     @Override
     public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        if (responseParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                return inputStream.read(buffer, offset, length);
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+        }
         int read;
         try {
             read = inputStream.read(buffer, offset, length);
+            if (read > 0) {
+                readFinished(read);
+            }
             // add to response parser
             addBufferToParser(buffer, offset, read);
             return read;
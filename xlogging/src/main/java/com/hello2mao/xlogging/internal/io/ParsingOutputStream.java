@@ -2,21 +2,29 @@ package com.hello2mao.xlogging.internal.io;
 
 import android.support.annotation.NonNull;
 
+import com.hello2mao.xlogging.internal.Http2Connection;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
+import com.hello2mao.xlogging.internal.TraceContext;
 import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
 import com.hello2mao.xlogging.internal.io.parser.AbstractParser;
+import com.hello2mao.xlogging.internal.io.parser.EncryptedStreamParser;
 import com.hello2mao.xlogging.internal.io.parser.HttpParserHandler;
 import com.hello2mao.xlogging.internal.io.parser.HttpRequestLineParser;
 import com.hello2mao.xlogging.internal.io.parser.NoopLineParser;
+import com.hello2mao.xlogging.internal.io.parser.WebSocketFrameParser;
 import com.hello2mao.xlogging.internal.listener.StreamEvent;
 import com.hello2mao.xlogging.internal.listener.StreamListener;
 import com.hello2mao.xlogging.internal.listener.StreamListenerManager;
 import com.hello2mao.xlogging.internal.listener.StreamListenerSource;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+import com.hello2mao.xlogging.internal.util.StringCache;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Wrap OutputStream
@@ -30,6 +38,8 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
     private AbstractParser requestParser;
     private TransactionState transactionState;
     private StreamListenerManager streamListenerManager;
+    // not null while a request body is being written
+    private UploadTracker uploadTracker;
 
     public ParsingOutputStream(MonitoredSocket monitoredSocket, OutputStream outputStream) {
         this.monitoredSocket = monitoredSocket;
@@ -40,6 +50,9 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
 
     @Override
     public AbstractParser getInitialParser() {
+        if (monitoredSocket.getWebSocketConnection() != null) {
+            return new WebSocketFrameParser(this, true);
+        }
         // Initial parser is HttpRequestLineParser
         return new HttpRequestLineParser(this);
     }
@@ -52,25 +65,46 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
     @Override
     public void setNextParser(AbstractParser parser) {
         this.requestParser = parser;
+        if (parser == NoopLineParser.DEFAULT) {
+            // parsing given up, the body is no longer counted
+            finishUpload();
+        }
     }
 
     @Override
     public void requestLineFound(String requestMethod, String pathAndQuery, String protocol) {
-        TransactionState transactionState = getTransactionState();
+        // one record per request, the response side dequeues it in the same order
+        TransactionState transactionState = monitoredSocket.createTransactionState();
+        this.transactionState = transactionState;
         transactionState.setRequestStartTime(System.currentTimeMillis());
-        transactionState.setRequestMethod(requestMethod);
+        transactionState.setRequestMethod(StringCache.intern(requestMethod));
         transactionState.setPathAndQuery(pathAndQuery);
-        transactionState.setProtocol(protocol);
+        // request line split leaves the trailing '\r' on protocol
+        transactionState.setProtocol(StringCache.intern(protocol.trim()));
         if ("CONNECT".toUpperCase().equals(requestMethod)) {
             transactionState.setScheme("https");
         }
+        String traceId = TraceContext.poll();
+        if (traceId != null) {
+            transactionState.setTraceId(traceId);
+        }
         monitoredSocket.enqueueTransactionState(transactionState);
         log.debug("Enqueue new TransactionState");
     }
 
     @Override
     public void hostFound(String host) {
-        getTransactionState().setHost(host);
+        getTransactionState().setHost(StringCache.intern(host));
+    }
+
+    @Override
+    public void traceIdFound(String traceId) {
+        getTransactionState().setTraceId(traceId);
+    }
+
+    @Override
+    public void headerFound(String name, String value) {
+        getTransactionState().addRequestHeader(name, value);
     }
 
     @Override
@@ -79,10 +113,45 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
     }
 
     @Override
-    public void appendBody(String body) {
+    public void contentEncodingFound(String contentEncoding) {
+        // ignore for request
+    }
+
+    @Override
+    public void contentTypeFound(String contentType) {
+        // ignore for request
+    }
+
+    @Override
+    public void headerEndFound() {
+        // ignore for request
+    }
+
+    @Override
+    public void upgradeFound(String upgrade) {
         // ignore for request
     }
 
+    @Override
+    public void bodyParsed(byte[] buffer, int offset, int count) {
+        UploadTracker currentUploadTracker = uploadTracker;
+        if (currentUploadTracker == null) {
+            currentUploadTracker = UploadTracker.start(getTransactionState());
+            this.uploadTracker = currentUploadTracker;
+        }
+        currentUploadTracker.addBytes(count);
+    }
+
+    @Override
+    public void bodyParsed(ByteBuffer buffer, int offset, int count) {
+        UploadTracker currentUploadTracker = uploadTracker;
+        if (currentUploadTracker == null) {
+            currentUploadTracker = UploadTracker.start(getTransactionState());
+            this.uploadTracker = currentUploadTracker;
+        }
+        currentUploadTracker.addBytes(count);
+    }
+
     /**
      * Finish OutputStream
      * (1)no request body
@@ -95,6 +164,8 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
         TransactionState transactionState = getTransactionState();
         transactionState.setBytesSent(charactersInMessage);
         transactionState.setRequestEndTime(System.currentTimeMillis());
+        Metrics.addBytesSent(transactionState.getScheme(), charactersInMessage);
+        finishUpload();
     }
 
     /**
@@ -123,15 +194,105 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
         return getTransactionState().getRequestMethod();
     }
 
+    @Override
+    public Http2Connection getHttp2Connection() {
+        Http2Connection http2Connection = monitoredSocket.getHttp2Connection();
+        if (http2Connection == null) {
+            // request side finds the preface first
+            http2Connection = new Http2Connection(monitoredSocket);
+            monitoredSocket.setHttp2Connection(http2Connection);
+            log.debug("Switch " + monitoredSocket.getName() + " to HTTP/2");
+        }
+        return http2Connection;
+    }
+
+    @Override
+    public void http2StreamFinished(TransactionState transactionState) {
+        Metrics.addBytesSent(transactionState.getScheme(), transactionState.getBytesSent());
+        Metrics.addBytesReceived(transactionState.getScheme(), transactionState.getBytesReceived());
+        notifyStreamComplete(transactionState);
+    }
+
+    @Override
+    public void http2StreamingIntervalFound(TransactionState intervalTransactionState) {
+        // ignore for request
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return monitoredSocket.getWebSocketConnection();
+    }
+
+    @Override
+    public void webSocketRecordFinished(TransactionState transactionState) {
+        Metrics.addBytesSent(transactionState.getScheme(), transactionState.getBytesSent());
+        Metrics.addBytesReceived(transactionState.getScheme(), transactionState.getBytesReceived());
+        notifyStreamComplete(transactionState);
+    }
+
+    @Override
+    public boolean tlsFound() {
+        if (monitoredSocket.isSslWrapped()) {
+            return false;
+        }
+        // one record for the whole encrypted connection, the response side reports it
+        TransactionState transactionState = monitoredSocket.createTransactionState();
+        this.transactionState = transactionState;
+        transactionState.setRequestStartTime(System.currentTimeMillis());
+        transactionState.setScheme("https");
+        transactionState.setProtocol(EncryptedStreamParser.PROTOCOL);
+        monitoredSocket.enqueueTransactionState(transactionState);
+        log.debug("Switch " + monitoredSocket.getName() + " to TLS byte counting");
+        return true;
+    }
+
+    @Override
+    public void tlsStreamFinished(TransactionState transactionState) {
+        // ignore for request
+    }
+
+    /**
+     * Socket closed, an upload cut off by the close is no longer active
+     */
+    public void notifySocketClosing() {
+        finishUpload();
+    }
+
     public boolean isDelegateSame(OutputStream outputStream) {
         return this.outputStream == outputStream;
     }
 
-    private void notifyStreamComplete() {
-        streamListenerManager.notifyStreamComplete(new StreamEvent(this, getTransactionState()));
+    private void notifyStreamComplete(TransactionState transactionState) {
+        streamListenerManager.notifyStreamComplete(new StreamEvent(this, transactionState));
+    }
+
+    private void finishUpload() {
+        // the socket may be closed by another thread
+        UploadTracker currentUploadTracker = uploadTracker;
+        if (currentUploadTracker != null) {
+            this.uploadTracker = null;
+            currentUploadTracker.finish();
+        }
+    }
+
+    /**
+     * Check whether the socket write blocked long enough to count as an upload stall
+     *
+     * @param writeStartTime long, 0 if no request body is being written
+     */
+    private void writeFinished(long writeStartTime) {
+        UploadTracker currentUploadTracker = uploadTracker;
+        if (writeStartTime != 0 && currentUploadTracker != null) {
+            currentUploadTracker.writeFinished(System.currentTimeMillis() - writeStartTime);
+        }
+    }
+
+    private long getWriteStartTime() {
+        return uploadTracker != null ? System.currentTimeMillis() : 0;
     }
 
     private void notifyStreamError(Exception e) {
+        finishUpload();
         streamListenerManager.notifyStreamError(new StreamEvent(this, getTransactionState(), e));
     }
 
@@ -153,7 +314,29 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
             throw e;
         } catch (Throwable e) {
             // Disable XLogging since error.
-            this.requestParser = NoopLineParser.DEFAULT;
+            setNextParser(NoopLineParser.DEFAULT);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Bytes written by a channel from buffer[position, position + count)
+     *
+     * @param buffer ByteBuffer
+     * @param position int
+     * @param count int
+     */
+    public void bufferWritten(ByteBuffer buffer, int position, int count) {
+        if (requestParser == NoopLineParser.DEFAULT) {
+            return;
+        }
+        try {
+            requestParser.add(buffer, position, count);
+        } catch (ThreadDeath threadDeath) {
+            throw threadDeath;
+        } catch (Throwable e) {
+            // Disable XLogging since error.
+            setNextParser(NoopLineParser.DEFAULT);
             e.printStackTrace();
         }
     }
@@ -162,6 +345,18 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
 
     @Override
     public void write(int oneByte) throws IOException {
+        if (requestParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                outputStream.write(oneByte);
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+            return;
+        }
+        long writeStartTime = getWriteStartTime();
         try {
             outputStream.write(oneByte);
         } catch (IOException e) {
@@ -169,6 +364,7 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
             notifyStreamError(e);
             throw e;
         }
+        writeFinished(writeStartTime);
         try {
             // add to request parser
             requestParser.add(oneByte);
@@ -176,13 +372,25 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
             throw  threadDeath;
         } catch (Throwable e) {
             // Disable XLogging since error.
-            this.requestParser = NoopLineParser.DEFAULT;
+            setNextParser(NoopLineParser.DEFAULT);
             e.printStackTrace();
         }
     }
 
     @Override
     public void write(@NonNull byte[] buffer) throws IOException {
+        if (requestParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                outputStream.write(buffer);
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+            return;
+        }
+        long writeStartTime = getWriteStartTime();
         try {
             outputStream.write(buffer);
         } catch (IOException e) {
@@ -190,12 +398,25 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
             notifyStreamError(e);
             throw e;
         }
+        writeFinished(writeStartTime);
         // add to request parser
         addBytesToParser(buffer, 0, buffer.length);
     }
 
     @Override
     public void write(@NonNull byte[] buffer, int offset, int byteCount) throws IOException {
+        if (requestParser == NoopLineParser.DEFAULT) {
+            // detached
+            try {
+                outputStream.write(buffer, offset, byteCount);
+            } catch (IOException e) {
+                // Collect error
+                notifyStreamError(e);
+                throw e;
+            }
+            return;
+        }
+        long writeStartTime = getWriteStartTime();
         try {
             outputStream.write(buffer, offset, byteCount);
         } catch (IOException e) {
@@ -203,6 +424,7 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
             notifyStreamError(e);
             throw e;
         }
+        writeFinished(writeStartTime);
         // add to request parser
         addBytesToParser(buffer, offset, byteCount);
     }
@@ -220,6 +442,7 @@ public class ParsingOutputStream extends OutputStream implements HttpParserHandl
 
     @Override
     public void close() throws IOException {
+        finishUpload();
         try {
             outputStream.close();
         } catch (IOException e) {
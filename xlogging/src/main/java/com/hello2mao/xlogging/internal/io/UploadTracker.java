@@ -0,0 +1,131 @@
+package com.hello2mao.xlogging.internal.io;
+
+import com.hello2mao.xlogging.UploadProgress;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.internal.TransactionState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upload throughput of one request body.
+ * Updated by the writing thread, read by any thread through XLogging.getActiveUploads().
+ */
+public class UploadTracker {
+
+    // weight of the newest interval in the smoothed bandwidth
+    private static final double ALPHA = 0.3;
+    private static final Set<UploadTracker> activeTrackers =
+            Collections.newSetFromMap(new ConcurrentHashMap<UploadTracker, Boolean>());
+
+    private final TransactionState transactionState;
+    private final long sampleInterval;
+    private final long stallThreshold;
+    private final long startTime;
+    private long intervalStartTime;
+    private long intervalBytes;
+    private volatile long bodyBytes;
+    private volatile long bandwidth;
+    private volatile int stallCount;
+    private volatile long stallTime;
+
+    private UploadTracker(TransactionState transactionState) {
+        this.transactionState = transactionState;
+        this.sampleInterval = Math.max(1, XLogging.getConfig().getUploadSampleInterval());
+        this.stallThreshold = XLogging.getConfig().getUploadStallThreshold();
+        this.startTime = System.currentTimeMillis();
+        this.intervalStartTime = startTime;
+        this.intervalBytes = 0;
+        this.bodyBytes = 0;
+        this.bandwidth = -1L;
+        this.stallCount = 0;
+        this.stallTime = 0;
+    }
+
+    /**
+     * Start tracking the request body of transactionState
+     *
+     * @param transactionState TransactionState
+     * @return UploadTracker
+     */
+    public static UploadTracker start(TransactionState transactionState) {
+        UploadTracker uploadTracker = new UploadTracker(transactionState);
+        activeTrackers.add(uploadTracker);
+        return uploadTracker;
+    }
+
+    public static List<UploadProgress> getActiveUploads() {
+        List<UploadProgress> uploads = new ArrayList<>();
+        for (UploadTracker uploadTracker : activeTrackers) {
+            uploads.add(uploadTracker.snapshot());
+        }
+        return uploads;
+    }
+
+    /**
+     * Request body bytes handed to the socket
+     *
+     * @param count int
+     */
+    public void addBytes(int count) {
+        long now = System.currentTimeMillis();
+        intervalBytes += count;
+        bodyBytes += count;
+        long elapsed = now - intervalStartTime;
+        if (elapsed >= sampleInterval) {
+            long intervalBandwidth = intervalBytes * 1000 / elapsed;
+            bandwidth = bandwidth == -1L ? intervalBandwidth
+                    : (long) (ALPHA * intervalBandwidth + (1 - ALPHA) * bandwidth);
+            intervalStartTime = now;
+            intervalBytes = 0;
+        }
+    }
+
+    /**
+     * One socket write returned
+     *
+     * @param writeTime ms blocked in the write
+     */
+    public void writeFinished(long writeTime) {
+        if (writeTime >= stallThreshold) {
+            stallCount++;
+            stallTime += writeTime;
+        }
+    }
+
+    /**
+     * Body finished or failed, fill the result into TransactionState
+     */
+    public void finish() {
+        activeTrackers.remove(this);
+        transactionState.setRequestBodyBytes(bodyBytes);
+        transactionState.setUploadBandwidth(getBandwidth());
+        transactionState.setUploadStallCount(stallCount);
+        transactionState.setUploadStallTime(stallTime);
+    }
+
+    private long getBandwidth() {
+        long smoothed = bandwidth;
+        if (smoothed != -1L) {
+            return smoothed;
+        }
+        // less than one interval, use the average
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? bodyBytes * 1000 / elapsed : -1L;
+    }
+
+    private UploadProgress snapshot() {
+        UploadProgress uploadProgress = new UploadProgress();
+        uploadProgress.setHost(transactionState.getHost());
+        uploadProgress.setPathAndQuery(transactionState.getPathAndQuery());
+        uploadProgress.setStartTime(startTime);
+        uploadProgress.setBodyBytes(bodyBytes);
+        uploadProgress.setBandwidth(getBandwidth());
+        uploadProgress.setStallCount(stallCount);
+        uploadProgress.setStallTime(stallTime);
+        return uploadProgress;
+    }
+}
@@ -6,6 +6,8 @@ import com.hello2mao.xlogging.internal.log.XLogManager;
 
 import junit.framework.Assert;
 
+import java.nio.ByteBuffer;
+
 public abstract class AbstractParser {
 
     protected static final XLog log = XLogManager.getAgentLog();
@@ -102,6 +104,61 @@ public abstract class AbstractParser {
         }
     }
 
+    /**
+     * add buffer[position, limit) to parsers, position is advanced to limit
+     *
+     * @param buffer ByteBuffer
+     */
+    public void add(ByteBuffer buffer) {
+        int position = buffer.position();
+        int count = buffer.remaining();
+        add(buffer, position, count);
+        buffer.position(position + count);
+    }
+
+    /**
+     * add buffer[offset, offset + count) to parsers, position and limit are not changed.
+     * Heap buffers are parsed from the backing array, direct buffers with absolute gets.
+     *
+     * @param buffer ByteBuffer
+     * @param offset int
+     * @param count int
+     */
+    public void add(ByteBuffer buffer, int offset, int count) {
+        if (buffer.hasArray()) {
+            add(buffer.array(), buffer.arrayOffset() + offset, count);
+            return;
+        }
+        int j;
+        for (int i = addBlock(buffer, offset, count); i > 0 && i < count; i += j) {
+            j = handler.getCurrentParser().addBlock(buffer, offset + i, count - i);
+            if (j <= 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Same as addBlock(byte[], int, int) for a direct buffer, offset is absolute
+     *
+     * @param buffer ByteBuffer
+     * @param offset int
+     * @param count int
+     * @return bytes consumed by this parser, -1 if the rest is dropped
+     */
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (count == 0) {
+            return -1;
+        }
+        boolean bool = false;
+        int i = 0;
+        while (!bool && i < count) {
+            bool = add(buffer.get(offset + i) & 0xFF);
+            ++i;
+        }
+        return i;
+    }
+
     protected int addBlock(byte[] buffer, int offset, int count) {
         if (count == -1) {
             reachedEOF();
@@ -113,7 +170,7 @@ public abstract class AbstractParser {
         boolean bool = false;
         int i = 0;
         while (!bool && i < count) {
-            bool = add((char) buffer[offset + i]);
+            bool = add(buffer[offset + i] & 0xFF);
             ++i;
         }
         return i;
@@ -0,0 +1,44 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingConfig;
+
+/**
+ * Header tries built from the capture allowlists of the current XLoggingConfig.
+ * A trie is null when its list is empty, so parsers skip matching entirely.
+ */
+public class CapturedHeaders {
+
+    private static volatile CapturedHeaders instance;
+
+    private final XLoggingConfig config;
+    private final HeaderTrie requestHeaders;
+    private final HeaderTrie responseHeaders;
+
+    private CapturedHeaders(XLoggingConfig config) {
+        this.config = config;
+        this.requestHeaders = config.getCapturedRequestHeaders().isEmpty() ? null
+                : new HeaderTrie(config.getCapturedRequestHeaders());
+        this.responseHeaders = config.getCapturedResponseHeaders().isEmpty() ? null
+                : new HeaderTrie(config.getCapturedResponseHeaders());
+    }
+
+    public static HeaderTrie getRequestHeaders() {
+        return getInstance().requestHeaders;
+    }
+
+    public static HeaderTrie getResponseHeaders() {
+        return getInstance().responseHeaders;
+    }
+
+    private static CapturedHeaders getInstance() {
+        CapturedHeaders capturedHeaders = instance;
+        XLoggingConfig config = XLogging.getConfig();
+        if (capturedHeaders == null || capturedHeaders.config != config) {
+            // config is replaced by XLogging.install(config, callback)
+            capturedHeaders = new CapturedHeaders(config);
+            instance = capturedHeaders;
+        }
+        return capturedHeaders;
+    }
+}
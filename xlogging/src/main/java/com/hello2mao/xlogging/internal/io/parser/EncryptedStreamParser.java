@@ -0,0 +1,117 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.io.CharBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encrypted Stream Parser
+ *
+ * TLS seen below the SSL layer, e.g. the plain socket under a custom SSLSocketFactory.
+ * Nothing is parsed, bytes are only counted on the record of the connection, which is
+ * reported once by the response side at end of stream or socket close.
+ */
+public class EncryptedStreamParser extends AbstractParser {
+
+    public static final String PROTOCOL = "TLS";
+
+    // record header: content type handshake, major version 3 (SSL 3.0 to TLS 1.3)
+    static final int TLS_HANDSHAKE = 0x16;
+    static final int TLS_MAJOR_VERSION = 0x03;
+
+    private final boolean request;
+    private final TransactionState transactionState;
+    // the whole connection is one record, it can outgrow the int charactersInMessage
+    private long bytes;
+
+    /**
+     * @param parser HttpRequestLineParser or HttpStatusLineParser holding the record header
+     * @param request true if written by this side
+     */
+    public EncryptedStreamParser(AbstractParser parser, boolean request) {
+        super(parser);
+        this.request = request;
+        this.transactionState = getHandler().getTransactionState();
+        this.bytes = getCharactersInMessage();
+        bytesFound();
+    }
+
+    @Override
+    public boolean parse(CharBuffer charBuffer) {
+        return true;
+    }
+
+    @Override
+    public boolean add(int oneByte) {
+        if (oneByte == -1) {
+            close();
+            return true;
+        }
+        this.bytes += 1;
+        bytesFound();
+        return false;
+    }
+
+    @Override
+    public int addBlock(byte[] buffer, int offset, int count) {
+        if (count == -1) {
+            close();
+            return -1;
+        }
+        if (buffer == null || count == 0) {
+            return -1;
+        }
+        this.bytes += count;
+        bytesFound();
+        return count;
+    }
+
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (count == 0) {
+            return -1;
+        }
+        this.bytes += count;
+        bytesFound();
+        return count;
+    }
+
+    private void bytesFound() {
+        if (request) {
+            transactionState.setBytesSent(bytes);
+        } else {
+            transactionState.setBytesReceived(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        HttpParserHandler handler = getHandler();
+        super.close();
+        // request side has no end of stream, its count is already on the record
+        if (!request) {
+            handler.tlsStreamFinished(transactionState);
+        }
+    }
+
+    @Override
+    protected int getInitialBufferSize() {
+        return 0;
+    }
+
+    @Override
+    protected int getMaxBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterBufferFull() {
+        return NoopLineParser.DEFAULT;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterSuccessfulParse() {
+        return NoopLineParser.DEFAULT;
+    }
+}
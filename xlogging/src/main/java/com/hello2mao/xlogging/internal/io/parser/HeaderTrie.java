@@ -0,0 +1,115 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.internal.io.CharBuffer;
+
+import java.util.List;
+
+/**
+ * Case-insensitive trie over header names, built once from the capture allowlist.
+ * A header line not in the list is rejected at its first unknown character.
+ */
+public class HeaderTrie {
+
+    // header names are ASCII tokens
+    private static final int ALPHABET_SIZE = 128;
+    private static final int NO_STATE = 0;
+
+    // transitions[state][lower case char] = next state, state 0 is the root and also "no state"
+    private int[][] transitions;
+    // names[state] = header name as configured if a name ends at this state
+    private String[] names;
+    private int stateCount;
+
+    public HeaderTrie(List<String> headerNames) {
+        this.transitions = new int[8][];
+        this.names = new String[8];
+        this.transitions[0] = new int[ALPHABET_SIZE];
+        this.stateCount = 1;
+        for (String name : headerNames) {
+            add(name);
+        }
+    }
+
+    private void add(String name) {
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = toLowerCase(name.charAt(i));
+            if (c >= ALPHABET_SIZE) {
+                return;
+            }
+            int next = transitions[state][c];
+            if (next == NO_STATE) {
+                next = newState();
+                transitions[state][c] = next;
+            }
+            state = next;
+        }
+        if (state != 0) {
+            names[state] = name;
+        }
+    }
+
+    private int newState() {
+        if (stateCount == transitions.length) {
+            int[][] newTransitions = new int[stateCount * 2][];
+            System.arraycopy(transitions, 0, newTransitions, 0, stateCount);
+            this.transitions = newTransitions;
+            String[] newNames = new String[stateCount * 2];
+            System.arraycopy(names, 0, newNames, 0, stateCount);
+            this.names = newNames;
+        }
+        transitions[stateCount] = new int[ALPHABET_SIZE];
+        return stateCount++;
+    }
+
+    /**
+     * Match header line "Name: value"
+     *
+     * @param charBuffer CharBuffer
+     * @return configured header name, null if not in the list
+     */
+    public String match(CharBuffer charBuffer) {
+        char[] chars = charBuffer.charArray;
+        int state = 0;
+        for (int i = 0; i < charBuffer.length; i++) {
+            char c = chars[i];
+            if (c == ':') {
+                return names[state];
+            }
+            c = toLowerCase(c);
+            if (c >= ALPHABET_SIZE) {
+                return null;
+            }
+            state = transitions[state][c];
+            if (state == NO_STATE) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Match decoded HTTP/2 header name
+     *
+     * @param headerName String
+     * @return configured header name, null if not in the list
+     */
+    public String match(String headerName) {
+        int state = 0;
+        for (int i = 0; i < headerName.length(); i++) {
+            char c = toLowerCase(headerName.charAt(i));
+            if (c >= ALPHABET_SIZE) {
+                return null;
+            }
+            state = transitions[state][c];
+            if (state == NO_STATE) {
+                return null;
+            }
+        }
+        return names[state];
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,304 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * HPACK header block decoder, see RFC 7541
+ *
+ * Only decodes what XLogging needs: header names are always decoded to keep the
+ * dynamic table in sync, values are decoded only when they have to be indexed or
+ * the listener is interested in them.
+ */
+public class HpackDecoder {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+    private static final int MAX_HEADER_TABLE_SIZE = 64 * 1024;
+    // each dynamic table entry costs 32 octets more than name + value
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC_TABLE = {
+            { ":authority", "" },
+            { ":method", "GET" },
+            { ":method", "POST" },
+            { ":path", "/" },
+            { ":path", "/index.html" },
+            { ":scheme", "http" },
+            { ":scheme", "https" },
+            { ":status", "200" },
+            { ":status", "204" },
+            { ":status", "206" },
+            { ":status", "304" },
+            { ":status", "400" },
+            { ":status", "404" },
+            { ":status", "500" },
+            { "accept-charset", "" },
+            { "accept-encoding", "gzip, deflate" },
+            { "accept-language", "" },
+            { "accept-ranges", "" },
+            { "accept", "" },
+            { "access-control-allow-origin", "" },
+            { "age", "" },
+            { "allow", "" },
+            { "authorization", "" },
+            { "cache-control", "" },
+            { "content-disposition", "" },
+            { "content-encoding", "" },
+            { "content-language", "" },
+            { "content-length", "" },
+            { "content-location", "" },
+            { "content-range", "" },
+            { "content-type", "" },
+            { "cookie", "" },
+            { "date", "" },
+            { "etag", "" },
+            { "expect", "" },
+            { "expires", "" },
+            { "from", "" },
+            { "host", "" },
+            { "if-match", "" },
+            { "if-modified-since", "" },
+            { "if-none-match", "" },
+            { "if-range", "" },
+            { "if-unmodified-since", "" },
+            { "last-modified", "" },
+            { "link", "" },
+            { "location", "" },
+            { "max-forwards", "" },
+            { "proxy-authenticate", "" },
+            { "proxy-authorization", "" },
+            { "range", "" },
+            { "referer", "" },
+            { "refresh", "" },
+            { "retry-after", "" },
+            { "server", "" },
+            { "set-cookie", "" },
+            { "strict-transport-security", "" },
+            { "transfer-encoding", "" },
+            { "user-agent", "" },
+            { "vary", "" },
+            { "via", "" },
+            { "www-authenticate", "" }
+    };
+
+    // dynamic table is filled from the end, the newest entry is at nextIndex + 1
+    private Entry[] dynamicTable = new Entry[8];
+    private int nextIndex = dynamicTable.length - 1;
+    private int entryCount = 0;
+    private int dynamicTableSize = 0;
+    private int maxDynamicTableSize = DEFAULT_HEADER_TABLE_SIZE;
+
+    private byte[] block;
+    private int position;
+    private int limit;
+
+    /**
+     * Receive decoded headers
+     */
+    public interface Listener {
+
+        boolean isInterested(String name);
+
+        void header(String name, String value);
+    }
+
+    /**
+     * decode one complete header block
+     *
+     * @param block byte[]
+     * @param offset int
+     * @param count int
+     * @param listener Listener
+     * @throws IOException IOException
+     */
+    public void decode(byte[] block, int offset, int count, Listener listener) throws IOException {
+        this.block = block;
+        this.position = offset;
+        this.limit = offset + count;
+        try {
+            while (position < limit) {
+                int b = block[position++] & 0xFF;
+                if (b == 0x80) {
+                    throw new IOException("Hpack index == 0");
+                } else if ((b & 0x80) == 0x80) { // indexed header field
+                    indexedHeader(readInt(b, 0x7F) - 1, listener);
+                } else if (b == 0x40) { // literal with incremental indexing, new name
+                    literalHeader(readName(), true, listener);
+                } else if ((b & 0x40) == 0x40) { // literal with incremental indexing, indexed name
+                    literalHeader(getName(readInt(b, 0x3F) - 1), true, listener);
+                } else if ((b & 0x20) == 0x20) { // dynamic table size update
+                    int maxSize = readInt(b, 0x1F);
+                    if (maxSize > MAX_HEADER_TABLE_SIZE) {
+                        throw new IOException("Hpack table size too large: " + maxSize);
+                    }
+                    this.maxDynamicTableSize = maxSize;
+                    evictToFit(0);
+                } else if (b == 0x10 || b == 0) { // literal without indexing, new name
+                    literalHeader(readName(), false, listener);
+                } else { // literal without indexing, indexed name
+                    literalHeader(getName(readInt(b, 0x0F) - 1), false, listener);
+                }
+            }
+        } finally {
+            this.block = null;
+        }
+    }
+
+    private void indexedHeader(int index, Listener listener) throws IOException {
+        String name;
+        String value;
+        if (index < STATIC_TABLE.length) {
+            name = STATIC_TABLE[index][0];
+            value = STATIC_TABLE[index][1];
+        } else {
+            Entry entry = getDynamicEntry(index - STATIC_TABLE.length);
+            name = entry.name;
+            value = entry.value;
+        }
+        if (listener.isInterested(name)) {
+            listener.header(name, value);
+        }
+    }
+
+    private void literalHeader(String name, boolean indexing, Listener listener)
+            throws IOException {
+        boolean interested = listener.isInterested(name);
+        String value = readString(indexing || interested);
+        if (indexing) {
+            insert(new Entry(name, value));
+        }
+        if (interested) {
+            listener.header(name, value);
+        }
+    }
+
+    private String getName(int index) throws IOException {
+        if (index < 0) {
+            throw new IOException("Hpack index == 0");
+        }
+        if (index < STATIC_TABLE.length) {
+            return STATIC_TABLE[index][0];
+        }
+        return getDynamicEntry(index - STATIC_TABLE.length).name;
+    }
+
+    private Entry getDynamicEntry(int index) throws IOException {
+        if (index < 0 || index >= entryCount) {
+            throw new IOException("Hpack index out of range: " + index);
+        }
+        return dynamicTable[nextIndex + 1 + index];
+    }
+
+    private void insert(Entry entry) {
+        if (entry.size > maxDynamicTableSize) {
+            clearDynamicTable();
+            return;
+        }
+        evictToFit(entry.size);
+        if (entryCount + 1 > dynamicTable.length) {
+            Entry[] doubled = new Entry[dynamicTable.length * 2];
+            System.arraycopy(dynamicTable, 0, doubled, dynamicTable.length, dynamicTable.length);
+            this.nextIndex = dynamicTable.length - 1;
+            this.dynamicTable = doubled;
+        }
+        dynamicTable[nextIndex--] = entry;
+        entryCount++;
+        dynamicTableSize += entry.size;
+    }
+
+    private void evictToFit(int bytesToAdd) {
+        int entriesToEvict = 0;
+        int index = dynamicTable.length - 1;
+        while (dynamicTableSize + bytesToAdd > maxDynamicTableSize && index > nextIndex) {
+            dynamicTableSize -= dynamicTable[index].size;
+            dynamicTable[index] = null;
+            entryCount--;
+            entriesToEvict++;
+            index--;
+        }
+        if (entriesToEvict > 0) {
+            System.arraycopy(dynamicTable, nextIndex + 1, dynamicTable,
+                    nextIndex + 1 + entriesToEvict, entryCount);
+            for (int i = nextIndex + 1; i < nextIndex + 1 + entriesToEvict; i++) {
+                dynamicTable[i] = null;
+            }
+            nextIndex += entriesToEvict;
+        }
+    }
+
+    private void clearDynamicTable() {
+        for (int i = 0; i < dynamicTable.length; i++) {
+            dynamicTable[i] = null;
+        }
+        this.nextIndex = dynamicTable.length - 1;
+        this.entryCount = 0;
+        this.dynamicTableSize = 0;
+    }
+
+    private String readName() throws IOException {
+        return readString(true);
+    }
+
+    /**
+     * read string literal
+     *
+     * @param decode false to skip the octets without decoding
+     * @return String, or null if skipped
+     * @throws IOException IOException
+     */
+    private String readString(boolean decode) throws IOException {
+        if (position >= limit) {
+            throw new IOException("Hpack string truncated");
+        }
+        int b = block[position++] & 0xFF;
+        boolean huffman = (b & 0x80) == 0x80;
+        int length = readInt(b, 0x7F);
+        if (length < 0 || length > limit - position) {
+            throw new IOException("Hpack string length out of range: " + length);
+        }
+        String value = null;
+        if (decode) {
+            value = huffman ? HpackHuffman.decode(block, position, length)
+                    : new String(block, position, length, ISO_8859_1);
+        }
+        position += length;
+        return value;
+    }
+
+    private int readInt(int firstByte, int prefixMask) throws IOException {
+        int prefix = firstByte & prefixMask;
+        if (prefix < prefixMask) {
+            return prefix;
+        }
+        int result = prefixMask;
+        int shift = 0;
+        while (true) {
+            if (position >= limit) {
+                throw new IOException("Hpack integer truncated");
+            }
+            int b = block[position++] & 0xFF;
+            if (shift > 28) {
+                throw new IOException("Hpack integer overflow");
+            }
+            result += (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String name;
+        private final String value;
+        private final int size;
+
+        Entry(String name, String value) {
+            this.name = name;
+            this.value = value;
+            this.size = ENTRY_OVERHEAD + name.length() + value.length();
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.ErrorType;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.internal.Http2Connection;
+import com.hello2mao.xlogging.internal.StreamingResponse;
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.io.CharBuffer;
+import com.hello2mao.xlogging.internal.io.ErrorBodyCapture;
+import com.hello2mao.xlogging.internal.util.ContentEncodingUtil;
+import com.hello2mao.xlogging.internal.util.StringCache;
+import com.hello2mao.xlogging.internal.util.URLUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Http2 Frame Parser
+ *
+ * e.g.
+ * +-----------------------------------------------+
+ * |                 Length (24)                   |
+ * +---------------+---------------+---------------+
+ * |   Type (8)    |   Flags (8)   |
+ * +-+-------------+---------------+-------------------------------+
+ * |R|                 Stream Identifier (31)                      |
+ * +=+=============================================================+
+ * |                   Frame Payload (0...)                      ...
+ * +---------------------------------------------------------------+
+ *
+ * Only HEADERS/CONTINUATION/PUSH_PROMISE/RST_STREAM payloads are buffered,
+ * DATA and the other frames are skipped in bulk.
+ */
+public class Http2FrameParser extends AbstractParser implements HpackDecoder.Listener {
+
+    // "\r\nSM\r\n\r\n" is left after "PRI * HTTP/2.0\r\n" in client connection preface
+    public static final int PREFACE_REMAINDER_LENGTH = 8;
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int MAX_HEADER_BLOCK_LENGTH = 64 * 1024;
+
+    private static final int TYPE_DATA = 0x0;
+    private static final int TYPE_HEADERS = 0x1;
+    private static final int TYPE_RST_STREAM = 0x3;
+    private static final int TYPE_PUSH_PROMISE = 0x5;
+    private static final int TYPE_CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private final boolean request;
+    private final Http2Connection connection;
+    // request header carrying the trace id, null if disabled
+    private final String traceIdHeader;
+    // allowlisted headers of this direction, null if none
+    private final HeaderTrie headerTrie;
+    // response side only
+    private final boolean decodeServerTiming;
+    private final long streamingThreshold;
+    private final byte[] oneByte = new byte[1];
+    private int skipRemaining;
+
+    // current frame
+    private final byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+    private int frameHeaderLength;
+    private int type;
+    private int flags;
+    private int streamId;
+    private int payloadLength;
+    private int payloadRemaining;
+    private byte[] payload;
+    private boolean bufferPayload;
+    // response DATA frame of a recorded stream
+    private TransactionState dataTransactionState;
+    private StreamingResponse dataStreamingResponse;
+
+    // header block across HEADERS/PUSH_PROMISE + CONTINUATION
+    private byte[] headerBlock;
+    private int headerBlockLength;
+    private int headerBlockStreamId;
+    private boolean headerBlockEndStream;
+    private TransactionState headerBlockTransactionState;
+    private long headerBlockStartTime;
+
+    /**
+     * Parse request side frames after the preface request line
+     *
+     * @param parser HttpRequestLineParser
+     */
+    public Http2FrameParser(AbstractParser parser) {
+        super(parser);
+        this.request = true;
+        this.connection = getHandler().getHttp2Connection();
+        this.traceIdHeader = XLogging.getConfig().getTraceIdHeader();
+        this.headerTrie = CapturedHeaders.getRequestHeaders();
+        this.decodeServerTiming = false;
+        this.streamingThreshold = 0;
+        this.skipRemaining = PREFACE_REMAINDER_LENGTH;
+    }
+
+    /**
+     * Parse response side frames from the beginning of the stream
+     *
+     * @param httpParserHandler HttpParserHandler
+     */
+    public Http2FrameParser(HttpParserHandler httpParserHandler) {
+        super(httpParserHandler);
+        this.request = false;
+        this.connection = getHandler().getHttp2Connection();
+        this.traceIdHeader = null;
+        this.headerTrie = CapturedHeaders.getResponseHeaders();
+        this.decodeServerTiming = XLogging.getConfig().isDecodeServerTiming();
+        this.streamingThreshold = XLogging.getConfig().getStreamingThreshold();
+        this.skipRemaining = 0;
+    }
+
+    @Override
+    public boolean parse(CharBuffer charBuffer) {
+        return true;
+    }
+
+    @Override
+    public boolean add(int oneByte) {
+        if (oneByte == -1) {
+            close();
+            return true;
+        }
+        this.oneByte[0] = (byte) oneByte;
+        return addBlock(this.oneByte, 0, 1) != 1;
+    }
+
+    @Override
+    public int addBlock(byte[] buffer, int offset, int count) {
+        if (count == -1) {
+            close();
+            return -1;
+        }
+        if (buffer == null || count == 0) {
+            return -1;
+        }
+        try {
+            consume(buffer, offset, count);
+        } catch (IOException e) {
+            log.warning("Http2FrameParser: " + e.getMessage());
+            getHandler().setNextParser(NoopLineParser.DEFAULT);
+            return -1;
+        }
+        return count;
+    }
+
+    private void consume(byte[] buffer, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            if (skipRemaining > 0) {
+                int skip = Math.min(skipRemaining, end - offset);
+                skipRemaining -= skip;
+                offset += skip;
+            } else if (frameHeaderLength < FRAME_HEADER_LENGTH) {
+                int copy = Math.min(FRAME_HEADER_LENGTH - frameHeaderLength, end - offset);
+                System.arraycopy(buffer, offset, frameHeader, frameHeaderLength, copy);
+                frameHeaderLength += copy;
+                offset += copy;
+                if (frameHeaderLength == FRAME_HEADER_LENGTH) {
+                    readFrameHeader();
+                    if (payloadRemaining == 0) {
+                        readFrameEnd();
+                    }
+                }
+            } else {
+                int copy = Math.min(payloadRemaining, end - offset);
+                if (bufferPayload) {
+                    System.arraycopy(buffer, offset, payload, payloadLength - payloadRemaining, copy);
+                } else if (dataTransactionState != null) {
+                    ContentEncodingUtil.addResponseBody(dataTransactionState, buffer, offset, copy);
+                    ErrorBodyCapture.addResponseBody(dataTransactionState, buffer, offset, copy);
+                    if (dataStreamingResponse != null) {
+                        notifyStreamingInterval(dataStreamingResponse.bodyParsed(buffer, offset,
+                                copy, System.currentTimeMillis()));
+                    }
+                }
+                payloadRemaining -= copy;
+                offset += copy;
+                if (payloadRemaining == 0) {
+                    readFrameEnd();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (count == 0) {
+            return -1;
+        }
+        try {
+            consume(buffer, offset, count);
+        } catch (IOException e) {
+            log.warning("Http2FrameParser: " + e.getMessage());
+            getHandler().setNextParser(NoopLineParser.DEFAULT);
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Same as consume(byte[], int, int) for a direct buffer
+     */
+    private void consume(ByteBuffer buffer, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            if (skipRemaining > 0) {
+                int skip = Math.min(skipRemaining, end - offset);
+                skipRemaining -= skip;
+                offset += skip;
+            } else if (frameHeaderLength < FRAME_HEADER_LENGTH) {
+                int copy = Math.min(FRAME_HEADER_LENGTH - frameHeaderLength, end - offset);
+                for (int i = 0; i < copy; i++) {
+                    frameHeader[frameHeaderLength++] = buffer.get(offset++);
+                }
+                if (frameHeaderLength == FRAME_HEADER_LENGTH) {
+                    readFrameHeader();
+                    if (payloadRemaining == 0) {
+                        readFrameEnd();
+                    }
+                }
+            } else {
+                int copy = Math.min(payloadRemaining, end - offset);
+                if (bufferPayload) {
+                    int payloadOffset = payloadLength - payloadRemaining;
+                    for (int i = 0; i < copy; i++) {
+                        payload[payloadOffset + i] = buffer.get(offset + i);
+                    }
+                } else if (dataTransactionState != null) {
+                    ContentEncodingUtil.addResponseBody(dataTransactionState, buffer, offset, copy);
+                    ErrorBodyCapture.addResponseBody(dataTransactionState, buffer, offset, copy);
+                    if (dataStreamingResponse != null) {
+                        notifyStreamingInterval(dataStreamingResponse.bodyParsed(buffer, offset,
+                                copy, System.currentTimeMillis()));
+                    }
+                }
+                payloadRemaining -= copy;
+                offset += copy;
+                if (payloadRemaining == 0) {
+                    readFrameEnd();
+                }
+            }
+        }
+    }
+
+    private void readFrameHeader() throws IOException {
+        this.payloadLength = (frameHeader[0] & 0xFF) << 16 | (frameHeader[1] & 0xFF) << 8
+                | (frameHeader[2] & 0xFF);
+        this.type = frameHeader[3] & 0xFF;
+        this.flags = frameHeader[4] & 0xFF;
+        this.streamId = ((frameHeader[5] & 0x7F) << 24 | (frameHeader[6] & 0xFF) << 16
+                | (frameHeader[7] & 0xFF) << 8 | (frameHeader[8] & 0xFF));
+        this.payloadRemaining = payloadLength;
+        this.bufferPayload = type == TYPE_HEADERS || type == TYPE_CONTINUATION
+                || type == TYPE_PUSH_PROMISE || type == TYPE_RST_STREAM;
+        if (bufferPayload) {
+            if (payloadLength > MAX_HEADER_BLOCK_LENGTH) {
+                throw new IOException("Frame too large to buffer: " + payloadLength);
+            }
+            if (payload == null || payload.length < payloadLength) {
+                this.payload = new byte[Math.max(payloadLength, 256)];
+            }
+        }
+        this.dataTransactionState = null;
+        this.dataStreamingResponse = null;
+        if (streamId != 0) {
+            TransactionState transactionState = connection.getStream(streamId);
+            if (transactionState == null && request && type == TYPE_HEADERS) {
+                transactionState = connection.openStream(streamId);
+            }
+            if (transactionState != null) {
+                addFrameBytes(transactionState, FRAME_HEADER_LENGTH + payloadLength);
+                // padding is counted as body, padded frames are not used for the gzip trailer
+                if (!request && type == TYPE_DATA) {
+                    this.dataStreamingResponse = getStreamingResponse(transactionState);
+                    if ((flags & FLAG_PADDED) == 0) {
+                        this.dataTransactionState = transactionState;
+                    } else {
+                        transactionState.setResponseBodyBytes(
+                                transactionState.getResponseBodyBytes() + payloadLength);
+                        if (dataStreamingResponse != null) {
+                            notifyStreamingInterval(dataStreamingResponse.bodyParsed(
+                                    payloadLength, System.currentTimeMillis()));
+                        }
+                    }
+                }
+            }
+        }
+        if (type == TYPE_HEADERS || type == TYPE_PUSH_PROMISE) {
+            this.headerBlockStartTime = System.currentTimeMillis();
+        }
+    }
+
+    private void readFrameEnd() throws IOException {
+        this.frameHeaderLength = 0;
+        switch (type) {
+            case TYPE_DATA:
+                if ((flags & FLAG_END_STREAM) != 0) {
+                    endStream(streamId);
+                }
+                break;
+            case TYPE_HEADERS:
+                readHeaders();
+                break;
+            case TYPE_PUSH_PROMISE:
+                readPushPromise();
+                break;
+            case TYPE_CONTINUATION:
+                if (streamId != headerBlockStreamId) {
+                    throw new IOException("Unexpected CONTINUATION for stream " + streamId);
+                }
+                appendHeaderBlock(0, payloadLength);
+                break;
+            case TYPE_RST_STREAM:
+                readRstStream();
+                break;
+            default:
+                // SETTINGS/PING/GOAWAY/WINDOW_UPDATE/PRIORITY, ignore
+                break;
+        }
+    }
+
+    private void readHeaders() throws IOException {
+        int offset = 0;
+        int padding = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padding = payload[offset++] & 0xFF;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            // stream dependency(4) + weight(1)
+            offset += 5;
+        }
+        this.headerBlockStreamId = streamId;
+        this.headerBlockEndStream = (flags & FLAG_END_STREAM) != 0;
+        this.headerBlockTransactionState = connection.getStream(streamId);
+        this.headerBlockLength = 0;
+        appendHeaderBlock(offset, payloadLength - offset - padding);
+    }
+
+    private void readPushPromise() throws IOException {
+        int offset = 0;
+        int padding = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padding = payload[offset++] & 0xFF;
+        }
+        // promised stream id(4)
+        offset += 4;
+        // pushed streams are not recorded, but the header block must still be decoded
+        this.headerBlockStreamId = streamId;
+        this.headerBlockEndStream = false;
+        this.headerBlockTransactionState = null;
+        this.headerBlockLength = 0;
+        appendHeaderBlock(offset, payloadLength - offset - padding);
+    }
+
+    private void readRstStream() {
+        if (payloadLength < 4) {
+            return;
+        }
+        TransactionState transactionState = connection.closeStream(streamId);
+        if (transactionState == null) {
+            return;
+        }
+        int errorCode = (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16
+                | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF);
+        transactionState.setException("RST_STREAM errorCode=" + errorCode);
+        // reset by the client is a cancel, e.g. OkHttp Call.cancel()
+        transactionState.setErrorType(request ? ErrorType.CANCELLED : ErrorType.STREAM_RESET);
+        transactionState.setErrorPhase(request ? ErrorPhase.REQUEST : ErrorPhase.RESPONSE);
+        transactionState.endTransaction();
+        getHandler().http2StreamFinished(transactionState);
+    }
+
+    private void appendHeaderBlock(int offset, int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid padding for stream " + streamId);
+        }
+        if (headerBlockLength + count > MAX_HEADER_BLOCK_LENGTH) {
+            throw new IOException("Header block too large: " + (headerBlockLength + count));
+        }
+        if (headerBlock == null || headerBlock.length < headerBlockLength + count) {
+            byte[] dest = new byte[Math.max(headerBlockLength + count, 256)];
+            if (headerBlock != null) {
+                System.arraycopy(headerBlock, 0, dest, 0, headerBlockLength);
+            }
+            this.headerBlock = dest;
+        }
+        System.arraycopy(payload, offset, headerBlock, headerBlockLength, count);
+        headerBlockLength += count;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            connection.getHpackDecoder(request).decode(headerBlock, 0, headerBlockLength, this);
+            TransactionState transactionState = headerBlockTransactionState;
+            if (!request && transactionState != null && transactionState.getResponseStartTime() != -1L
+                    && transactionState.getResponseHeaderEndTime() == -1L) {
+                long now = System.currentTimeMillis();
+                transactionState.setResponseHeaderEndTime(now);
+                if (!headerBlockEndStream
+                        && StreamingResponse.isEventStream(transactionState.getContentType())) {
+                    String contentEncoding = transactionState.getContentEncoding();
+                    connection.setStreamingResponse(headerBlockStreamId,
+                            new StreamingResponse(transactionState, now, 0,
+                                    contentEncoding.length() == 0
+                                            || contentEncoding.equalsIgnoreCase("identity")));
+                }
+            }
+            if (headerBlockEndStream) {
+                endStream(headerBlockStreamId);
+            }
+            this.headerBlockTransactionState = null;
+        }
+    }
+
+    @Override
+    public boolean isInterested(String name) {
+        // only pseudo headers, content-encoding/type, server-timing, trace id and allowlisted
+        // headers, and only for recorded streams
+        return headerBlockTransactionState != null && name.length() > 0
+                && (name.charAt(0) == ':' || !request && "content-encoding".equals(name)
+                || !request && "content-type".equals(name)
+                || decodeServerTiming && "server-timing".equals(name)
+                || request && traceIdHeader != null && traceIdHeader.equalsIgnoreCase(name)
+                || headerTrie != null && headerTrie.match(name) != null);
+    }
+
+    @Override
+    public void header(String name, String value) {
+        TransactionState transactionState = headerBlockTransactionState;
+        if (headerTrie != null && name.charAt(0) != ':') {
+            String capturedName = headerTrie.match(name);
+            if (capturedName != null) {
+                if (request) {
+                    transactionState.addRequestHeader(capturedName, value);
+                } else {
+                    transactionState.addResponseHeader(capturedName, value);
+                }
+            }
+        }
+        if (request) {
+            if (":method".equals(name)) {
+                transactionState.setRequestMethod(StringCache.intern(value));
+            } else if (":path".equals(name)) {
+                transactionState.setPathAndQuery(value);
+            } else if (":authority".equals(name)) {
+                transactionState.setHost(URLUtil.getHost(value));
+            } else if (":scheme".equals(name)) {
+                transactionState.setScheme(StringCache.intern(value));
+            } else if (traceIdHeader != null && traceIdHeader.equalsIgnoreCase(name)) {
+                transactionState.setTraceId(value);
+            }
+        } else if ("content-encoding".equals(name)) {
+            transactionState.setContentEncoding(StringCache.intern(value));
+        } else if ("content-type".equals(name)) {
+            transactionState.setContentType(StringCache.intern(value));
+        } else if (decodeServerTiming && "server-timing".equals(name)) {
+            char[] chars = value.toCharArray();
+            ServerTimingParser.parse(chars, 0, chars.length, transactionState);
+        } else if (":status".equals(name)) {
+            try {
+                int statusCode = Integer.parseInt(value);
+                // ignore informational 1xx headers
+                if (statusCode >= 200) {
+                    transactionState.setStatusCode(statusCode);
+                    if (transactionState.getResponseStartTime() == -1L) {
+                        transactionState.setResponseStartTime(headerBlockStartTime);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Streaming state of a response stream, same as HTTP/1.x: SSE from its HEADERS, or a long
+     * poll still receiving DATA after streamingThreshold
+     *
+     * @param transactionState TransactionState of the stream
+     * @return null if not streaming
+     */
+    private StreamingResponse getStreamingResponse(TransactionState transactionState) {
+        StreamingResponse streamingResponse = connection.getStreamingResponse(streamId);
+        if (streamingResponse != null || streamingThreshold <= 0) {
+            return streamingResponse;
+        }
+        long responseStartTime = transactionState.getResponseStartTime();
+        if (responseStartTime != -1L
+                && System.currentTimeMillis() - responseStartTime >= streamingThreshold) {
+            // long poll, the body so far goes to the first interval
+            streamingResponse = new StreamingResponse(transactionState, responseStartTime,
+                    Math.max(transactionState.getResponseBodyBytes(), 0L), false);
+            connection.setStreamingResponse(streamId, streamingResponse);
+        }
+        return streamingResponse;
+    }
+
+    private void notifyStreamingInterval(TransactionState intervalTransactionState) {
+        if (intervalTransactionState != null) {
+            getHandler().http2StreamingIntervalFound(intervalTransactionState);
+        }
+    }
+
+    private void addFrameBytes(TransactionState transactionState, int bytes) {
+        if (request) {
+            transactionState.setBytesSent(transactionState.getBytesSent() + bytes);
+        } else {
+            transactionState.setBytesReceived(transactionState.getBytesReceived() + bytes);
+        }
+    }
+
+    private void endStream(int streamId) {
+        if (request) {
+            TransactionState transactionState = connection.getStream(streamId);
+            if (transactionState != null) {
+                transactionState.setRequestEndTime(System.currentTimeMillis());
+            }
+            return;
+        }
+        TransactionState transactionState = connection.closeStream(streamId);
+        if (transactionState != null) {
+            ContentEncodingUtil.finishResponseBody(transactionState);
+            transactionState.endTransaction();
+            getHandler().http2StreamFinished(transactionState);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!request) {
+            for (TransactionState transactionState : connection.closeAllStreams()) {
+                transactionState.setException("Connection closed before stream finished");
+                transactionState.setErrorType(ErrorType.CONNECTION_CLOSED);
+                transactionState.setErrorPhase(ErrorPhase.RESPONSE);
+                transactionState.endTransaction();
+                getHandler().http2StreamFinished(transactionState);
+            }
+        }
+        getHandler().setNextParser(NoopLineParser.DEFAULT);
+    }
+
+    @Override
+    protected int getInitialBufferSize() {
+        return 0;
+    }
+
+    @Override
+    protected int getMaxBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterBufferFull() {
+        return this;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterSuccessfulParse() {
+        return this;
+    }
+}
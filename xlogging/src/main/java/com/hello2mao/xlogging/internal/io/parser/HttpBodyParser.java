@@ -4,19 +4,18 @@ import com.hello2mao.xlogging.internal.io.CharBuffer;
 
 import junit.framework.Assert;
 
+import java.nio.ByteBuffer;
+
 public class HttpBodyParser extends AbstractParser {
 
     private int contentLength;
     private int count = 0;
-    private StringBuilder body;
+    private final byte[] oneByte = new byte[1];
 
     public HttpBodyParser(AbstractParser parser, int contentLength) {
         super(parser);
         Assert.assertTrue(contentLength > 0 && contentLength < Integer.MAX_VALUE);
         this.contentLength = contentLength;
-        if (contentLength < 1024) {
-            this.body = new StringBuilder();
-        }
     }
 
     @Override
@@ -41,14 +40,10 @@ public class HttpBodyParser extends AbstractParser {
         }
         this.count += 1;
         this.charactersInMessage += 1;
-        if (contentLength < 1024) {
-            body.append(oneByte);
-        }
+        this.oneByte[0] = (byte) oneByte;
+        getHandler().bodyParsed(this.oneByte, 0, 1);
         // body解析完成
         if (count == contentLength) {
-            if (body != null) {
-                getHandler().appendBody(body.toString());
-            }
             getHandler().finishedMessage(getCharactersInMessage());
             AbstractParser parser = getHandler().getInitialParser();
             // 重置parser
@@ -69,13 +64,33 @@ public class HttpBodyParser extends AbstractParser {
         if (this.count + count < this.contentLength) {
             this.count += count;
             this.charactersInMessage += count;
+            getHandler().bodyParsed(buffer, offset, count);
+            return count;
+        }
+        int remaining = this.contentLength - this.count;
+        this.count += remaining;
+        this.charactersInMessage += remaining;
+        getHandler().bodyParsed(buffer, offset, remaining);
+        getHandler().finishedMessage(getCharactersInMessage());
+        getHandler().setNextParser(getHandler().getInitialParser());
+        return remaining;
+    }
+
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (this.count + count < this.contentLength) {
+            this.count += count;
+            this.charactersInMessage += count;
+            getHandler().bodyParsed(buffer, offset, count);
             return count;
         }
-        offset = this.contentLength - this.count;
-        this.charactersInMessage += offset;
+        int remaining = this.contentLength - this.count;
+        this.count += remaining;
+        this.charactersInMessage += remaining;
+        getHandler().bodyParsed(buffer, offset, remaining);
         getHandler().finishedMessage(getCharactersInMessage());
         getHandler().setNextParser(getHandler().getInitialParser());
-        return offset;
+        return remaining;
     }
 
     @Override
@@ -3,21 +3,19 @@ package com.hello2mao.xlogging.internal.io.parser;
 
 import com.hello2mao.xlogging.internal.io.CharBuffer;
 
+import java.nio.ByteBuffer;
+
 public class HttpChunkBodyParser extends AbstractParser {
     private int chunkLength;
     private int count = 0;
     private HttpChunkSizeParser sizeParser;
-    private StringBuilder bodyContent;
+    private final byte[] oneByte = new byte[1];
 
     public HttpChunkBodyParser(HttpChunkSizeParser sizeParser, int chunkLength) {
         super(sizeParser);
         this.count = 0;
         this.sizeParser = sizeParser;
         this.chunkLength = chunkLength;
-        // StatusCode>=400则记录body
-        if (isStatusError()) {
-            bodyContent = new StringBuilder();
-        }
     }
 
     @Override
@@ -26,45 +24,26 @@ public class HttpChunkBodyParser extends AbstractParser {
         return true;
     }
 
-    private boolean isStatusError() {
-        try {
-            if (bodyContent == null && getHandler().getTransactionState() != null
-                    && getHandler().getTransactionState().getStatusCode() >= 400) {
-                return true;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return false;
-    }
-
     @Override
     public boolean add(int oneByte) {
-        if (count >= chunkLength + 2) {
-            return false;
-        }
-        if (bodyContent != null && bodyContent.toString().length() < 1024) {
-            bodyContent.append((char) oneByte);
-        }
-        // 流结束
+        // 流结束, the message is incomplete, same as addBlock(buffer, offset, -1)
         if (oneByte == -1) {
-            if (bodyContent != null) {
-                getHandler().appendBody(bodyContent.toString());
-            }
-            getHandler().finishedMessage(getCharactersInMessage());
             getHandler().setNextParser(NoopLineParser.DEFAULT);
             return true;
         }
+        if (count >= chunkLength + 2) {
+            return false;
+        }
         ++charactersInMessage;
         char character = (char) oneByte;
         ++count;
-        if (count > chunkLength) {
+        if (count <= chunkLength) {
+            this.oneByte[0] = (byte) oneByte;
+            getHandler().bodyParsed(this.oneByte, 0, 1);
+        } else {
             this.currentTimeStamp = System.currentTimeMillis();
             if (character == '\n') { // 本次ChunkedBody结束，但整个chunked传输还未结束
                 parse(null);
-                if (bodyContent != null) {
-                    getHandler().appendBody(bodyContent.toString());
-                }
                 sizeParser.setCharactersInMessage(getCharactersInMessage());
                 getHandler().setNextParser(sizeParser);
                 return true;
@@ -73,6 +52,43 @@ public class HttpChunkBodyParser extends AbstractParser {
         return false;
     }
 
+    /**
+     * chunk data is skipped in bulk, trailing CRLF is parsed byte by byte
+     */
+    @Override
+    protected int addBlock(byte[] buffer, int offset, int count) {
+        if (count == -1 || buffer == null || count == 0) {
+            return super.addBlock(buffer, offset, count);
+        }
+        int consumed = Math.max(0, Math.min(chunkLength - this.count, count));
+        if (consumed > 0) {
+            this.count += consumed;
+            this.charactersInMessage += consumed;
+            getHandler().bodyParsed(buffer, offset, consumed);
+            if (consumed == count) {
+                return count;
+            }
+        }
+        return consumed + super.addBlock(buffer, offset + consumed, count - consumed);
+    }
+
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (count == 0) {
+            return super.addBlock(buffer, offset, count);
+        }
+        int consumed = Math.max(0, Math.min(chunkLength - this.count, count));
+        if (consumed > 0) {
+            this.count += consumed;
+            this.charactersInMessage += consumed;
+            getHandler().bodyParsed(buffer, offset, consumed);
+            if (consumed == count) {
+                return count;
+            }
+        }
+        return consumed + super.addBlock(buffer, offset + consumed, count - consumed);
+    }
+
     @Override
     public AbstractParser nextParserAfterSuccessfulParse() {
         return this.sizeParser;
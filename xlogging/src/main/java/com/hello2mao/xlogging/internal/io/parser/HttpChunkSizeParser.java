@@ -17,7 +17,12 @@ public class HttpChunkSizeParser extends AbstractParser {
         try {
             // 第一部分是十六进制表示的块长度
             // 当为0时，chunked传输结束
-            this.parsedChunkSize = Integer.parseInt(charBuffer.subStringTrimmed(charBuffer.length), 16);
+            // e.g. "1a;name=value", chunk extensions are ignored
+            int end = 0;
+            while (end < charBuffer.length && charBuffer.charArray[end] != ';') {
+                end++;
+            }
+            this.parsedChunkSize = Integer.parseInt(charBuffer.subStringTrimmed(end), 16);
             return true;
         } catch (NumberFormatException e) {
             return false;
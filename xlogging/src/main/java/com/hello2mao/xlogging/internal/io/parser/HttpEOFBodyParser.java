@@ -3,8 +3,12 @@ package com.hello2mao.xlogging.internal.io.parser;
 
 import com.hello2mao.xlogging.internal.io.CharBuffer;
 
+import java.nio.ByteBuffer;
+
 public class HttpEOFBodyParser extends AbstractParser {
 
+    private final byte[] oneByte = new byte[1];
+
     public HttpEOFBodyParser(AbstractParser parser) {
         super(parser);
     }
@@ -23,6 +27,8 @@ public class HttpEOFBodyParser extends AbstractParser {
             return true;
         }
         this.charactersInMessage += 1;
+        this.oneByte[0] = (byte) data;
+        getHandler().bodyParsed(this.oneByte, 0, 1);
         // TODO:
         this.currentTimeStamp = System.currentTimeMillis();
         return false;
@@ -36,9 +42,16 @@ public class HttpEOFBodyParser extends AbstractParser {
             return -1;
         }
         this.charactersInMessage += count;
+        getHandler().bodyParsed(buffer, offset, count);
         return count;
     }
 
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        this.charactersInMessage += count;
+        getHandler().bodyParsed(buffer, offset, count);
+        return count;
+    }
 
     @Override
     public AbstractParser nextParserAfterBufferFull() {
@@ -10,12 +10,18 @@ import com.hello2mao.xlogging.internal.io.CharBuffer;
 public abstract class HttpHeaderParser extends AbstractParser {
 
     private static final int MAX_HEADER_LENGTH = 256;
+    // captured headers, e.g. Set-Cookie or Link, the record budget is in TransactionState
+    private static final int MAX_CAPTURED_HEADER_LENGTH = 8 * 1024;
     private static final int INITIAL_HEADER_LENGTH = 100;
 
     private boolean chunkedTransferEncoding = false;
+    private boolean transferEncodingSet = false;
     private boolean hasParsedHost = false;
     private boolean isContentLengthSet = false;
+    // differing or malformed Content-Length values, RFC 7230 3.3.3 (4)
+    private boolean invalidContentLength = false;
     private int parsedContentLength;
+    private String upgrade = "";
     private boolean parsedEndOfHeader = false;
 
     public HttpHeaderParser(AbstractParser parser) {
@@ -29,7 +35,13 @@ public abstract class HttpHeaderParser extends AbstractParser {
             log.debug("Run parse in HttpHeaderParser: parsedEndOfHeader");
             return parsedEndOfHeader = true;
         }
-        boolean parsedSuccess = true;
+        HeaderTrie headerTrie = getHeaderTrie();
+        if (headerTrie != null) {
+            String name = headerTrie.match(charBuffer);
+            if (name != null) {
+                getHandler().headerFound(name, getValue(charBuffer, name.length() + 1));
+            }
+        }
         try {
             String[] split = charBuffer.toString().split(":", 2);
             if (split.length != 2) {
@@ -39,28 +51,112 @@ public abstract class HttpHeaderParser extends AbstractParser {
             String value = split[1].trim();
             log.debug("Run parse in HttpHeaderParser: " + charBuffer);
             HttpParserHandler handler = getHandler();
-            if (!isContentLengthSet && key.equalsIgnoreCase("Content-Length")) {
-                int contentLength = Integer.parseInt(value);
-                if (contentLength < 0) {
-                    return false;
+            if (key.equalsIgnoreCase("Content-Length")) {
+                // e.g. "Content-Length: 42, 42" from a proxy joining duplicate headers
+                for (String contentLengthValue : value.split(",")) {
+                    int contentLength = Integer.parseInt(contentLengthValue.trim());
+                    if (contentLength < 0
+                            || isContentLengthSet && contentLength != parsedContentLength) {
+                        invalidContentLength = true;
+                    }
+                    isContentLengthSet = true;
+                    parsedContentLength = contentLength;
                 }
-                isContentLengthSet = true;
-                parsedContentLength = contentLength;
             } else if (key.equalsIgnoreCase("Transfer-Encoding")) {
-                // Transfer-Encoding in header: chunked
-                chunkedTransferEncoding = value.equalsIgnoreCase("chunked");
+                // e.g. "gzip, chunked", the message is chunked only if chunked is the final coding
+                transferEncodingSet = true;
+                int lastComma = value.lastIndexOf(',');
+                chunkedTransferEncoding = value.substring(lastComma + 1).trim()
+                        .equalsIgnoreCase("chunked");
+            } else if (key.equalsIgnoreCase("Content-Encoding")) {
+                handler.contentEncodingFound(value);
+            } else if (key.equalsIgnoreCase("Content-Type")) {
+                handler.contentTypeFound(value);
+            } else if (key.equalsIgnoreCase("Upgrade")) {
+                upgrade = value;
             } else if (!hasParsedHost && key.equalsIgnoreCase("Host")) {
                 hasParsedHost = true;
                 handler.hostFound(value);
                 log.debug("Collect host=" + value);
             }
         } catch (NumberFormatException e) {
-            parsedSuccess = false;
-            e.printStackTrace();
+            invalidContentLength = true;
+        }
+        return true;
+    }
+
+    /**
+     * Lines are cut at MAX_HEADER_LENGTH unless their value is captured, checked once
+     * when a line reaches that length.
+     *
+     * @param oneByte int
+     * @return boolean
+     */
+    @Override
+    public boolean add(int oneByte) {
+        if (buffer.length == MAX_HEADER_LENGTH && oneByte != '\n' && oneByte != -1
+                && !isCapturedLine(buffer)) {
+            this.charactersInMessage += 1;
+            getHandler().setNextParser(nextParserAfterBufferFull());
+            return true;
+        }
+        return super.add(oneByte);
+    }
+
+    /**
+     * @param charBuffer CharBuffer, a line of MAX_HEADER_LENGTH chars
+     * @return true if the line may grow up to MAX_CAPTURED_HEADER_LENGTH
+     */
+    protected boolean isCapturedLine(CharBuffer charBuffer) {
+        HeaderTrie headerTrie = getHeaderTrie();
+        return headerTrie != null && headerTrie.match(charBuffer) != null;
+    }
+
+    /**
+     * Case-insensitive match of header name against the line prefix, no String created
+     *
+     * @param charBuffer CharBuffer
+     * @param name String
+     * @return boolean
+     */
+    protected static boolean isHeader(CharBuffer charBuffer, String name) {
+        int length = name.length();
+        if (charBuffer.length <= length || charBuffer.charArray[length] != ':') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (toLowerCase(charBuffer.charArray[i]) != toLowerCase(name.charAt(i))) {
+                return false;
+            }
         }
-        return parsedSuccess;
+        return true;
     }
 
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    // header value after the colon, surrounding whitespace trimmed
+    protected static String getValue(CharBuffer charBuffer, int start) {
+        int end = charBuffer.length;
+        while (start < end && (charBuffer.charArray[start] == ' '
+                || charBuffer.charArray[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (charBuffer.charArray[end - 1] == ' '
+                || charBuffer.charArray[end - 1] == '\t' || charBuffer.charArray[end - 1] == '\r')) {
+            end--;
+        }
+        return new String(charBuffer.charArray, start, end - start);
+    }
+
+    /**
+     * Allowlisted headers of this direction
+     *
+     * @return HeaderTrie, null if none
+     */
+    protected abstract HeaderTrie getHeaderTrie();
+
     protected abstract AbstractParser nextParserAfterEndOfHeader();
 
     @Override
@@ -77,6 +173,7 @@ public abstract class HttpHeaderParser extends AbstractParser {
 
     @Override
     public AbstractParser nextParserAfterBufferFull() {
+        log.debug("Skip header line longer than " + buffer.length);
         buffer.length = 0;
         return new NewlineLineParser(this);
     }
@@ -88,7 +185,7 @@ public abstract class HttpHeaderParser extends AbstractParser {
 
     @Override
     protected int getMaxBufferSize() {
-        return MAX_HEADER_LENGTH;
+        return MAX_CAPTURED_HEADER_LENGTH;
     }
 
     public boolean isContentLengthSet() {
@@ -102,4 +199,16 @@ public abstract class HttpHeaderParser extends AbstractParser {
     public boolean isChunkedTransferEncoding() {
         return chunkedTransferEncoding;
     }
+
+    public boolean isTransferEncodingSet() {
+        return transferEncodingSet;
+    }
+
+    public boolean isInvalidContentLength() {
+        return invalidContentLength;
+    }
+
+    public String getUpgrade() {
+        return upgrade;
+    }
 }
\ No newline at end of file
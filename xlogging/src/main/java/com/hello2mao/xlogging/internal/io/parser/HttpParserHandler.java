@@ -1,6 +1,10 @@
 package com.hello2mao.xlogging.internal.io.parser;
 
+import com.hello2mao.xlogging.internal.Http2Connection;
 import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
+
+import java.nio.ByteBuffer;
 
 public interface HttpParserHandler {
 
@@ -14,10 +18,27 @@ public interface HttpParserHandler {
 
     void hostFound(String host);
 
+    void traceIdFound(String traceId);
+
+    // allowlisted header, name as configured
+    void headerFound(String name, String value);
+
     void statusLineFound(int statusCode);
 
-    // 记录大小max=1024
-    void appendBody(String body);
+    void contentEncodingFound(String contentEncoding);
+
+    void contentTypeFound(String contentType);
+
+    void headerEndFound();
+
+    // 101 Switching Protocols, upgrade is the Upgrade header value, e.g. "websocket"
+    void upgradeFound(String upgrade);
+
+    // raw body bytes, chunk framing excluded
+    void bodyParsed(byte[] buffer, int offset, int count);
+
+    // same for a direct buffer, offset is absolute and position is not used
+    void bodyParsed(ByteBuffer buffer, int offset, int count);
 
     void finishedMessage(int charactersInMessage);
 
@@ -26,4 +47,23 @@ public interface HttpParserHandler {
     TransactionState getTransactionState();
 
     String getParsedRequestMethod();
+
+    Http2Connection getHttp2Connection();
+
+    void http2StreamFinished(TransactionState transactionState);
+
+    // one report interval of a streaming HTTP/2 response, the stream is still open
+    void http2StreamingIntervalFound(TransactionState intervalTransactionState);
+
+    WebSocketConnection getWebSocketConnection();
+
+    // one report interval of a WebSocket connection
+    void webSocketRecordFinished(TransactionState transactionState);
+
+    // TLS record header instead of HTTP, the rest of the stream is only counted,
+    // false if TLS of the socket is counted by a monitored SSL socket on top of it
+    boolean tlsFound();
+
+    // encrypted connection ended, bytes of both directions are on the record
+    void tlsStreamFinished(TransactionState transactionState);
 }
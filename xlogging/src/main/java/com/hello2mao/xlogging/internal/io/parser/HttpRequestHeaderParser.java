@@ -1,5 +1,6 @@
 package com.hello2mao.xlogging.internal.io.parser;
 
+import com.hello2mao.xlogging.XLogging;
 import com.hello2mao.xlogging.internal.io.CharBuffer;
 
 /**
@@ -7,21 +8,47 @@ import com.hello2mao.xlogging.internal.io.CharBuffer;
  */
 public class HttpRequestHeaderParser extends HttpHeaderParser {
 
+    // e.g. "traceparent", null if trace id capture is disabled
+    private final String traceIdHeader;
+    // allowlisted request headers, null if none
+    private final HeaderTrie headerTrie;
+
     public HttpRequestHeaderParser(AbstractParser parser) {
         super(parser);
+        this.traceIdHeader = XLogging.getConfig().getTraceIdHeader();
+        this.headerTrie = CapturedHeaders.getRequestHeaders();
     }
 
     @Override
     public boolean parse(CharBuffer charBuffer) {
         log.debug("Run parse in HttpRequestHeaderParser");
+        if (traceIdHeader != null && isHeader(charBuffer, traceIdHeader)) {
+            getHandler().traceIdFound(getValue(charBuffer, traceIdHeader.length() + 1));
+            return true;
+        }
         return super.parse(charBuffer);
     }
 
+    @Override
+    protected boolean isCapturedLine(CharBuffer charBuffer) {
+        // trace id header, e.g. a long X-Request-Id
+        return traceIdHeader != null && isHeader(charBuffer, traceIdHeader)
+                || super.isCapturedLine(charBuffer);
+    }
+
+    @Override
+    protected HeaderTrie getHeaderTrie() {
+        return headerTrie;
+    }
+
     @Override
     protected AbstractParser nextParserAfterEndOfHeader() {
         AbstractParser parser;
         if (isChunkedTransferEncoding()) { // chunked request body
             parser = new HttpChunkSizeParser(this);
+        } else if (isTransferEncodingSet() || isInvalidContentLength()) {
+            // request framing is unknown, RFC 7230 3.3.3 (3)(4), stop parsing the connection
+            parser = NoopLineParser.DEFAULT;
         } else if ((isContentLengthSet()) && (getContentLength() > 0)) { // normal request body
             parser = new HttpBodyParser(this, getContentLength());
         } else { // no request body
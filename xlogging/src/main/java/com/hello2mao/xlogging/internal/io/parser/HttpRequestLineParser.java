@@ -9,11 +9,60 @@ public class HttpRequestLineParser extends AbstractParser {
 
     private static final int MAX_LINE_LENGTH = 2048;
     private static final int INITIAL_BUFFER_SIZE = 64;
+    // longer tokens are not a request method
+    private static final int MAX_METHOD_LENGTH = 32;
+    private boolean http2Preface = false;
+    private boolean methodFound = false;
 
     public HttpRequestLineParser(HttpParserHandler parserHandler) {
         super(parserHandler);
     }
 
+    /**
+     * Sniff the method token before buffering the line, so ciphertext or another protocol
+     * on a plain socket is not buffered up to MAX_LINE_LENGTH. A TLS record header switches
+     * to byte counting, anything else that is not a method stops parsing.
+     *
+     * @param oneByte int
+     * @return boolean
+     */
+    @Override
+    public boolean add(int oneByte) {
+        if (oneByte == -1 || methodFound) {
+            return super.add(oneByte);
+        }
+        int length = buffer.length;
+        if (length == 1 && buffer.charArray[0] == EncryptedStreamParser.TLS_HANDSHAKE) {
+            if (oneByte != EncryptedStreamParser.TLS_MAJOR_VERSION) {
+                getHandler().setNextParser(NoopLineParser.DEFAULT);
+                return true;
+            }
+            log.debug("Found TLS record header in request");
+            this.charactersInMessage += 1;
+            getHandler().setNextParser(getHandler().tlsFound()
+                    ? new EncryptedStreamParser(this, true) : NoopLineParser.DEFAULT);
+            return true;
+        }
+        if (oneByte == ' ' && length > 0) {
+            this.methodFound = true;
+        } else if (!(length == 0 && oneByte == EncryptedStreamParser.TLS_HANDSHAKE)
+                && (length == MAX_METHOD_LENGTH || !isTokenChar(oneByte))) {
+            getHandler().setNextParser(NoopLineParser.DEFAULT);
+            return true;
+        }
+        return super.add(oneByte);
+    }
+
+    /**
+     * tchar of RFC 7230
+     */
+    private static boolean isTokenChar(int c) {
+        if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9') {
+            return true;
+        }
+        return c > ' ' && c < 0x7F && "!#$%&'*+-.^_`|~".indexOf(c) != -1;
+    }
+
     /**
      * request head demo：
      * GET /channel/listjson?pn=0 HTTP/1.1
@@ -32,6 +81,13 @@ public class HttpRequestLineParser extends AbstractParser {
         if (requestLine.length != 3) {
             return false;
         }
+        // HTTP/2 connection preface: PRI * HTTP/2.0
+        if ("PRI".equals(requestLine[0]) && "*".equals(requestLine[1])
+                && "HTTP/2.0".equals(requestLine[2].trim())) {
+            log.debug("Found HTTP/2 connection preface");
+            this.http2Preface = true;
+            return true;
+        }
         // requestMethod pathAndQuery protocol
         getHandler().requestLineFound(requestLine[0], requestLine[1], requestLine[2]);
         log.debug("Collect requestMethod=" + requestLine[0] + '\n'
@@ -57,6 +113,10 @@ public class HttpRequestLineParser extends AbstractParser {
 
     @Override
     public AbstractParser nextParserAfterSuccessfulParse() {
+        if (http2Preface) {
+            // next: parse http2 frames
+            return new Http2FrameParser(this);
+        }
         // next: parse http header
         return new HttpRequestHeaderParser(this);
     }
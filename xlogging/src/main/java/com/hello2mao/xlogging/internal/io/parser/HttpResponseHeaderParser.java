@@ -1,5 +1,6 @@
 package com.hello2mao.xlogging.internal.io.parser;
 
+import com.hello2mao.xlogging.XLogging;
 import com.hello2mao.xlogging.internal.io.CharBuffer;
 
 /**
@@ -23,31 +24,83 @@ import com.hello2mao.xlogging.internal.io.CharBuffer;
  */
 public class HttpResponseHeaderParser extends HttpHeaderParser {
 
+    private static final String SERVER_TIMING = "Server-Timing";
+
     private int parsedStatusCode;
+    // allowlisted response headers, null if none
+    private final HeaderTrie headerTrie;
+    private final boolean decodeServerTiming;
 
     public HttpResponseHeaderParser(AbstractParser parser, int parsedStatusCode) {
         super(parser);
         this.parsedStatusCode = parsedStatusCode;
+        this.headerTrie = CapturedHeaders.getResponseHeaders();
+        this.decodeServerTiming = XLogging.getConfig().isDecodeServerTiming();
     }
 
     @Override
     public boolean parse(CharBuffer charBuffer) {
         log.debug("Run parse in HttpResponseHeaderParser");
+        if (decodeServerTiming && isHeader(charBuffer, SERVER_TIMING)) {
+            ServerTimingParser.parse(charBuffer.charArray, SERVER_TIMING.length() + 1,
+                    charBuffer.length, getHandler().getTransactionState());
+        }
         return super.parse(charBuffer);
     }
 
+    @Override
+    protected boolean isCapturedLine(CharBuffer charBuffer) {
+        return decodeServerTiming && isHeader(charBuffer, SERVER_TIMING)
+                || super.isCapturedLine(charBuffer);
+    }
+
+    /**
+     * Server-Timing longer than the line limit is decoded up to its last complete entry
+     *
+     * @return parser
+     */
+    @Override
+    public AbstractParser nextParserAfterBufferFull() {
+        if (decodeServerTiming && isHeader(buffer, SERVER_TIMING)) {
+            int end = buffer.length;
+            while (end > SERVER_TIMING.length() && buffer.charArray[end - 1] != ',') {
+                end--;
+            }
+            ServerTimingParser.parse(buffer.charArray, SERVER_TIMING.length() + 1, end,
+                    getHandler().getTransactionState());
+        }
+        return super.nextParserAfterBufferFull();
+    }
+
+    @Override
+    protected HeaderTrie getHeaderTrie() {
+        return headerTrie;
+    }
+
     /**
-     * finish parse http header
+     * finish parse http header, message body length follows RFC 7230 3.3.3
      *
      * @return parser
      */
     protected AbstractParser nextParserAfterEndOfHeader() {
         AbstractParser parser;
-        if (notAllowedToHaveMessageBody()) { // no response body
+        getHandler().headerEndFound();
+        if (isInterimResponse()) { // e.g. 100 Continue, the final response follows
+            parser = getHandler().getInitialParser();
+        } else if (parsedStatusCode == 101) { // Switching Protocols, HTTP ends after the header
+            getHandler().upgradeFound(getUpgrade());
+            getHandler().finishedMessage(getCharactersInMessage());
+            parser = getHandler().getInitialParser();
+        } else if (notAllowedToHaveMessageBody() || isConnectTunnel()) { // no response body
             getHandler().finishedMessage(getCharactersInMessage());
             parser = getHandler().getInitialParser();
-        } else if (isChunkedTransferEncoding()) { // chunked body
-            parser = new HttpChunkSizeParser(this);
+        } else if (isTransferEncodingSet()) {
+            // Transfer-Encoding overrides Content-Length, a final coding other than chunked
+            // is delimited by connection close
+            parser = isChunkedTransferEncoding() ? new HttpChunkSizeParser(this)
+                    : new HttpEOFBodyParser(this);
+        } else if (isInvalidContentLength()) { // unrecoverable framing, read until close
+            parser = new HttpEOFBodyParser(this);
         } else if (isContentLengthSet()) { // normal body
             if (getContentLength() > 0) {
                 parser = new HttpBodyParser(this, getContentLength());
@@ -55,18 +108,34 @@ public class HttpResponseHeaderParser extends HttpHeaderParser {
                 getHandler().finishedMessage(getCharactersInMessage());
                 parser = getHandler().getInitialParser();
             }
-        } else if (getHandler().getParsedRequestMethod().equals("CONNECT")) { // CONNECT
-            getHandler().finishedMessage(getCharactersInMessage());
-            parser= getHandler().getInitialParser();
-        } else { // FIXME:?
+        } else { // delimited by connection close
             parser = new HttpEOFBodyParser(this);
         }
         return parser;
     }
 
+    /**
+     * 1xx except 101 Switching Protocols, which ends HTTP on the connection
+     *
+     * @return boolean
+     */
+    private boolean isInterimResponse() {
+        return parsedStatusCode >= 100 && parsedStatusCode <= 199 && parsedStatusCode != 101;
+    }
+
     private boolean notAllowedToHaveMessageBody() {
-        return (getHandler().getParsedRequestMethod().equals("HEAD"))
+        return "HEAD".equals(getHandler().getParsedRequestMethod())
                 || ((parsedStatusCode >= 100) && (parsedStatusCode <= 199))
                 || (parsedStatusCode == 204) || (parsedStatusCode == 304);
     }
+
+    /**
+     * 2xx to CONNECT, the connection becomes a tunnel right after the header
+     *
+     * @return boolean
+     */
+    private boolean isConnectTunnel() {
+        return "CONNECT".equals(getHandler().getParsedRequestMethod())
+                && parsedStatusCode >= 200 && parsedStatusCode <= 299;
+    }
 }
\ No newline at end of file
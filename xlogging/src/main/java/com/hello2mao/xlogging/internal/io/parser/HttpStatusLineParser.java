@@ -20,6 +20,38 @@ public class HttpStatusLineParser extends AbstractParser {
         this.parsedStatusCode = -1;
     }
 
+    /**
+     * Sniff the first byte, a status line starts with "HTTP/". A TLS record header switches
+     * to byte counting, anything else stops parsing without buffering a line.
+     *
+     * @param oneByte int
+     * @return boolean
+     */
+    @Override
+    public boolean add(int oneByte) {
+        int length = buffer.length;
+        if (oneByte == -1 || length > 1
+                || length == 1 && buffer.charArray[0] != EncryptedStreamParser.TLS_HANDSHAKE) {
+            return super.add(oneByte);
+        }
+        if (length == 1) {
+            if (oneByte != EncryptedStreamParser.TLS_MAJOR_VERSION) {
+                getHandler().setNextParser(NoopLineParser.DEFAULT);
+                return true;
+            }
+            log.debug("Found TLS record header in response");
+            this.charactersInMessage += 1;
+            getHandler().setNextParser(getHandler().tlsFound()
+                    ? new EncryptedStreamParser(this, false) : NoopLineParser.DEFAULT);
+            return true;
+        }
+        if (oneByte != 'H' && oneByte != EncryptedStreamParser.TLS_HANDSHAKE) {
+            getHandler().setNextParser(NoopLineParser.DEFAULT);
+            return true;
+        }
+        return super.add(oneByte);
+    }
+
     @Override
     public boolean parse(CharBuffer charBuffer) {
         log.debug("Run parse in HttpStatusLineParser");
@@ -15,11 +15,11 @@ public class HttpTrailerParser extends AbstractParser {
     @Override
     public final boolean parse(CharBuffer charBuffer) {
         log.debug("Run parse in HttpTrailerParser");
+        // trailer fields are skipped, the empty line ends the message
         if (charBuffer.subStringTrimmed(charBuffer.length).length() == 0) {
             this.foundEmptyLine = true;
-            return true;
         }
-        return false;
+        return true;
     }
 
     @Override
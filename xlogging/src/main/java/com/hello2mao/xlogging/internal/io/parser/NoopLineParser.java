@@ -2,6 +2,8 @@ package com.hello2mao.xlogging.internal.io.parser;
 
 import com.hello2mao.xlogging.internal.io.CharBuffer;
 
+import java.nio.ByteBuffer;
+
 public class NoopLineParser extends AbstractParser {
 
     public static final NoopLineParser DEFAULT = new NoopLineParser();
@@ -22,6 +24,12 @@ public class NoopLineParser extends AbstractParser {
         return -1;
     }
 
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        this.charactersInMessage += count;
+        return -1;
+    }
+
     @Override
     protected int getInitialBufferSize() {
         return 0;
@@ -0,0 +1,134 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.metrics.ServerTimingDictionary;
+
+/**
+ * Server-Timing header value decoder
+ *
+ * e.g.
+ * Server-Timing: db;dur=53, cache;desc="Cache Read";dur=23.2, app;dur=47.2
+ *
+ * Each entry with a dur param is added to TransactionState as (name id, duration in us),
+ * entries without dur and unknown params are skipped.
+ */
+public class ServerTimingParser {
+
+    private static final int MICROS_PER_MILLI = 1000;
+
+    public static void parse(char[] chars, int start, int end, TransactionState transactionState) {
+        int i = start;
+        while (i < end) {
+            i = skipWhitespace(chars, i, end);
+            int nameStart = i;
+            i = skipToken(chars, i, end);
+            int nameEnd = i;
+            long duration = -1L;
+            // params until the next entry
+            while (i < end && chars[i] != ',') {
+                if (chars[i] != ';') {
+                    i++;
+                    continue;
+                }
+                i = skipWhitespace(chars, i + 1, end);
+                int paramStart = i;
+                i = skipToken(chars, i, end);
+                int paramEnd = i;
+                i = skipWhitespace(chars, i, end);
+                if (i == end || chars[i] != '=') {
+                    continue;
+                }
+                i = skipWhitespace(chars, i + 1, end);
+                if (i < end && chars[i] == '"') {
+                    i = skipQuotedString(chars, i, end);
+                } else {
+                    int valueStart = i;
+                    i = skipToken(chars, i, end);
+                    if (isDur(chars, paramStart, paramEnd)) {
+                        duration = parseMillisToMicros(chars, valueStart, i);
+                    }
+                }
+            }
+            if (nameEnd > nameStart && duration != -1L) {
+                transactionState.addServerTiming(
+                        ServerTimingDictionary.getId(chars, nameStart, nameEnd), duration);
+            }
+            // skip ','
+            i++;
+        }
+    }
+
+    private static boolean isDur(char[] chars, int start, int end) {
+        return end - start == 3 && (chars[start] | 0x20) == 'd' && (chars[start + 1] | 0x20) == 'u'
+                && (chars[start + 2] | 0x20) == 'r';
+    }
+
+    /**
+     * Decimal ms like "23.2" to us, digits after the third decimal place are dropped
+     *
+     * @param chars char[]
+     * @param start int
+     * @param end int
+     * @return duration in us, -1 if not a number
+     */
+    private static long parseMillisToMicros(char[] chars, int start, int end) {
+        long millis = 0;
+        long micros = 0;
+        int fractionDigits = -1;
+        boolean hasDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (fractionDigits == -1) {
+                    millis = millis * 10 + (c - '0');
+                    if (millis > Integer.MAX_VALUE) {
+                        return -1L;
+                    }
+                } else if (fractionDigits < 3) {
+                    micros = micros * 10 + (c - '0');
+                    fractionDigits++;
+                }
+            } else {
+                return -1L;
+            }
+        }
+        if (!hasDigit) {
+            return -1L;
+        }
+        while (fractionDigits > 0 && fractionDigits < 3) {
+            micros *= 10;
+            fractionDigits++;
+        }
+        return millis * MICROS_PER_MILLI + micros;
+    }
+
+    private static int skipWhitespace(char[] chars, int i, int end) {
+        while (i < end && (chars[i] == ' ' || chars[i] == '\t' || chars[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipToken(char[] chars, int i, int end) {
+        while (i < end && chars[i] != ';' && chars[i] != ',' && chars[i] != '='
+                && chars[i] != ' ' && chars[i] != '\t' && chars[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipQuotedString(char[] chars, int i, int end) {
+        // opening quote
+        i++;
+        while (i < end && chars[i] != '"') {
+            if (chars[i] == '\\') {
+                i++;
+            }
+            i++;
+        }
+        return Math.min(i + 1, end);
+    }
+}
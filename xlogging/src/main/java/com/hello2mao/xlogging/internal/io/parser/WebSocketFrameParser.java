@@ -0,0 +1,180 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
+import com.hello2mao.xlogging.internal.io.CharBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * WebSocket Frame Parser, RFC 6455
+ *
+ * e.g.
+ * +-+-+-+-+-------+-+-------------+-------------------------------+
+ * |F|R|R|R| opcode|M| Payload len |    Extended payload length    |
+ * |I|S|S|S|  (4)  |A|     (7)     |             (16/64)           |
+ * |N|V|V|V|       |S|             |   (if payload len==126/127)   |
+ * | |1|2|3|       |K|             |                               |
+ * +-+-+-+-+-------+-+-------------+ - - - - - - - - - - - - - - - +
+ * |     Extended payload length continued, if payload len == 127  |
+ * + - - - - - - - - - - - - - - - +-------------------------------+
+ * |                               |Masking-key, if MASK set to 1  |
+ * +-------------------------------+-------------------------------+
+ * | Masking-key (continued)       |          Payload Data         |
+ * +-------------------------------- - - - - - - - - - - - - - - - +
+ *
+ * Only frame headers are read, payloads are skipped in bulk without copying.
+ */
+public class WebSocketFrameParser extends AbstractParser {
+
+    private static final int MAX_FRAME_HEADER_LENGTH = 14;
+    private static final int OPCODE_CLOSE = 0x8;
+
+    private final boolean request;
+    private final WebSocketConnection connection;
+    private final byte[] oneByte = new byte[1];
+
+    // current frame header
+    private final byte[] frameHeader = new byte[MAX_FRAME_HEADER_LENGTH];
+    private int frameHeaderLength;
+    // 2 until the second byte tells about extended length and masking key
+    private int frameHeaderNeeded;
+    private long payloadRemaining;
+
+    public WebSocketFrameParser(HttpParserHandler httpParserHandler, boolean request) {
+        super(httpParserHandler);
+        this.request = request;
+        this.connection = getHandler().getWebSocketConnection();
+        this.frameHeaderLength = 0;
+        this.frameHeaderNeeded = 2;
+        this.payloadRemaining = 0;
+    }
+
+    @Override
+    public boolean parse(CharBuffer charBuffer) {
+        return true;
+    }
+
+    @Override
+    public boolean add(int oneByte) {
+        if (oneByte == -1) {
+            close();
+            return true;
+        }
+        this.oneByte[0] = (byte) oneByte;
+        return addBlock(this.oneByte, 0, 1) != 1;
+    }
+
+    @Override
+    public int addBlock(byte[] buffer, int offset, int count) {
+        if (count == -1) {
+            close();
+            return -1;
+        }
+        if (buffer == null || count == 0) {
+            return -1;
+        }
+        int end = offset + count;
+        while (offset < end) {
+            if (payloadRemaining > 0) {
+                int skip = (int) Math.min(payloadRemaining, end - offset);
+                payloadRemaining -= skip;
+                offset += skip;
+            } else if (!addFrameHeaderByte(buffer[offset++])) {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected int addBlock(ByteBuffer buffer, int offset, int count) {
+        if (count == 0) {
+            return -1;
+        }
+        int end = offset + count;
+        while (offset < end) {
+            if (payloadRemaining > 0) {
+                int skip = (int) Math.min(payloadRemaining, end - offset);
+                payloadRemaining -= skip;
+                offset += skip;
+            } else if (!addFrameHeaderByte(buffer.get(offset++))) {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return false if the connection is closed
+     */
+    private boolean addFrameHeaderByte(byte b) {
+        frameHeader[frameHeaderLength++] = b;
+        if (frameHeaderLength == 2) {
+            int length = frameHeader[1] & 0x7F;
+            frameHeaderNeeded = 2 + (length == 126 ? 2 : length == 127 ? 8 : 0)
+                    + ((frameHeader[1] & 0x80) != 0 ? 4 : 0);
+        }
+        return frameHeaderLength != frameHeaderNeeded || readFrameHeader();
+    }
+
+    /**
+     * Count the frame, report the interval if it is over
+     *
+     * @return false if the connection is closed
+     */
+    private boolean readFrameHeader() {
+        boolean fin = (frameHeader[0] & 0x80) != 0;
+        int opcode = frameHeader[0] & 0x0F;
+        long payloadLength = frameHeader[1] & 0x7F;
+        if (payloadLength >= 126) {
+            int extendedLength = payloadLength == 126 ? 2 : 8;
+            payloadLength = 0;
+            for (int i = 2; i < 2 + extendedLength; i++) {
+                payloadLength = (payloadLength << 8) | (frameHeader[i] & 0xFF);
+            }
+        }
+        this.payloadRemaining = payloadLength;
+        TransactionState transactionState = connection.frameFound(request,
+                frameHeaderNeeded + payloadLength, opcode, fin);
+        this.frameHeaderLength = 0;
+        this.frameHeaderNeeded = 2;
+        if (transactionState != null) {
+            getHandler().webSocketRecordFinished(transactionState);
+        }
+        if (opcode == OPCODE_CLOSE) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        TransactionState transactionState = connection.close();
+        if (transactionState != null) {
+            getHandler().webSocketRecordFinished(transactionState);
+        }
+        getHandler().setNextParser(NoopLineParser.DEFAULT);
+    }
+
+    @Override
+    protected int getInitialBufferSize() {
+        return 0;
+    }
+
+    @Override
+    protected int getMaxBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterBufferFull() {
+        return this;
+    }
+
+    @Override
+    public AbstractParser nextParserAfterSuccessfulParse() {
+        return this;
+    }
+}
@@ -0,0 +1,44 @@
+package com.hello2mao.xlogging.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Device-wide downlink bandwidth, EWMA of the samples taken by every socket.
+ * Readers only do a volatile read.
+ */
+public class BandwidthEstimator {
+
+    // weight of the newest sample
+    private static final double ALPHA = 0.25;
+
+    // bytes/s, -1 until the first sample
+    private static final AtomicLong estimate = new AtomicLong(-1L);
+
+    /**
+     * Add one sample
+     *
+     * @param bytes long
+     * @param nanos long, transfer time of the bytes
+     */
+    public static void addSample(long bytes, long nanos) {
+        if (bytes <= 0 || nanos <= 0) {
+            return;
+        }
+        long bandwidth = (long) (bytes * 1e9 / nanos);
+        while (true) {
+            long current = estimate.get();
+            long next = current == -1L ? bandwidth
+                    : (long) (ALPHA * bandwidth + (1 - ALPHA) * current);
+            if (estimate.compareAndSet(current, next)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return bytes/s, -1 if no sample yet
+     */
+    public static long getEstimate() {
+        return estimate.get();
+    }
+}
@@ -0,0 +1,46 @@
+package com.hello2mao.xlogging.internal.metrics;
+
+import com.hello2mao.xlogging.HistogramData;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with fixed bucket upper bounds in ms
+ */
+public class Histogram {
+
+    // the last bucket collects everything above the last bound
+    private static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000,
+            2000, 5000, 10000, 30000 };
+
+    private final AtomicLongArray counts;
+    private final AtomicLong sum;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        this.sum = new AtomicLong();
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        int index = 0;
+        while (index < BUCKET_BOUNDS.length && value > BUCKET_BOUNDS[index]) {
+            index++;
+        }
+        counts.incrementAndGet(index);
+        sum.addAndGet(value);
+    }
+
+    public HistogramData snapshot() {
+        long[] snapshotCounts = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            snapshotCounts[i] = counts.get(i);
+            count += snapshotCounts[i];
+        }
+        return new HistogramData(BUCKET_BOUNDS.clone(), snapshotCounts, count, sum.get());
+    }
+}
@@ -0,0 +1,203 @@
+package com.hello2mao.xlogging.internal.metrics;
+
+import com.hello2mao.xlogging.ErrorType;
+import com.hello2mao.xlogging.HistogramData;
+import com.hello2mao.xlogging.MetricsData;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process aggregated metrics
+ */
+public class Metrics {
+
+    // index 0 is transactions without status code, e.g. socket errors
+    private static final int STATUS_CLASS_COUNT = 6;
+    // failures of hosts beyond MAX_FAILURE_HOSTS are counted under OTHER_HOST
+    private static final int MAX_FAILURE_HOSTS = 128;
+    private static final String OTHER_HOST = "other";
+
+    private static final Histogram sslHandshakeFull = new Histogram();
+    private static final Histogram sslHandshakeResumed = new Histogram();
+
+    private static final StripedCounter httpBytesSent = new StripedCounter();
+    private static final StripedCounter httpBytesReceived = new StripedCounter();
+    private static final StripedCounter httpsBytesSent = new StripedCounter();
+    private static final StripedCounter httpsBytesReceived = new StripedCounter();
+    private static final StripedCounter[] transactionsByStatusClass =
+            new StripedCounter[STATUS_CLASS_COUNT];
+    private static final StripedCounter streamingTransactions = new StripedCounter();
+    private static final StripedCounter webSocketIntervals = new StripedCounter();
+    private static final StripedCounter tlsConnections = new StripedCounter();
+    private static final StripedCounter connectFailures = new StripedCounter();
+    private static final StripedCounter sslFailures = new StripedCounter();
+    private static final StripedCounter[] failuresByType =
+            new StripedCounter[ErrorType.values().length];
+    private static final ConcurrentHashMap<String, AtomicLong> failuresByHost =
+            new ConcurrentHashMap<>();
+    // indexed by ServerTimingDictionary id
+    private static final Histogram[] serverTimings =
+            new Histogram[ServerTimingDictionary.MAX_NAMES];
+    private static final Histogram serverTimingNetwork = new Histogram();
+
+    static {
+        for (int i = 0; i < STATUS_CLASS_COUNT; i++) {
+            transactionsByStatusClass[i] = new StripedCounter();
+        }
+        for (int i = 0; i < failuresByType.length; i++) {
+            failuresByType[i] = new StripedCounter();
+        }
+        for (int i = 0; i < serverTimings.length; i++) {
+            serverTimings[i] = new Histogram();
+        }
+    }
+
+    public static void recordSslHandshake(long sslHandshakeTime, boolean sessionResumed) {
+        if (sessionResumed) {
+            sslHandshakeResumed.record(sslHandshakeTime);
+        } else {
+            sslHandshakeFull.record(sslHandshakeTime);
+        }
+    }
+
+    public static void addBytesSent(String scheme, long bytes) {
+        if (bytes > 0) {
+            ("https".equals(scheme) ? httpsBytesSent : httpBytesSent).add(bytes);
+        }
+    }
+
+    public static void addBytesReceived(String scheme, long bytes) {
+        if (bytes > 0) {
+            ("https".equals(scheme) ? httpsBytesReceived : httpBytesReceived).add(bytes);
+        }
+    }
+
+    public static void recordTransaction(int statusCode) {
+        int statusClass = statusCode / 100;
+        if (statusClass < 0 || statusClass >= STATUS_CLASS_COUNT) {
+            statusClass = 0;
+        }
+        transactionsByStatusClass[statusClass].increment();
+    }
+
+    public static void recordStreamingTransaction() {
+        streamingTransactions.increment();
+    }
+
+    public static void recordWebSocketInterval() {
+        webSocketIntervals.increment();
+    }
+
+    public static void recordTlsConnection() {
+        tlsConnections.increment();
+    }
+
+    public static void recordConnectFailure() {
+        connectFailures.increment();
+    }
+
+    public static void recordSslFailure() {
+        sslFailures.increment();
+    }
+
+    public static void recordFailure(String host, ErrorType errorType) {
+        failuresByType[errorType.ordinal()].increment();
+        if (host == null || host.isEmpty()) {
+            host = OTHER_HOST;
+        }
+        AtomicLong counter = failuresByHost.get(host);
+        if (counter == null) {
+            counter = getFailureCounter(host);
+        }
+        counter.incrementAndGet();
+    }
+
+    // size check and insert under one lock, so concurrent new hosts cannot pass the cap
+    private static AtomicLong getFailureCounter(String host) {
+        synchronized (failuresByHost) {
+            AtomicLong counter = failuresByHost.get(host);
+            if (counter != null) {
+                return counter;
+            }
+            if (failuresByHost.size() >= MAX_FAILURE_HOSTS) {
+                host = OTHER_HOST;
+                counter = failuresByHost.get(host);
+                if (counter != null) {
+                    return counter;
+                }
+            }
+            counter = new AtomicLong();
+            failuresByHost.put(host, counter);
+            return counter;
+        }
+    }
+
+    /**
+     * Record Server-Timing entries of one response
+     *
+     * @param nameIds ServerTimingDictionary ids
+     * @param durations us
+     * @param count number of entries
+     * @param waitTime ms from request end to response start, -1 if unknown
+     */
+    public static void recordServerTiming(int[] nameIds, long[] durations, int count,
+                                          long waitTime) {
+        long serverTime = 0;
+        for (int i = 0; i < count; i++) {
+            serverTimings[nameIds[i]].record(durations[i] / 1000);
+            // entries may nest, e.g. app includes db, so the longest one is the server time
+            serverTime = Math.max(serverTime, durations[i] / 1000);
+        }
+        if (count > 0 && waitTime >= serverTime) {
+            serverTimingNetwork.record(waitTime - serverTime);
+        }
+    }
+
+    public static MetricsData getMetricsData() {
+        MetricsData metricsData = new MetricsData();
+        metricsData.setSslHandshakeFull(sslHandshakeFull.snapshot());
+        metricsData.setSslHandshakeResumed(sslHandshakeResumed.snapshot());
+        metricsData.setDownlinkBandwidth(BandwidthEstimator.getEstimate());
+        metricsData.setHttpBytesSent(httpBytesSent.sum());
+        metricsData.setHttpBytesReceived(httpBytesReceived.sum());
+        metricsData.setHttpsBytesSent(httpsBytesSent.sum());
+        metricsData.setHttpsBytesReceived(httpsBytesReceived.sum());
+        long[] transactions = new long[STATUS_CLASS_COUNT];
+        for (int i = 0; i < STATUS_CLASS_COUNT; i++) {
+            transactions[i] = transactionsByStatusClass[i].sum();
+        }
+        metricsData.setTransactionsByStatusClass(transactions);
+        metricsData.setStreamingTransactions(streamingTransactions.sum());
+        metricsData.setWebSocketIntervals(webSocketIntervals.sum());
+        metricsData.setTlsConnections(tlsConnections.sum());
+        metricsData.setConnectFailures(connectFailures.sum());
+        metricsData.setSslFailures(sslFailures.sum());
+        Map<ErrorType, Long> failures = new EnumMap<>(ErrorType.class);
+        for (ErrorType errorType : ErrorType.values()) {
+            long count = failuresByType[errorType.ordinal()].sum();
+            if (count > 0) {
+                failures.put(errorType, count);
+            }
+        }
+        metricsData.setFailuresByType(failures);
+        Map<String, Long> hostFailures = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : failuresByHost.entrySet()) {
+            hostFailures.put(entry.getKey(), entry.getValue().get());
+        }
+        metricsData.setFailuresByHost(hostFailures);
+        Map<String, HistogramData> timings = new HashMap<>();
+        for (int id = 0; id < ServerTimingDictionary.getNameCount(); id++) {
+            HistogramData histogramData = serverTimings[id].snapshot();
+            if (histogramData.getCount() > 0) {
+                timings.put(ServerTimingDictionary.getName(id), histogramData);
+            }
+        }
+        metricsData.setServerTimings(timings);
+        metricsData.setServerTimingNetwork(serverTimingNetwork.snapshot());
+        return metricsData;
+    }
+}
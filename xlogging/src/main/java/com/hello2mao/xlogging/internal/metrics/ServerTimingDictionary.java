@@ -0,0 +1,80 @@
+package com.hello2mao.xlogging.internal.metrics;
+
+/**
+ * Server-Timing metric names mapped to small ids, e.g. "db" -> 1, "cache" -> 2.
+ * Backends emit a handful of names, so lookup is a scan over the name table straight from
+ * the header chars and a String is only created for a new name.
+ */
+public class ServerTimingDictionary {
+
+    // names beyond MAX_NAMES share OTHER_ID
+    public static final int MAX_NAMES = 64;
+    public static final int OTHER_ID = 0;
+    private static final String OTHER_NAME = "other";
+
+    private static final String[] names = new String[MAX_NAMES];
+    // names[0, nameCount) are set, written under the class lock
+    private static volatile int nameCount;
+
+    static {
+        names[OTHER_ID] = OTHER_NAME;
+        nameCount = 1;
+    }
+
+    /**
+     * Id of the metric name chars[start, end)
+     *
+     * @param chars char[]
+     * @param start int
+     * @param end int
+     * @return id in [0, MAX_NAMES)
+     */
+    public static int getId(char[] chars, int start, int end) {
+        int id = find(chars, start, end, nameCount);
+        if (id != -1) {
+            return id;
+        }
+        synchronized (ServerTimingDictionary.class) {
+            int count = nameCount;
+            id = find(chars, start, end, count);
+            if (id != -1) {
+                return id;
+            }
+            if (count == MAX_NAMES) {
+                return OTHER_ID;
+            }
+            names[count] = new String(chars, start, end - start);
+            nameCount = count + 1;
+            return count;
+        }
+    }
+
+    public static String getName(int id) {
+        if (id < 0 || id >= nameCount) {
+            return OTHER_NAME;
+        }
+        return names[id];
+    }
+
+    public static int getNameCount() {
+        return nameCount;
+    }
+
+    private static int find(char[] chars, int start, int end, int count) {
+        int length = end - start;
+        for (int id = 1; id < count; id++) {
+            String name = names[id];
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && name.charAt(i) == chars[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return id;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,51 @@
+package com.hello2mao.xlogging.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter split into per-thread stripes, like LongAdder which is only available since API 24.
+ * Writers on different threads mostly hit different cache lines, sum() adds up all stripes.
+ */
+public class StripedCounter {
+
+    private static final int STRIPES = stripeCount();
+    // 8 longs = 64 bytes, one cache line per stripe
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        this.cells = new AtomicLongArray(STRIPES * PADDING);
+    }
+
+    public void add(long value) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Power of two not less than the number of cpus, at most 64
+     *
+     * @return int
+     */
+    private static int stripeCount() {
+        int cpus = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        int stripes = 1;
+        while (stripes < cpus) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
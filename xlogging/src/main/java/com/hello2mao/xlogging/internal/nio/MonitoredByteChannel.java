@@ -0,0 +1,136 @@
+package com.hello2mao.xlogging.internal.nio;
+
+import com.hello2mao.xlogging.ErrorPhase;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Wrap SocketChannel reads and writes of plain HTTP, SocketChannel does not go through
+ * SocketImplFactory. Only the data path is wrapped: configureBlocking, register and
+ * select stay on the original channel, since a selector only accepts channels of its
+ * own SelectorProvider.
+ */
+public class MonitoredByteChannel implements ByteChannel, ScatteringByteChannel,
+        GatheringByteChannel {
+
+    private final SocketChannel delegate;
+    private final NioConnection connection;
+    private boolean remoteAddressSet;
+
+    public MonitoredByteChannel(SocketChannel socketChannel) {
+        this.delegate = socketChannel;
+        this.connection = new NioConnection(MonitoredByteChannel.class.getSimpleName(), "http");
+    }
+
+    private void checkRemoteAddress() {
+        // wrapped before connect
+        if (!remoteAddressSet && delegate.isConnected()) {
+            SocketAddress remote = delegate.socket().getRemoteSocketAddress();
+            if (remote instanceof InetSocketAddress) {
+                connection.setRemoteAddress((InetSocketAddress) remote);
+            }
+            this.remoteAddressSet = true;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int position = dst.position();
+        int read;
+        try {
+            read = delegate.read(dst);
+        } catch (IOException e) {
+            // Collect error
+            connection.error(e, ErrorPhase.RESPONSE);
+            throw e;
+        }
+        if (read == -1) {
+            connection.endOfStream();
+        } else {
+            connection.bytesRead(dst, position);
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        int[] positions = NioConnection.getPositions(dsts, offset, length);
+        long read;
+        try {
+            read = delegate.read(dsts, offset, length);
+        } catch (IOException e) {
+            // Collect error
+            connection.error(e, ErrorPhase.RESPONSE);
+            throw e;
+        }
+        if (read == -1) {
+            connection.endOfStream();
+        } else {
+            connection.bytesRead(dsts, offset, positions);
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts) throws IOException {
+        return read(dsts, 0, dsts.length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkRemoteAddress();
+        int position = src.position();
+        int written;
+        try {
+            written = delegate.write(src);
+        } catch (IOException e) {
+            // Collect error
+            connection.error(e, ErrorPhase.REQUEST);
+            throw e;
+        }
+        connection.bytesWritten(src, position);
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkRemoteAddress();
+        int[] positions = NioConnection.getPositions(srcs, offset, length);
+        long written;
+        try {
+            written = delegate.write(srcs, offset, length);
+        } catch (IOException e) {
+            // Collect error
+            connection.error(e, ErrorPhase.REQUEST);
+            throw e;
+        }
+        connection.bytesWritten(srcs, offset, positions);
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.hello2mao.xlogging.internal.nio;
+
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.internal.Http2Connection;
+import com.hello2mao.xlogging.internal.log.XLog;
+import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Wrap SSLEngine of HTTPS over NIO, plaintext consumed by wrap and produced by unwrap is
+ * fed to the parsers. Provider specific APIs of the delegate, e.g. Conscrypt ALPN setup,
+ * are not reachable through the wrapper. The API 29 ALPN getters are delegated, the
+ * handshake protocol selector is not: its BiFunction type is API 24, above minSdkVersion.
+ */
+public class MonitoredSSLEngine extends SSLEngine {
+
+    private static final XLog log = XLogManager.getAgentLog();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // SSLEngine methods of API 29, not in compileSdkVersion 27, null on older devices
+    private static final Method getApplicationProtocol = getEngineMethod("getApplicationProtocol");
+    private static final Method getHandshakeApplicationProtocol =
+            getEngineMethod("getHandshakeApplicationProtocol");
+
+    private final SSLEngine delegate;
+    private final NioConnection connection;
+    // first handshake only, a client engine starts it at beginHandshake or the first wrap
+    private long sslHandshakeStartTime;
+    private boolean sslHandshakeFinished;
+    private boolean sslHandshakeFailed;
+
+    public MonitoredSSLEngine(SSLEngine sslEngine) {
+        super(sslEngine.getPeerHost(), sslEngine.getPeerPort());
+        this.delegate = sslEngine;
+        this.connection = new NioConnection(MonitoredSSLEngine.class.getSimpleName(), "https");
+        connection.setRemoteAddress(sslEngine.getPeerHost(), sslEngine.getPeerPort());
+        this.sslHandshakeStartTime = -1L;
+    }
+
+    @Override
+    public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+            throws SSLException {
+        handshakeStarted();
+        int[] positions = NioConnection.getPositions(srcs, offset, length);
+        SSLEngineResult result;
+        try {
+            result = delegate.wrap(srcs, offset, length, dst);
+        } catch (SSLException e) {
+            error(e, ErrorPhase.REQUEST);
+            throw e;
+        }
+        handshakeStatusChanged(result);
+        if (result.bytesConsumed() > 0) {
+            connection.bytesWritten(srcs, offset, positions);
+        }
+        return result;
+    }
+
+    @Override
+    public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+            throws SSLException {
+        int[] positions = NioConnection.getPositions(dsts, offset, length);
+        SSLEngineResult result;
+        try {
+            result = delegate.unwrap(src, dsts, offset, length);
+        } catch (SSLException e) {
+            error(e, ErrorPhase.RESPONSE);
+            throw e;
+        }
+        handshakeStatusChanged(result);
+        if (result.bytesProduced() > 0) {
+            connection.bytesRead(dsts, offset, positions);
+        }
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            connection.close();
+        }
+        return result;
+    }
+
+    private void handshakeStarted() {
+        if (sslHandshakeStartTime == -1L && !sslHandshakeFinished) {
+            this.sslHandshakeStartTime = System.currentTimeMillis();
+        }
+    }
+
+    private void handshakeStatusChanged(SSLEngineResult result) {
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED
+                && sslHandshakeStartTime != -1L && !sslHandshakeFinished) {
+            SSLSession session = delegate.getSession();
+            // a resumed session was created by an earlier handshake
+            boolean sessionResumed = session != null
+                    && session.getCreationTime() < sslHandshakeStartTime;
+            Metrics.recordSslHandshake(System.currentTimeMillis() - sslHandshakeStartTime,
+                    sessionResumed);
+            this.sslHandshakeFinished = true;
+            if ("h2".equals(getAlpnProtocol()) && connection.getHttp2Connection() == null) {
+                // switch to HTTP/2 before any server frame is unwrapped
+                connection.setHttp2Connection(new Http2Connection(connection));
+            }
+        }
+    }
+
+    /**
+     * An exception before the first handshake finished is a handshake failure, it is
+     * recorded once since the engine keeps failing after it
+     *
+     * @param e SSLException
+     * @param errorPhase phase if the handshake is over
+     */
+    private void error(SSLException e, ErrorPhase errorPhase) {
+        if (sslHandshakeFailed) {
+            return;
+        }
+        if (!sslHandshakeFinished) {
+            this.sslHandshakeFailed = true;
+            Metrics.recordSslFailure();
+            errorPhase = ErrorPhase.TLS_HANDSHAKE;
+        }
+        connection.error(e, errorPhase);
+    }
+
+    /**
+     * ALPN protocol of the finished handshake, from the API 29 method or the one of
+     * conscrypt on older devices
+     *
+     * @return "" if none
+     */
+    private String getAlpnProtocol() {
+        try {
+            if (getApplicationProtocol != null) {
+                String protocol = (String) getApplicationProtocol.invoke(delegate);
+                return protocol == null ? "" : protocol;
+            }
+            byte[] protocol = (byte[]) delegate.getClass().getMethod("getAlpnSelectedProtocol")
+                    .invoke(delegate);
+            return protocol == null ? "" : new String(protocol, UTF_8);
+        } catch (Exception e) {
+            log.debug("No ALPN protocol of " + delegate.getClass().getName());
+            return "";
+        }
+    }
+
+    @Override
+    public void beginHandshake() throws SSLException {
+        handshakeStarted();
+        try {
+            delegate.beginHandshake();
+        } catch (SSLException e) {
+            error(e, ErrorPhase.TLS_HANDSHAKE);
+            throw e;
+        }
+    }
+
+    @Override
+    public Runnable getDelegatedTask() {
+        return delegate.getDelegatedTask();
+    }
+
+    @Override
+    public void closeInbound() throws SSLException {
+        try {
+            delegate.closeInbound();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public boolean isInboundDone() {
+        return delegate.isInboundDone();
+    }
+
+    @Override
+    public void closeOutbound() {
+        delegate.closeOutbound();
+        connection.close();
+    }
+
+    @Override
+    public boolean isOutboundDone() {
+        return delegate.isOutboundDone();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public String[] getEnabledCipherSuites() {
+        return delegate.getEnabledCipherSuites();
+    }
+
+    @Override
+    public void setEnabledCipherSuites(String[] suites) {
+        delegate.setEnabledCipherSuites(suites);
+    }
+
+    @Override
+    public String[] getSupportedProtocols() {
+        return delegate.getSupportedProtocols();
+    }
+
+    @Override
+    public String[] getEnabledProtocols() {
+        return delegate.getEnabledProtocols();
+    }
+
+    @Override
+    public void setEnabledProtocols(String[] protocols) {
+        delegate.setEnabledProtocols(protocols);
+    }
+
+    @Override
+    public SSLSession getSession() {
+        return delegate.getSession();
+    }
+
+    @Override
+    public SSLSession getHandshakeSession() {
+        return delegate.getHandshakeSession();
+    }
+
+    @Override
+    public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+        return delegate.getHandshakeStatus();
+    }
+
+    @Override
+    public void setUseClientMode(boolean mode) {
+        delegate.setUseClientMode(mode);
+    }
+
+    @Override
+    public boolean getUseClientMode() {
+        return delegate.getUseClientMode();
+    }
+
+    @Override
+    public void setNeedClientAuth(boolean need) {
+        delegate.setNeedClientAuth(need);
+    }
+
+    @Override
+    public boolean getNeedClientAuth() {
+        return delegate.getNeedClientAuth();
+    }
+
+    @Override
+    public void setWantClientAuth(boolean want) {
+        delegate.setWantClientAuth(want);
+    }
+
+    @Override
+    public boolean getWantClientAuth() {
+        return delegate.getWantClientAuth();
+    }
+
+    @Override
+    public void setEnableSessionCreation(boolean flag) {
+        delegate.setEnableSessionCreation(flag);
+    }
+
+    @Override
+    public boolean getEnableSessionCreation() {
+        return delegate.getEnableSessionCreation();
+    }
+
+    @Override
+    public SSLParameters getSSLParameters() {
+        return delegate.getSSLParameters();
+    }
+
+    @Override
+    public void setSSLParameters(SSLParameters params) {
+        delegate.setSSLParameters(params);
+    }
+
+    /* Below is SSLEngine of API 29, no @Override for compileSdkVersion 27 */
+
+    public String getApplicationProtocol() {
+        return (String) invokeDelegate(getApplicationProtocol);
+    }
+
+    public String getHandshakeApplicationProtocol() {
+        return (String) invokeDelegate(getHandshakeApplicationProtocol);
+    }
+
+    private Object invokeDelegate(Method method) {
+        if (method == null) {
+            // same as SSLEngine of API 29 for an engine without ALPN
+            throw new UnsupportedOperationException();
+        }
+        try {
+            return method.invoke(delegate);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Method getEngineMethod(String name) {
+        try {
+            return SSLEngine.class.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            // before API 29
+            return null;
+        }
+    }
+}
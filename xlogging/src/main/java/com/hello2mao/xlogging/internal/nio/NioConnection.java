@@ -0,0 +1,190 @@
+package com.hello2mao.xlogging.internal.nio;
+
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.internal.Http2Connection;
+import com.hello2mao.xlogging.internal.MonitoredSocket;
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
+import com.hello2mao.xlogging.internal.harvest.Harvest;
+import com.hello2mao.xlogging.internal.io.IOInstrument;
+import com.hello2mao.xlogging.internal.io.ParsingInputStream;
+import com.hello2mao.xlogging.internal.io.ParsingOutputStream;
+import com.hello2mao.xlogging.internal.util.URLUtil;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * MonitoredSocket of one NIO connection, shared by MonitoredByteChannel and
+ * MonitoredSSLEngine. Plaintext ByteBuffers are fed to the same parsers as socket streams.
+ */
+public class NioConnection implements MonitoredSocket {
+
+    private final String name;
+    private final String scheme;
+    private final ParsingInputStream parsingInputStream;
+    private final ParsingOutputStream parsingOutputStream;
+    private final Queue<TransactionState> queue;
+    private String ip;
+    private String host;
+    private int port;
+    private Http2Connection http2Connection;
+    private WebSocketConnection webSocketConnection;
+    private boolean closed;
+
+    public NioConnection(String name, String scheme) {
+        this.name = name;
+        this.scheme = scheme;
+        this.queue = new LinkedList<>();
+        this.ip = "";
+        this.host = "";
+        this.parsingOutputStream = IOInstrument.instrumentChannelOutput(this);
+        this.parsingInputStream = IOInstrument.instrumentChannelInput(this);
+    }
+
+    public void setRemoteAddress(InetSocketAddress inetSocketAddress) {
+        this.ip = URLUtil.getIp(inetSocketAddress);
+        this.host = URLUtil.getHost(inetSocketAddress);
+        this.port = inetSocketAddress.getPort();
+    }
+
+    public void setRemoteAddress(String host, int port) {
+        this.host = host == null ? "" : host;
+        this.port = port;
+    }
+
+    /**
+     * Bytes read into buffers, from the saved positions to the current ones
+     *
+     * @param buffers ByteBuffer[]
+     * @param offset first buffer
+     * @param positions positions of buffers[offset, offset + positions.length) before the read
+     */
+    public void bytesRead(ByteBuffer[] buffers, int offset, int[] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            ByteBuffer buffer = buffers[offset + i];
+            int count = buffer.position() - positions[i];
+            if (count > 0) {
+                parsingInputStream.bufferRead(buffer, positions[i], count);
+            }
+        }
+    }
+
+    public void bytesRead(ByteBuffer buffer, int position) {
+        int count = buffer.position() - position;
+        if (count > 0) {
+            parsingInputStream.bufferRead(buffer, position, count);
+        }
+    }
+
+    public void endOfStream() {
+        parsingInputStream.bufferRead(null, 0, -1);
+    }
+
+    /**
+     * Bytes written from buffers, from the saved positions to the current ones
+     *
+     * @param buffers ByteBuffer[]
+     * @param offset first buffer
+     * @param positions positions of buffers[offset, offset + positions.length) before the write
+     */
+    public void bytesWritten(ByteBuffer[] buffers, int offset, int[] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            ByteBuffer buffer = buffers[offset + i];
+            int count = buffer.position() - positions[i];
+            if (count > 0) {
+                parsingOutputStream.bufferWritten(buffer, positions[i], count);
+            }
+        }
+    }
+
+    public void bytesWritten(ByteBuffer buffer, int position) {
+        int count = buffer.position() - position;
+        if (count > 0) {
+            parsingOutputStream.bufferWritten(buffer, position, count);
+        }
+    }
+
+    public void error(Exception exception, ErrorPhase errorPhase) {
+        TransactionState transactionState = parsingInputStream.getTransactionState();
+        transactionState.setError(exception, errorPhase);
+        Harvest.addHttpTransactionData(transactionState);
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        this.closed = true;
+        parsingOutputStream.notifySocketClosing();
+        parsingInputStream.notifySocketClosing();
+    }
+
+    static int[] getPositions(ByteBuffer[] buffers, int offset, int length) {
+        int[] positions = new int[length];
+        for (int i = 0; i < length; i++) {
+            positions[i] = buffers[offset + i].position();
+        }
+        return positions;
+    }
+
+    @Override
+    public TransactionState createTransactionState() {
+        TransactionState transactionState = new TransactionState();
+        transactionState.setHost(host);
+        transactionState.setIp(ip);
+        transactionState.setPort(port);
+        transactionState.setScheme(scheme);
+        return transactionState;
+    }
+
+    @Override
+    public void enqueueTransactionState(TransactionState transactionState) {
+        synchronized (queue) {
+            queue.add(transactionState);
+        }
+    }
+
+    @Override
+    public TransactionState dequeueTransactionState() {
+        synchronized (queue) {
+            return queue.poll();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return http2Connection;
+    }
+
+    @Override
+    public void setHttp2Connection(Http2Connection http2Connection) {
+        this.http2Connection = http2Connection;
+        // response side switches to HTTP/2 frame parser too
+        parsingInputStream.setNextParser(parsingInputStream.getInitialParser());
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return webSocketConnection;
+    }
+
+    @Override
+    public void setWebSocketConnection(WebSocketConnection webSocketConnection) {
+        this.webSocketConnection = webSocketConnection;
+        // response side finds the 101 first, request side switches to WebSocket frame parser
+        parsingOutputStream.setNextParser(parsingOutputStream.getInitialParser());
+    }
+
+    @Override
+    public boolean isSslWrapped() {
+        return false;
+    }
+}
@@ -2,40 +2,81 @@ package com.hello2mao.xlogging.internal.ssl;
 
 import com.android.org.conscrypt.OpenSSLSocketImplWrapper;
 import com.android.org.conscrypt.SSLParametersImpl;
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.internal.Http2Connection;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
+import com.hello2mao.xlogging.internal.TcpData;
 import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.TransactionsCache;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
 import com.hello2mao.xlogging.internal.harvest.Harvest;
 import com.hello2mao.xlogging.internal.io.IOInstrument;
 import com.hello2mao.xlogging.internal.io.ParsingInputStream;
 import com.hello2mao.xlogging.internal.io.ParsingOutputStream;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
+import com.hello2mao.xlogging.internal.util.StringCache;
 import com.hello2mao.xlogging.internal.util.URLUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.Socket;
+import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.Queue;
 
+import javax.net.ssl.SSLSession;
+
 public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
         implements MonitoredSocket {
 
     private static final XLog log = XLogManager.getAgentLog();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static Method getAlpnSelectedProtocol;
     private ParsingInputStream parsingInputStream;
     private ParsingOutputStream parsingOutputStream;
     private final Queue<TransactionState> queue;
+    // SNI host from SSLSocketFactory.createSocket, may be an ip literal or null
+    private final String host;
     private boolean firstCallHandshake;
     private long sslHandshakeStartTime;
     private long sslHandshakeEndTime;
+    private Http2Connection http2Connection;
+    private WebSocketConnection webSocketConnection;
+    private String tlsVersion;
+    private String cipherSuite;
+    private String alpnProtocol;
+    private boolean sslSessionResumed;
+
+    static {
+        try {
+            // conscrypt has no public ALPN api on Android 5.x
+            getAlpnSelectedProtocol = MonitoredOpenSSLSocketImplWrapper.class
+                    .getMethod("getAlpnSelectedProtocol");
+        } catch (Throwable t) {
+            getAlpnSelectedProtocol = null;
+        }
+    }
 
     protected MonitoredOpenSSLSocketImplWrapper(Socket socket, String host, int port,
                                                 boolean autoClose, SSLParametersImpl sslParametersImpl)
             throws IOException {
         super(socket, host, port, autoClose, sslParametersImpl);
         this.queue = new LinkedList<>();
+        this.host = host == null ? "" : StringCache.intern(host);
         this.firstCallHandshake = true;
+        this.tlsVersion = "";
+        this.cipherSuite = "";
+        this.alpnProtocol = "";
+        this.sslSessionResumed = false;
+        // TLS bytes are counted here, the monitored plain socket below must not count them
+        TcpData tcpData = TransactionsCache.getTcpData(getFileDescriptor$());
+        if (tcpData != null) {
+            tcpData.setSslWrapped(true);
+        }
     }
 
     @Override
@@ -46,10 +87,16 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
         transactionState.setIp(ip);
         log.debug("Collect port=" + getPort());
         transactionState.setPort(getPort());
-        log.debug("Collect host=" + getInetAddress().getHostName());
-        transactionState.setHost(getInetAddress().getHostName());
+        // never getInetAddress().getHostName(), it may block on reverse DNS.
+        // Host header or :authority overrides this, Harvest falls back to HostResolver
+        log.debug("Collect host=" + host);
+        transactionState.setHost(host);
         transactionState.setSslHandshakeStartTime(sslHandshakeStartTime);
         transactionState.setSslHandshakeEndTime(sslHandshakeEndTime);
+        transactionState.setTlsVersion(tlsVersion);
+        transactionState.setCipherSuite(cipherSuite);
+        transactionState.setAlpnProtocol(alpnProtocol);
+        transactionState.setSslSessionResumed(sslSessionResumed);
         transactionState.setScheme("https");
         return transactionState;
     }
@@ -73,7 +120,40 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
         return MonitoredOpenSSLSocketImplWrapper.class.getSimpleName();
     }
 
-    public void error(Exception exception) {
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return http2Connection;
+    }
+
+    @Override
+    public void setHttp2Connection(Http2Connection http2Connection) {
+        this.http2Connection = http2Connection;
+        // response side switches to HTTP/2 frame parser too
+        if (parsingInputStream != null) {
+            parsingInputStream.setNextParser(parsingInputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return webSocketConnection;
+    }
+
+    @Override
+    public void setWebSocketConnection(WebSocketConnection webSocketConnection) {
+        this.webSocketConnection = webSocketConnection;
+        // response side finds the 101 first, request side switches to WebSocket frame parser
+        if (parsingOutputStream != null) {
+            parsingOutputStream.setNextParser(parsingOutputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public boolean isSslWrapped() {
+        return false;
+    }
+
+    public void error(Exception exception, ErrorPhase errorPhase) {
         // TODO:
         TransactionState transactionState;
         if (parsingInputStream != null) {
@@ -81,7 +161,7 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
         } else {
             transactionState = createTransactionState();
         }
-        transactionState.setException(exception.getMessage());
+        transactionState.setError(exception, errorPhase);
         Harvest.addHttpTransactionData(transactionState);
     }
 
@@ -99,22 +179,65 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
                 this.sslHandshakeEndTime = System.currentTimeMillis();
                 log.debug("Collect sslHandshakeTime=" + (sslHandshakeEndTime - sslHandshakeStartTime) + "ms");
                 firstCallHandshake = false;
+                collectSessionInfo();
             }
         } catch (IOException e) {
-            error(e);
+            Metrics.recordSslFailure();
+            error(e, ErrorPhase.TLS_HANDSHAKE);
             throw e;
         }
     }
 
+    /**
+     * collect negotiated session info after the first handshake
+     */
+    private void collectSessionInfo() {
+        try {
+            SSLSession session = getSession();
+            if (session != null) {
+                this.tlsVersion = session.getProtocol();
+                this.cipherSuite = session.getCipherSuite();
+                // a resumed session was created by an earlier handshake
+                this.sslSessionResumed = session.getCreationTime() < sslHandshakeStartTime;
+            }
+            this.alpnProtocol = getAlpnProtocol();
+            log.debug("Collect tlsVersion=" + tlsVersion + ", cipherSuite=" + cipherSuite
+                    + ", alpnProtocol=" + alpnProtocol + ", sslSessionResumed=" + sslSessionResumed);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Metrics.recordSslHandshake(sslHandshakeEndTime - sslHandshakeStartTime, sslSessionResumed);
+        if ("h2".equals(alpnProtocol) && http2Connection == null) {
+            // switch to HTTP/2 before any server frame is read
+            setHttp2Connection(new Http2Connection(this));
+        }
+    }
+
+    private String getAlpnProtocol() {
+        if (getAlpnSelectedProtocol == null) {
+            return "";
+        }
+        try {
+            byte[] protocol = (byte[]) getAlpnSelectedProtocol.invoke(this);
+            return protocol == null ? "" : new String(protocol, UTF_8);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+
     @Override
     public void close() throws IOException {
         try {
             super.close();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.CLOSE);
             throw e;
         }
+        if (parsingOutputStream != null) {
+            parsingOutputStream.notifySocketClosing();
+        }
         if (parsingInputStream != null) {
             parsingInputStream.notifySocketClosing();
         }
@@ -127,7 +250,7 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
             inputStream = super.getInputStream();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
         // wrap origin InputStream
@@ -146,7 +269,7 @@ public class MonitoredOpenSSLSocketImplWrapper extends OpenSSLSocketImplWrapper
             outputStream = super.getOutputStream();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
         // wrap origin OutputStream
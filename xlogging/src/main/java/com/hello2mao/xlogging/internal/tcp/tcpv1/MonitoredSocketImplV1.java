@@ -1,15 +1,19 @@
 package com.hello2mao.xlogging.internal.tcp.tcpv1;
 
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.internal.Http2Connection;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
 import com.hello2mao.xlogging.internal.TcpData;
 import com.hello2mao.xlogging.internal.TransactionState;
 import com.hello2mao.xlogging.internal.TransactionsCache;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
 import com.hello2mao.xlogging.internal.harvest.Harvest;
 import com.hello2mao.xlogging.internal.io.IOInstrument;
 import com.hello2mao.xlogging.internal.io.ParsingInputStream;
 import com.hello2mao.xlogging.internal.io.ParsingOutputStream;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
 import com.hello2mao.xlogging.internal.util.URLUtil;
 
 import java.io.IOException;
@@ -33,6 +37,8 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
     private String host;
     private long tcpConnectStartTime;
     private long tcpConnectEndTime;
+    private Http2Connection http2Connection;
+    private WebSocketConnection webSocketConnection;
 
     public MonitoredSocketImplV1() {
         this.queue = new LinkedList<>();
@@ -69,7 +75,41 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
         return MonitoredSocketImplV1.class.getSimpleName();
     }
 
-    private void error(Exception exception) {
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return http2Connection;
+    }
+
+    @Override
+    public void setHttp2Connection(Http2Connection http2Connection) {
+        this.http2Connection = http2Connection;
+        // response side switches to HTTP/2 frame parser too
+        if (parsingInputStream != null) {
+            parsingInputStream.setNextParser(parsingInputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return webSocketConnection;
+    }
+
+    @Override
+    public void setWebSocketConnection(WebSocketConnection webSocketConnection) {
+        this.webSocketConnection = webSocketConnection;
+        // response side finds the 101 first, request side switches to WebSocket frame parser
+        if (parsingOutputStream != null) {
+            parsingOutputStream.setNextParser(parsingOutputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public boolean isSslWrapped() {
+        TcpData tcpData = TransactionsCache.getTcpData(fd);
+        return tcpData != null && tcpData.isSslWrapped();
+    }
+
+    private void error(Exception exception, ErrorPhase errorPhase) {
         // TODO
         TransactionState transactionState;
         if (parsingInputStream != null) {
@@ -77,7 +117,7 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
         } else {
             transactionState = createTransactionState();
         }
-        transactionState.setException(exception.getMessage());
+        transactionState.setError(exception, errorPhase);
         Harvest.addHttpTransactionData(transactionState);
     }
 
@@ -96,7 +136,8 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             super.connect(host, port);
         } catch (IOException e) {
             // Collect error
-            error(e);
+            Metrics.recordConnectFailure();
+            error(e, ErrorPhase.CONNECT);
             throw e;
         }
         // FIXME:
@@ -116,7 +157,8 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             super.connect(inetAddress, port);
         } catch (IOException e) {
             // Collect error
-            error(e);
+            Metrics.recordConnectFailure();
+            error(e, ErrorPhase.CONNECT);
             throw e;
         }
         // FIXME:
@@ -148,7 +190,8 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             super.connect(socketAddress, timeout);
         } catch (IOException e) {
             // Collect error
-            error(e);
+            Metrics.recordConnectFailure();
+            error(e, ErrorPhase.CONNECT);
             throw e;
         }
         this.tcpConnectEndTime = System.currentTimeMillis();
@@ -166,7 +209,7 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             outputStream = super.getOutputStream();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
         // wrap origin OutputStream
@@ -182,7 +225,7 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             inputStream = super.getInputStream();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
         // wrap origin InputStream
@@ -197,12 +240,15 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             super.close();
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.CLOSE);
             throw e;
         }
         if (TransactionsCache.getTcpData(fd) != null) {
             TransactionsCache.removeTcpData(fd);
         }
+        if (parsingOutputStream != null) {
+            parsingOutputStream.notifySocketClosing();
+        }
         if (parsingInputStream != null) {
             parsingInputStream.notifySocketClosing();
         }
@@ -214,7 +260,7 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             return super.getOption(option);
         } catch (SocketException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
     }
@@ -225,7 +271,7 @@ public class MonitoredSocketImplV1 extends PlainSocketImpl implements MonitoredS
             super.setOption(optID, value);
         } catch (SocketException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
     }
@@ -1,15 +1,19 @@
 package com.hello2mao.xlogging.internal.tcp.tcpv2;
 
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.internal.Http2Connection;
 import com.hello2mao.xlogging.internal.MonitoredSocket;
 import com.hello2mao.xlogging.internal.TcpData;
 import com.hello2mao.xlogging.internal.TransactionState;
 import com.hello2mao.xlogging.internal.TransactionsCache;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
 import com.hello2mao.xlogging.internal.harvest.Harvest;
 import com.hello2mao.xlogging.internal.io.IOInstrument;
 import com.hello2mao.xlogging.internal.io.ParsingInputStream;
 import com.hello2mao.xlogging.internal.io.ParsingOutputStream;
 import com.hello2mao.xlogging.internal.log.XLog;
 import com.hello2mao.xlogging.internal.log.XLogManager;
+import com.hello2mao.xlogging.internal.metrics.Metrics;
 import com.hello2mao.xlogging.internal.util.ReflectionUtil;
 import com.hello2mao.xlogging.internal.util.URLUtil;
 
@@ -67,6 +71,8 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
     private String host;
     private long tcpConnectStartTime;
     private long tcpConnectEndTime;
+    private Http2Connection http2Connection;
+    private WebSocketConnection webSocketConnection;
 
     static {
         try {
@@ -150,7 +156,7 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
             return invoke(index, params);
         } catch (IOException e) {
             // Collect error
-            error(e);
+            error(e, getErrorPhase(index));
             throw e;
         } catch (RuntimeException e) {
             throw e;
@@ -159,6 +165,19 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
         }
     }
 
+    private static ErrorPhase getErrorPhase(int index) {
+        switch (index) {
+            case CONNECT_INET_ADDRESS_IDX:
+            case CONNECT_SOCKET_ADDRESS_IDX:
+            case CONNECT_STRING_INT_IDX:
+                return ErrorPhase.CONNECT;
+            case CLOSE_IDX:
+                return ErrorPhase.CLOSE;
+            default:
+                return ErrorPhase.OTHER;
+        }
+    }
+
     private <T> T invokeNoThrow(int index, Object[] params) {
         try {
             return (T) invoke(index, params);
@@ -235,7 +254,41 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
         return MonitoredSocketImplV2.class.getSimpleName();
     }
 
-    public void error(Exception exception) {
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return http2Connection;
+    }
+
+    @Override
+    public void setHttp2Connection(Http2Connection http2Connection) {
+        this.http2Connection = http2Connection;
+        // response side switches to HTTP/2 frame parser too
+        if (parsingInputStream != null) {
+            parsingInputStream.setNextParser(parsingInputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return webSocketConnection;
+    }
+
+    @Override
+    public void setWebSocketConnection(WebSocketConnection webSocketConnection) {
+        this.webSocketConnection = webSocketConnection;
+        // response side finds the 101 first, request side switches to WebSocket frame parser
+        if (parsingOutputStream != null) {
+            parsingOutputStream.setNextParser(parsingOutputStream.getInitialParser());
+        }
+    }
+
+    @Override
+    public boolean isSslWrapped() {
+        TcpData tcpData = TransactionsCache.getTcpData(fd);
+        return tcpData != null && tcpData.isSslWrapped();
+    }
+
+    public void error(Exception exception, ErrorPhase errorPhase) {
         // TODO:
         TransactionState transactionState;
         if (parsingInputStream != null) {
@@ -243,7 +296,7 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
         } else {
             transactionState = createTransactionState();
         }
-        transactionState.setException(exception.getMessage());
+        transactionState.setError(exception, errorPhase);
         Harvest.addHttpTransactionData(transactionState);
     }
 
@@ -312,6 +365,7 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
                 TransactionsCache.addTcpData(fd, new TcpData(tcpConnectStartTime, tcpConnectEndTime));
             }
         } catch (IOException e) {
+            Metrics.recordConnectFailure();
             e.printStackTrace();
             throw  e;
         }
@@ -361,6 +415,9 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
         if (TransactionsCache.getTcpData(fd) != null) {
             TransactionsCache.removeTcpData(fd);
         }
+        if (parsingOutputStream != null) {
+            parsingOutputStream.notifySocketClosing();
+        }
         if (parsingInputStream != null) {
             parsingInputStream.notifySocketClosing();
         }
@@ -414,7 +471,7 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
             syncFromDelegate();
         } catch (SocketException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
     }
@@ -426,7 +483,7 @@ public class MonitoredSocketImplV2 extends SocketImpl implements MonitoredSocket
             return delegate.getOption(optID);
         } catch (SocketException e) {
             // Collect error
-            error(e);
+            error(e, ErrorPhase.OTHER);
             throw e;
         }
     }
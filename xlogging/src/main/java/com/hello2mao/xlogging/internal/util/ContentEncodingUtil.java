@@ -0,0 +1,80 @@
+package com.hello2mao.xlogging.internal.util;
+
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.internal.TransactionState;
+
+import java.nio.ByteBuffer;
+
+public class ContentEncodingUtil {
+
+    // 10 bytes header + 8 bytes trailer
+    private static final int GZIP_MIN_LENGTH = 18;
+
+    /**
+     * count response body bytes, and keep the last 4 bytes of a gzip body,
+     * which is ISIZE (decoded size mod 2^32, little endian)
+     *
+     * @param transactionState TransactionState
+     * @param buffer byte[]
+     * @param offset int
+     * @param count int
+     */
+    public static void addResponseBody(TransactionState transactionState, byte[] buffer,
+                                       int offset, int count) {
+        long responseBodyBytes = Math.max(transactionState.getResponseBodyBytes(), 0L);
+        transactionState.setResponseBodyBytes(responseBodyBytes + count);
+        if (XLogging.getConfig().isMeasureDecodedSize() && isGzip(transactionState)) {
+            int trailer = transactionState.getResponseBodyTrailer();
+            for (int i = Math.max(offset, offset + count - 4); i < offset + count; i++) {
+                trailer = (trailer >>> 8) | ((buffer[i] & 0xFF) << 24);
+            }
+            transactionState.setResponseBodyTrailer(trailer);
+        }
+    }
+
+    /**
+     * Same as addResponseBody(TransactionState, byte[], int, int) for a direct buffer
+     *
+     * @param transactionState TransactionState
+     * @param buffer ByteBuffer
+     * @param offset int, absolute
+     * @param count int
+     */
+    public static void addResponseBody(TransactionState transactionState, ByteBuffer buffer,
+                                       int offset, int count) {
+        long responseBodyBytes = Math.max(transactionState.getResponseBodyBytes(), 0L);
+        transactionState.setResponseBodyBytes(responseBodyBytes + count);
+        if (XLogging.getConfig().isMeasureDecodedSize() && isGzip(transactionState)) {
+            int trailer = transactionState.getResponseBodyTrailer();
+            for (int i = Math.max(offset, offset + count - 4); i < offset + count; i++) {
+                trailer = (trailer >>> 8) | ((buffer.get(i) & 0xFF) << 24);
+            }
+            transactionState.setResponseBodyTrailer(trailer);
+        }
+    }
+
+    /**
+     * set decoded body size when response body finished
+     *
+     * @param transactionState TransactionState
+     */
+    public static void finishResponseBody(TransactionState transactionState) {
+        long responseBodyBytes = transactionState.getResponseBodyBytes();
+        if (responseBodyBytes < 0) {
+            return;
+        }
+        String contentEncoding = transactionState.getContentEncoding();
+        if (contentEncoding.length() == 0 || contentEncoding.equalsIgnoreCase("identity")) {
+            transactionState.setDecodedBodyBytes(responseBodyBytes);
+        } else if (XLogging.getConfig().isMeasureDecodedSize() && isGzip(transactionState)
+                && responseBodyBytes >= GZIP_MIN_LENGTH) {
+            transactionState.setDecodedBodyBytes(
+                    transactionState.getResponseBodyTrailer() & 0xFFFFFFFFL);
+        }
+    }
+
+    private static boolean isGzip(TransactionState transactionState) {
+        String contentEncoding = transactionState.getContentEncoding();
+        return contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip");
+    }
+}
@@ -0,0 +1,212 @@
+package com.hello2mao.xlogging.internal.util;
+
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingConfig;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Normalize pathAndQuery to a low cardinality endpoint for aggregation
+ *
+ * e.g.
+ * /channel/listjson?pn=0&rn=30 -> /channel/listjson
+ * /users/12345/photos -> /users/{num}/photos
+ * /files/3f2504e0-4f89-11d3-9a0c-0305e82c3301 -> /files/{uuid}
+ * /static/5d41402abc4b2a76b9719d911017c592 -> /static/{hash}
+ *
+ * User templates from XLoggingConfig are tried first. Raw paths are cached in a bounded LRU,
+ * and once maxEndpointCount endpoints exist new ones are reported as OVERFLOW_ENDPOINT.
+ */
+public class EndpointNormalizer {
+
+    public static final String OVERFLOW_ENDPOINT = "/{overflow}";
+    private static final int MIN_HASH_LENGTH = 16;
+    private static final int UUID_LENGTH = 36;
+
+    private static volatile EndpointNormalizer instance;
+
+    private final XLoggingConfig config;
+    private final List<String> templates;
+    private final List<String[]> templateSegments;
+    private final int maxEndpointCount;
+    private final Map<String, String> cache;
+    private final Set<String> endpoints;
+
+    private EndpointNormalizer(XLoggingConfig config) {
+        this.config = config;
+        this.templates = new ArrayList<>(config.getPathTemplates());
+        this.templateSegments = new ArrayList<>();
+        for (String template : templates) {
+            templateSegments.add(stripQuery(template).split("/", -1));
+        }
+        this.maxEndpointCount = config.getMaxEndpointCount();
+        final int cacheSize = config.getEndpointCacheSize();
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.endpoints = new HashSet<>();
+    }
+
+    public static String normalize(String pathAndQuery) {
+        if (pathAndQuery == null) {
+            return "";
+        }
+        return getInstance().getEndpoint(pathAndQuery);
+    }
+
+    private static EndpointNormalizer getInstance() {
+        EndpointNormalizer normalizer = instance;
+        XLoggingConfig config = XLogging.getConfig();
+        if (normalizer == null || normalizer.config != config) {
+            // config is replaced by XLogging.install(config, callback)
+            normalizer = new EndpointNormalizer(config);
+            instance = normalizer;
+        }
+        return normalizer;
+    }
+
+    private synchronized String getEndpoint(String pathAndQuery) {
+        String endpoint = cache.get(pathAndQuery);
+        if (endpoint == null) {
+            endpoint = toEndpoint(pathAndQuery);
+            if (!endpoints.contains(endpoint)) {
+                if (endpoints.size() >= maxEndpointCount) {
+                    endpoint = OVERFLOW_ENDPOINT;
+                } else {
+                    endpoints.add(endpoint);
+                }
+            }
+            cache.put(pathAndQuery, endpoint);
+        }
+        return endpoint;
+    }
+
+    private String toEndpoint(String pathAndQuery) {
+        String path = stripQuery(pathAndQuery);
+        // absolute form used with proxies, e.g. http://ip.taobao.com/service/getIpInfo.php
+        int schemeEnd = path.indexOf("://");
+        if (schemeEnd != -1) {
+            int pathStart = path.indexOf('/', schemeEnd + 3);
+            path = pathStart == -1 ? "/" : path.substring(pathStart);
+        }
+        if (path.isEmpty()) {
+            return "/";
+        }
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < templateSegments.size(); i++) {
+            if (matchTemplate(templateSegments.get(i), segments)) {
+                return templates.get(i);
+            }
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(collapseSegment(segments[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String stripQuery(String pathAndQuery) {
+        int end = pathAndQuery.length();
+        int query = pathAndQuery.indexOf('?');
+        if (query != -1) {
+            end = query;
+        }
+        int fragment = pathAndQuery.indexOf('#');
+        if (fragment != -1 && fragment < end) {
+            end = fragment;
+        }
+        return pathAndQuery.substring(0, end);
+    }
+
+    private static boolean matchTemplate(String[] template, String[] segments) {
+        if (template.length != segments.length) {
+            return false;
+        }
+        for (int i = 0; i < template.length; i++) {
+            String segment = template[i];
+            boolean wildcard = "*".equals(segment)
+                    || segment.length() > 2 && segment.charAt(0) == '{'
+                    && segment.charAt(segment.length() - 1) == '}';
+            if (!wildcard && !segment.equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String collapseSegment(String segment) {
+        if (segment.isEmpty()) {
+            return segment;
+        }
+        if (isNumeric(segment)) {
+            return "{num}";
+        }
+        if (isUuid(segment)) {
+            return "{uuid}";
+        }
+        if (isHash(segment)) {
+            return "{hash}";
+        }
+        return segment;
+    }
+
+    private static boolean isNumeric(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String segment) {
+        if (segment.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = segment.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * md5/sha1/sha256 like segment, hex only with at least one digit
+     *
+     * @param segment String
+     * @return boolean
+     */
+    private static boolean isHash(String segment) {
+        if (segment.length() < MIN_HASH_LENGTH) {
+            return false;
+        }
+        boolean hasDigit = false;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (Character.digit(c, 16) == -1) {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+}
@@ -0,0 +1,101 @@
+package com.hello2mao.xlogging.internal.util;
+
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.ErrorType;
+
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.cert.CertificateException;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Classify socket exceptions into ErrorType.
+ * Exception types are checked first, messages are only used for the errno names
+ * (ECONNRESET, EPIPE...) which libcore puts in messages regardless of locale.
+ */
+public class ErrorClassifier {
+
+    private static final int MAX_CAUSE_DEPTH = 5;
+
+    public static ErrorType classify(Exception exception, ErrorPhase errorPhase) {
+        if (exception == null) {
+            return ErrorType.UNKNOWN;
+        }
+        if (exception instanceof UnknownHostException) {
+            return ErrorType.DNS;
+        }
+        if (exception instanceof SocketTimeoutException) {
+            if (errorPhase == ErrorPhase.CONNECT) {
+                return ErrorType.CONNECT_TIMEOUT;
+            }
+            return errorPhase == ErrorPhase.REQUEST ? ErrorType.WRITE_TIMEOUT
+                    : ErrorType.READ_TIMEOUT;
+        }
+        if (exception instanceof InterruptedIOException) {
+            return ErrorType.CANCELLED;
+        }
+        if (exception instanceof NoRouteToHostException
+                || exception instanceof PortUnreachableException) {
+            return ErrorType.NETWORK_UNREACHABLE;
+        }
+        if (exception instanceof SSLPeerUnverifiedException || hasCertificateCause(exception)) {
+            return ErrorType.TLS_CERTIFICATE;
+        }
+        if (exception instanceof SSLHandshakeException
+                || exception instanceof SSLException && errorPhase == ErrorPhase.TLS_HANDSHAKE) {
+            return ErrorType.TLS_HANDSHAKE;
+        }
+        if (exception instanceof EOFException) {
+            return ErrorType.CONNECTION_CLOSED;
+        }
+        String message = exception.getMessage();
+        if (message != null) {
+            if (message.contains("ECONNREFUSED")) {
+                return ErrorType.CONNECT_REFUSED;
+            }
+            if (message.contains("ETIMEDOUT")) {
+                return errorPhase == ErrorPhase.CONNECT ? ErrorType.CONNECT_TIMEOUT
+                        : ErrorType.READ_TIMEOUT;
+            }
+            if (message.contains("ENETUNREACH") || message.contains("EHOSTUNREACH")) {
+                return ErrorType.NETWORK_UNREACHABLE;
+            }
+            if (message.contains("ECONNRESET") || message.contains("Connection reset")) {
+                return ErrorType.CONNECTION_RESET;
+            }
+            if (message.contains("EPIPE") || message.contains("Broken pipe")) {
+                return ErrorType.CONNECTION_CLOSED;
+            }
+            if (message.contains("Socket closed") || message.contains("Socket is closed")
+                    || message.contains("ECANCELED")) {
+                return ErrorType.CANCELLED;
+            }
+        }
+        if (exception instanceof ConnectException) {
+            return ErrorType.CONNECT_REFUSED;
+        }
+        if (exception instanceof SocketException && errorPhase == ErrorPhase.CONNECT) {
+            return ErrorType.NETWORK_UNREACHABLE;
+        }
+        return ErrorType.UNKNOWN;
+    }
+
+    private static boolean hasCertificateCause(Throwable throwable) {
+        for (int i = 0; i < MAX_CAUSE_DEPTH && throwable != null; i++) {
+            if (throwable instanceof CertificateException) {
+                return true;
+            }
+            throwable = throwable.getCause();
+        }
+        return false;
+    }
+}
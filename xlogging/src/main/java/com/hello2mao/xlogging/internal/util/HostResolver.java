@@ -0,0 +1,72 @@
+package com.hello2mao.xlogging.internal.util;
+
+import com.hello2mao.xlogging.internal.log.XLog;
+import com.hello2mao.xlogging.internal.log.XLogManager;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reverse DNS for records without any host name.
+ * Lookups run on one background thread and are cached, the caller never blocks.
+ */
+public class HostResolver {
+
+    private static final XLog log = XLogManager.getAgentLog();
+    private static final int MAX_CACHE_SIZE = 256;
+    private static final ConcurrentHashMap<String, String> hostNames = new ConcurrentHashMap<>();
+    private static final Set<String> pending =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static ExecutorService executor;
+
+    /**
+     * Get host name of ip if already resolved, otherwise start resolving it and return ip
+     *
+     * @param ip String
+     * @return String
+     */
+    public static String getHostName(final String ip) {
+        String hostName = hostNames.get(ip);
+        if (hostName != null) {
+            return hostName;
+        }
+        if (hostNames.size() < MAX_CACHE_SIZE && pending.add(ip)) {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // ip literal, getByName() does not query DNS, getHostName() does
+                        String hostName = InetAddress.getByName(ip).getHostName();
+                        hostNames.put(ip, StringCache.intern(hostName));
+                        log.debug("Resolved " + ip + " to " + hostName);
+                    } catch (Exception e) {
+                        // keep ip as host name
+                        hostNames.put(ip, ip);
+                    } finally {
+                        pending.remove(ip);
+                    }
+                }
+            });
+        }
+        return ip;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "XLogging-HostResolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
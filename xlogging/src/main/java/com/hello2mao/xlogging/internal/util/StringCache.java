@@ -0,0 +1,29 @@
+package com.hello2mao.xlogging.internal.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded intern cache for low cardinality values like host, ip, method and protocol,
+ * so records share one String instance per value.
+ * Once full, new values are returned as is instead of evicting.
+ */
+public class StringCache {
+
+    private static final int MAX_SIZE = 2048;
+    private static final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String cached = cache.get(value);
+        if (cached != null) {
+            return cached;
+        }
+        if (cache.size() >= MAX_SIZE) {
+            return value;
+        }
+        cached = cache.putIfAbsent(value, value);
+        return cached != null ? cached : value;
+    }
+}
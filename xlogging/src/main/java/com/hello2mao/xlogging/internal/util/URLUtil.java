@@ -4,9 +4,16 @@ import android.text.TextUtils;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class URLUtil {
 
+    // recently formatted addresses, indexed by address hash, overwritten on collision
+    private static final int IP_CACHE_SIZE = 256;
+    private static final AtomicReferenceArray<IpEntry> ipCache =
+            new AtomicReferenceArray<>(IP_CACHE_SIZE);
+
     /**
      * get IP
      *
@@ -17,30 +24,35 @@ public class URLUtil {
         if (inetSocketAddress == null) {
             return "";
         }
-        try {
-            String[] split = inetSocketAddress.toString().split("/");
-            if (split.length == 2 && !TextUtils.isEmpty(split[1])) {
-                return split[1].contains(":") ? split[1].split(":")[0] : split[1];
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return "";
+        return getIp(inetSocketAddress.getAddress());
     }
 
+    /**
+     * get IP from address bytes, without toString() and split()
+     *
+     * @param inetAddress InetAddress
+     * @return String, shared instance for the same address
+     */
     public static String getIp(InetAddress inetAddress) {
         if (inetAddress == null) {
             return "";
         }
-        try {
-            String[] split = inetAddress.toString().split("/");
-            if (split.length == 2 && !TextUtils.isEmpty(split[1])) {
-                return split[1].contains(":") ? split[1].split(":")[0] : split[1];
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        byte[] address = inetAddress.getAddress();
+        int index = hash(address) & (IP_CACHE_SIZE - 1);
+        IpEntry entry = ipCache.get(index);
+        if (entry != null && Arrays.equals(entry.address, address)) {
+            return entry.ip;
         }
-        return "";
+        String ip;
+        if (address.length == 4) {
+            ip = formatIpv4(address);
+        } else {
+            // IPv6 compression and scope id, rare enough to use the platform formatter
+            ip = inetAddress.getHostAddress();
+        }
+        ip = StringCache.intern(ip);
+        ipCache.set(index, new IpEntry(address, ip));
+        return ip;
     }
 
     /**
@@ -53,37 +65,76 @@ public class URLUtil {
         if (inetSocketAddress == null) {
             return "";
         }
-        try {
-            String[] split = inetSocketAddress.toString().split("/");
-            if (split.length == 2) {
-                // 如果有host(如"ip.taobao.com/140.205.140.33:80"),则返回host
-                if (!TextUtils.isEmpty(split[0])) {
-                    return split[0];
-                }
-                // 如果没有host(如"/140.205.140.33:80")，则返回ip
-                if (split[1] != null) {
-                    return split[1].contains(":") ? split[1].split(":")[0] : split[1];
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        // 如果有host(如"ip.taobao.com/140.205.140.33:80"),则返回host
+        // 如果没有host(如"/140.205.140.33:80")，则返回ip
+        // getHostString() never does a reverse lookup
+        String host = inetSocketAddress.getHostString();
+        if (TextUtils.isEmpty(host)) {
+            return getIp(inetSocketAddress.getAddress());
         }
-        return "";
+        return StringCache.intern(host);
     }
 
+    /**
+     * get host from Host header or :authority
+     *
+     * @param host String, e.g. "image.baidu.com:80"
+     * @return String
+     */
     public static String getHost(final String host) {
         if (TextUtils.isEmpty(host)) {
             return "";
         }
-        try {
-            if (host.contains(":")) {
-                return host.split(":")[0];
+        int colon = host.lastIndexOf(':');
+        boolean hasPort;
+        if (host.charAt(0) == '[') {
+            // "[::1]:443", keep IPv6 literal
+            hasPort = colon > host.indexOf(']');
+        } else {
+            // "2001:db8::1" is an IPv6 literal without brackets, not a port
+            hasPort = colon != -1 && host.indexOf(':') == colon;
+        }
+        if (hasPort) {
+            return StringCache.intern(host.substring(0, colon));
+        }
+        return StringCache.intern(host);
+    }
+
+    private static int hash(byte[] address) {
+        int hash = 0;
+        for (byte b : address) {
+            hash = 31 * hash + b;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String formatIpv4(byte[] address) {
+        char[] chars = new char[15];
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                chars[length++] = '.';
+            }
+            int value = address[i] & 0xFF;
+            if (value >= 100) {
+                chars[length++] = (char) ('0' + value / 100);
+            }
+            if (value >= 10) {
+                chars[length++] = (char) ('0' + value / 10 % 10);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            chars[length++] = (char) ('0' + value % 10);
         }
-        return host;
+        return new String(chars, 0, length);
     }
 
+    private static final class IpEntry {
 
+        private final byte[] address;
+        private final String ip;
+
+        IpEntry(byte[] address, String ip) {
+            this.address = address;
+            this.ip = ip;
+        }
+    }
 }
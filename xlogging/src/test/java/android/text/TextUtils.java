@@ -0,0 +1,12 @@
+package android.text;
+
+/**
+ * JVM stand-in of android.text.TextUtils for local runs, e.g. Replay. Test classes come
+ * before android.jar on the classpath, whose methods only throw "Stub!".
+ */
+public class TextUtils {
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}
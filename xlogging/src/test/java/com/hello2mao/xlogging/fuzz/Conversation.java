@@ -0,0 +1,84 @@
+package com.hello2mao.xlogging.fuzz;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requests and responses of one connection. A response is only fed after its request,
+ * so records pair up the same way on every split.
+ */
+public class Conversation {
+
+    private final List<byte[]> requests = new ArrayList<>();
+    private final List<byte[]> responses = new ArrayList<>();
+
+    public void add(byte[] request, byte[] response) {
+        requests.add(request);
+        responses.add(response);
+    }
+
+    public int size() {
+        return requests.size();
+    }
+
+    public byte[] getRequest(int index) {
+        return requests.get(index);
+    }
+
+    public byte[] getResponse(int index) {
+        return responses.get(index);
+    }
+
+    public void setRequest(int index, byte[] request) {
+        requests.set(index, request);
+    }
+
+    public void setResponse(int index, byte[] response) {
+        responses.set(index, response);
+    }
+
+    public byte[] getRequestStream() {
+        return concat(requests);
+    }
+
+    public byte[] getResponseStream() {
+        return concat(responses);
+    }
+
+    /**
+     * @return end offsets of the requests in getRequestStream()
+     */
+    public int[] getRequestEnds() {
+        return getEnds(requests);
+    }
+
+    /**
+     * @return end offsets of the responses in getResponseStream()
+     */
+    public int[] getResponseEnds() {
+        return getEnds(responses);
+    }
+
+    public long getLength() {
+        return getRequestStream().length + getResponseStream().length;
+    }
+
+    private static int[] getEnds(List<byte[]> messages) {
+        int[] ends = new int[messages.size()];
+        int end = 0;
+        for (int i = 0; i < ends.length; i++) {
+            end += messages.get(i).length;
+            ends[i] = end;
+        }
+        return ends;
+    }
+
+    private static byte[] concat(List<byte[]> messages) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] message : messages) {
+            out.write(message, 0, message.length);
+        }
+        return out.toByteArray();
+    }
+}
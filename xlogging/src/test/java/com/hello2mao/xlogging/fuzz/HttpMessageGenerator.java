@@ -0,0 +1,200 @@
+package com.hello2mao.xlogging.fuzz;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Random valid HTTP/1.x conversations: keep-alive, HEAD, 204/304, 100 Continue, chunked
+ * bodies with extensions and trailers, duplicate Content-Length, odd header case and
+ * whitespace, header lines longer than the parsers buffer, and a connection-close
+ * delimited last response.
+ */
+public class HttpMessageGenerator {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "POST", "PUT",
+            "DELETE", "HEAD", "OPTIONS", "PATCH"};
+    private static final int[] STATUS_CODES = {200, 200, 200, 201, 204, 206, 301, 302, 304,
+            400, 401, 403, 404, 500, 502, 503};
+    private static final String[] REASONS = {"OK", "Created", "No Content", "Partial Content",
+            "Moved Permanently", "Found", "Not Modified", "Bad Request", "Unauthorized",
+            "Forbidden", "Not Found", "Internal Server Error", "Bad Gateway",
+            "Service Unavailable", ""};
+    private static final String[] HEADER_NAMES = {"Accept", "User-Agent", "Cookie", "Cache-Control",
+            "X-Request-Id", "Content-Type", "Date", "Server", "ETag", "Vary", "Via"};
+
+    private final Random random;
+
+    public HttpMessageGenerator(Random random) {
+        this.random = random;
+    }
+
+    public Conversation next() {
+        Conversation conversation = new Conversation();
+        int count = 1 + random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            boolean last = i == count - 1;
+            String method = METHODS[random.nextInt(METHODS.length)];
+            boolean http10 = random.nextInt(10) == 0;
+            boolean requestBody = method.startsWith("P") && random.nextInt(5) != 0;
+            byte[] request = newRequest(method, http10, requestBody);
+            byte[] response = newResponse(method, requestBody,
+                    last && random.nextInt(4) == 0);
+            conversation.add(request, response);
+        }
+        return conversation;
+    }
+
+    private byte[] newRequest(String method, boolean http10, boolean hasBody) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder path = new StringBuilder("/");
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            path.append(randomToken(1 + random.nextInt(12))).append('/');
+        }
+        if (random.nextBoolean()) {
+            path.append('?').append(randomToken(1 + random.nextInt(6))).append('=')
+                    .append(random.nextInt(100000));
+        }
+        write(out, method + " " + path + " " + (http10 ? "HTTP/1.0" : "HTTP/1.1") + "\r\n");
+        writeHeader(out, randomCase("Host"), "example" + random.nextInt(10) + ".com");
+        writeHeaders(out);
+        if (hasBody) {
+            writeBody(out, random.nextInt(2000), false);
+        } else {
+            write(out, "\r\n");
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] newResponse(String method, boolean expectContinue, boolean closeDelimited) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (expectContinue && random.nextInt(4) == 0) {
+            write(out, "HTTP/1.1 100 Continue\r\n\r\n");
+        }
+        int statusCode = STATUS_CODES[random.nextInt(STATUS_CODES.length)];
+        write(out, "HTTP/1.1 " + statusCode + " " + REASONS[random.nextInt(REASONS.length)]
+                + "\r\n");
+        writeHeaders(out);
+        if (random.nextInt(8) == 0) {
+            writeHeader(out, "Server-Timing", "db;dur=" + random.nextInt(100) + ", app;dur="
+                    + random.nextInt(100) + ".5");
+        }
+        int bodyLength = random.nextInt(4) == 0 ? random.nextInt(20000) : random.nextInt(800);
+        if (method.equals("HEAD") || statusCode == 204 || statusCode == 304) {
+            // framing headers describe the body a GET would get
+            if (statusCode != 204) {
+                writeHeader(out, "Content-Length", String.valueOf(bodyLength));
+            }
+            write(out, "\r\n");
+        } else if (closeDelimited) {
+            write(out, "\r\n");
+            write(out, randomBody(bodyLength));
+        } else {
+            writeBody(out, bodyLength, true);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeHeaders(ByteArrayOutputStream out) {
+        int count = random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            String name = randomCase(HEADER_NAMES[random.nextInt(HEADER_NAMES.length)]);
+            // now and then longer than a header line buffer
+            int length = random.nextInt(20) == 0 ? 200 + random.nextInt(600) : random.nextInt(80);
+            writeHeader(out, name, randomText(length));
+        }
+    }
+
+    private void writeBody(ByteArrayOutputStream out, int length, boolean response) {
+        int framing = random.nextInt(6);
+        if (framing <= 2) {
+            writeHeader(out, randomCase("Content-Length"), String.valueOf(length));
+            write(out, "\r\n");
+            write(out, randomBody(length));
+        } else if (framing == 3 && response) {
+            // duplicate header joined by a proxy
+            writeHeader(out, "Content-Length", length + ", " + length);
+            write(out, "\r\n");
+            write(out, randomBody(length));
+        } else {
+            writeHeader(out, randomCase("Transfer-Encoding"),
+                    random.nextInt(4) == 0 ? "gzip, chunked" : "chunked");
+            write(out, "\r\n");
+            writeChunks(out, length);
+        }
+    }
+
+    private void writeChunks(ByteArrayOutputStream out, int length) {
+        while (length > 0) {
+            int chunk = Math.min(length, 1 + random.nextInt(4096));
+            String size = Integer.toHexString(chunk);
+            write(out, random.nextBoolean() ? size : size.toUpperCase());
+            if (random.nextInt(6) == 0) {
+                write(out, ";ext=" + randomToken(4));
+            }
+            write(out, "\r\n");
+            write(out, randomBody(chunk));
+            write(out, "\r\n");
+            length -= chunk;
+        }
+        write(out, "0\r\n");
+        if (random.nextInt(5) == 0) {
+            write(out, "X-Checksum: " + randomToken(16) + "\r\n");
+        }
+        write(out, "\r\n");
+    }
+
+    private void writeHeader(ByteArrayOutputStream out, String name, String value) {
+        // optional whitespace around the value
+        String before = random.nextInt(6) == 0 ? "  " : random.nextInt(10) == 0 ? "" : " ";
+        String after = random.nextInt(8) == 0 ? " \t" : "";
+        write(out, name + ":" + before + value + after + "\r\n");
+    }
+
+    private String randomCase(String name) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return name.toLowerCase();
+            case 1:
+                return name.toUpperCase();
+            default:
+                return name;
+        }
+    }
+
+    private String randomToken(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private String randomText(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (0x21 + random.nextInt(0x7E - 0x21)));
+            if (i > 0 && i < length - 1 && random.nextInt(12) == 0) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private byte[] randomBody(int length) {
+        byte[] body = new byte[length];
+        random.nextBytes(body);
+        return body;
+    }
+
+    private static void write(ByteArrayOutputStream out, String s) {
+        write(out, s.getBytes(ISO_8859_1));
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+}
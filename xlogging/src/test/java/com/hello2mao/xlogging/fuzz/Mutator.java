@@ -0,0 +1,92 @@
+package com.hello2mao.xlogging.fuzz;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Byte-level mutations of one message of a conversation, biased to the bytes that
+ * drive framing: CR, LF, ':', ';', ',', digits and hex digits.
+ */
+public class Mutator {
+
+    private static final byte[] INTERESTING = {'\r', '\n', ':', ';', ',', ' ', '0', '9', 'a', 'F', 'x', '-', '+'};
+
+    public static void mutate(Conversation conversation, Random random) {
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            int index = random.nextInt(conversation.size());
+            if (random.nextBoolean()) {
+                conversation.setRequest(index, mutate(conversation.getRequest(index), random));
+            } else {
+                conversation.setResponse(index, mutate(conversation.getResponse(index), random));
+            }
+        }
+    }
+
+    private static byte[] mutate(byte[] message, Random random) {
+        if (message.length == 0) {
+            return new byte[]{randomByte(random)};
+        }
+        // mostly in the header, where the parsers are line based
+        int limit = random.nextInt(4) == 0 ? message.length : Math.min(message.length, 256);
+        int position = random.nextInt(limit);
+        switch (random.nextInt(7)) {
+            case 0: // replace
+                message = message.clone();
+                message[position] = randomByte(random);
+                return message;
+            case 1: // insert
+                return splice(message, position, 0, new byte[]{randomByte(random)});
+            case 2: // delete
+                return splice(message, position, 1 + random.nextInt(
+                        Math.min(8, message.length - position)), new byte[0]);
+            case 3: // duplicate
+                int length = 1 + random.nextInt(Math.min(32, message.length - position));
+                return splice(message, position, 0,
+                        Arrays.copyOfRange(message, position, position + length));
+            case 4: // truncate
+                return Arrays.copyOf(message, position);
+            case 5: // bare LF line ends
+                return replaceAll(message, new byte[]{'\r', '\n'}, new byte[]{'\n'});
+            default: // change a digit, e.g. of Content-Length or a chunk size
+                for (int i = position; i < message.length; i++) {
+                    if (message[i] >= '0' && message[i] <= '9') {
+                        message = message.clone();
+                        message[i] = (byte) ('0' + random.nextInt(10));
+                        break;
+                    }
+                }
+                return message;
+        }
+    }
+
+    private static byte randomByte(Random random) {
+        return random.nextBoolean() ? INTERESTING[random.nextInt(INTERESTING.length)]
+                : (byte) random.nextInt(256);
+    }
+
+    private static byte[] splice(byte[] message, int position, int delete, byte[] insert) {
+        byte[] result = new byte[message.length - delete + insert.length];
+        System.arraycopy(message, 0, result, 0, position);
+        System.arraycopy(insert, 0, result, position, insert.length);
+        System.arraycopy(message, position + delete, result, position + insert.length,
+                message.length - position - delete);
+        return result;
+    }
+
+    private static byte[] replaceAll(byte[] message, byte[] target, byte[] replacement) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(message.length);
+        int i = 0;
+        while (i < message.length) {
+            if (i + target.length <= message.length && Arrays.equals(
+                    Arrays.copyOfRange(message, i, i + target.length), target)) {
+                out.write(replacement, 0, replacement.length);
+                i += target.length;
+            } else {
+                out.write(message[i++]);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,405 @@
+package com.hello2mao.xlogging.fuzz;
+
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+import com.hello2mao.xlogging.internal.nio.NioConnection;
+import com.hello2mao.xlogging.replay.Capture;
+import com.hello2mao.xlogging.replay.ReplayConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Differential fuzzing of the request and response parsers. Each case is a random
+ * conversation, mutated or not, fed in every FeedMode with random splits, and the
+ * records are compared with ReferenceParser and with each other. Throwables the
+ * parsers swallow and print, i.e. silent fallbacks to NoopLineParser, are counted.
+ *
+ * Usage: ParserFuzz [-s seed] [-n cases] [-m mutatedFraction]
+ * A failure prints the seed of its case, ParserFuzz -s seed -n 1 replays the case alone.
+ */
+public class ParserFuzz {
+
+    private static final int MAX_FAILURES = 10;
+
+    public enum FeedMode {
+        // ParsingInputStream/ParsingOutputStream, block reads and writes
+        STREAM,
+        // ParsingInputStream/ParsingOutputStream, read() and write(int)
+        STREAM_BYTE,
+        // NioConnection, heap ByteBuffers
+        NIO_HEAP,
+        // NioConnection, direct ByteBuffers
+        NIO_DIRECT
+    }
+
+    public static class Result {
+
+        private long validCases;
+        private long validMatches;
+        private long mutatedCases;
+        private long mutatedMatches;
+        private long splitDivergences;
+        private final long[] bytes = new long[FeedMode.values().length];
+        private final long[] nanos = new long[FeedMode.values().length];
+        private final Map<String, Integer> swallowedThrowables = new TreeMap<>();
+        private final List<String> failures = new ArrayList<>();
+
+        public long getValidCases() {
+            return validCases;
+        }
+
+        public long getValidMatches() {
+            return validMatches;
+        }
+
+        public long getMutatedCases() {
+            return mutatedCases;
+        }
+
+        public long getMutatedMatches() {
+            return mutatedMatches;
+        }
+
+        /**
+         * @return cases whose records depend on how the bytes were split or fed
+         */
+        public long getSplitDivergences() {
+            return splitDivergences;
+        }
+
+        public Map<String, Integer> getSwallowedThrowables() {
+            return swallowedThrowables;
+        }
+
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        private void addFailure(String failure) {
+            if (failures.size() < MAX_FAILURES) {
+                failures.add(failure);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "valid:    %d/%d match reference (%.2f%%)%n",
+                    validMatches, validCases, percent(validMatches, validCases)));
+            sb.append(String.format(Locale.US, "mutated:  %d/%d match reference (%.2f%%)%n",
+                    mutatedMatches, mutatedCases, percent(mutatedMatches, mutatedCases)));
+            sb.append("split divergences: ").append(splitDivergences).append('\n');
+            sb.append("swallowed throwables: ").append(swallowedThrowables).append('\n');
+            for (FeedMode mode : FeedMode.values()) {
+                int i = mode.ordinal();
+                sb.append(String.format(Locale.US, "%-12s %.1f MB/s%n", mode,
+                        nanos[i] == 0 ? 0 : bytes[i] * 1e9 / nanos[i] / (1 << 20)));
+            }
+            for (String failure : failures) {
+                sb.append(failure).append('\n');
+            }
+            return sb.toString();
+        }
+
+        private static double percent(long part, long total) {
+            return total == 0 ? 100 : part * 100.0 / total;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = System.currentTimeMillis();
+        int cases = 1000;
+        double mutatedFraction = 0.5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-s")) {
+                seed = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("-n")) {
+                cases = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-m")) {
+                mutatedFraction = Double.parseDouble(args[i + 1]);
+            }
+        }
+        System.out.println("seed " + seed + ", " + cases + " cases");
+        System.out.print(run(seed, cases, mutatedFraction));
+    }
+
+    /**
+     * @param seed case i uses seed + i, so a failing case can be run alone
+     * @param cases number of conversations
+     * @param mutatedFraction share of conversations mutated after generation
+     * @return Result
+     * @throws IOException never, the streams are in memory
+     */
+    public static Result run(long seed, int cases, double mutatedFraction) throws IOException {
+        Result result = new Result();
+        final List<TransactionRecord> records = new ArrayList<>();
+        XLogging.setCallback(new XLoggingCallback() {
+            @Override
+            public void handle(TransactionData transactionData) {
+                records.add(new TransactionRecord(transactionData));
+            }
+        });
+        PrintStream err = System.err;
+        System.setErr(new ThrowableCounter(result.swallowedThrowables));
+        try {
+            for (int i = 0; i < cases; i++) {
+                runCase(seed + i, mutatedFraction, records, result);
+            }
+        } finally {
+            System.setErr(err);
+        }
+        return result;
+    }
+
+    private static void runCase(long caseSeed, double mutatedFraction, List<TransactionRecord> records,
+                                Result result) throws IOException {
+        Random random = new Random(caseSeed);
+        Conversation conversation = new HttpMessageGenerator(random).next();
+        boolean mutated = random.nextDouble() < mutatedFraction;
+        if (mutated) {
+            Mutator.mutate(conversation, random);
+        }
+        List<TransactionRecord> expected = ReferenceParser.parse(conversation.getRequestStream(),
+                conversation.getResponseStream());
+        List<int[]> schedule = newSchedule(conversation, random);
+        long length = conversation.getLength();
+        List<TransactionRecord> first = null;
+        boolean match = true;
+        boolean divergent = false;
+        for (FeedMode mode : FeedMode.values()) {
+            records.clear();
+            Random feedRandom = new Random(caseSeed * 31 + mode.ordinal());
+            long startTime = System.nanoTime();
+            feed(conversation, schedule, mode, feedRandom);
+            result.nanos[mode.ordinal()] += System.nanoTime() - startTime;
+            result.bytes[mode.ordinal()] += length;
+            List<TransactionRecord> actual = new ArrayList<>(records);
+            if (first == null) {
+                first = actual;
+            } else if (!first.equals(actual)) {
+                divergent = true;
+            }
+            if (!actual.equals(expected)) {
+                match = false;
+                if (!mutated || divergent) {
+                    result.addFailure("seed=" + caseSeed + " mode=" + mode + " mutated="
+                            + mutated + "\n  expected=" + expected + "\n  actual=  " + actual);
+                }
+            }
+        }
+        if (divergent) {
+            result.splitDivergences++;
+        }
+        if (mutated) {
+            result.mutatedCases++;
+            result.mutatedMatches += match ? 1 : 0;
+        } else {
+            result.validCases++;
+            result.validMatches += match ? 1 : 0;
+        }
+    }
+
+    /**
+     * Order of request and response runs, the same for every FeedMode. A run is one or
+     * more whole messages of one direction, a response only after its request.
+     *
+     * @return {direction, start, end} per run, direction 0 for requests
+     */
+    private static List<int[]> newSchedule(Conversation conversation, Random random) {
+        int[] requestEnds = conversation.getRequestEnds();
+        int[] responseEnds = conversation.getResponseEnds();
+        int count = conversation.size();
+        List<int[]> schedule = new ArrayList<>();
+        int written = 0;
+        int read = 0;
+        while (read < count) {
+            if (written < count && (written == read || random.nextBoolean())) {
+                int messages = 1 + random.nextInt(Math.min(3, count - written));
+                schedule.add(new int[]{0, written == 0 ? 0 : requestEnds[written - 1],
+                        requestEnds[written + messages - 1]});
+                written += messages;
+            } else {
+                int messages = 1 + random.nextInt(written - read);
+                schedule.add(new int[]{1, read == 0 ? 0 : responseEnds[read - 1],
+                        responseEnds[read + messages - 1]});
+                read += messages;
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Feed each run of the schedule in random pieces, pieces may span messages
+     */
+    private static void feed(Conversation conversation, List<int[]> schedule, FeedMode mode,
+                             Random random) throws IOException {
+        byte[] requests = conversation.getRequestStream();
+        byte[] responses = conversation.getResponseStream();
+        // 1, small, large or unbounded pieces
+        int[] maxPieces = {1, 8, 64, 4096, Integer.MAX_VALUE};
+        int maxPiece = maxPieces[random.nextInt(maxPieces.length)];
+        Feeder feeder = newFeeder(mode, random);
+        for (int[] run : schedule) {
+            boolean request = run[0] == 0;
+            int position = run[1];
+            while (position < run[2]) {
+                int piece = maxPiece == Integer.MAX_VALUE ? Integer.MAX_VALUE
+                        : 1 + random.nextInt(maxPiece);
+                int count = Math.min(piece, run[2] - position);
+                if (request) {
+                    feeder.write(Arrays.copyOfRange(requests, position, position + count));
+                } else {
+                    feeder.read(Arrays.copyOfRange(responses, position, position + count));
+                }
+                position += count;
+            }
+        }
+        feeder.endOfStream();
+        feeder.close();
+    }
+
+    private interface Feeder {
+
+        void write(byte[] data) throws IOException;
+
+        void read(byte[] data) throws IOException;
+
+        void endOfStream() throws IOException;
+
+        void close();
+    }
+
+    private static Feeder newFeeder(FeedMode mode, Random random) {
+        switch (mode) {
+            case STREAM:
+            case STREAM_BYTE:
+                return new StreamFeeder(mode == FeedMode.STREAM_BYTE, 1 + random.nextInt(8192));
+            default:
+                return new NioFeeder(mode == FeedMode.NIO_DIRECT, random);
+        }
+    }
+
+    private static class StreamFeeder implements Feeder {
+
+        private final ReplayConnection connection;
+        private final boolean byByte;
+
+        StreamFeeder(boolean byByte, int readBufferSize) {
+            this.connection = new ReplayConnection(
+                    new Capture().newConnection("127.0.0.1", 80), readBufferSize);
+            this.byByte = byByte;
+        }
+
+        @Override
+        public void write(byte[] data) throws IOException {
+            if (byByte) {
+                connection.writeByByte(data);
+            } else {
+                connection.write(data);
+            }
+        }
+
+        @Override
+        public void read(byte[] data) throws IOException {
+            if (byByte) {
+                connection.readByByte(data);
+            } else {
+                connection.read(data);
+            }
+        }
+
+        @Override
+        public void endOfStream() throws IOException {
+            connection.endOfStream();
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+
+    private static class NioFeeder implements Feeder {
+
+        private final NioConnection connection;
+        private final boolean direct;
+        private final Random random;
+
+        NioFeeder(boolean direct, Random random) {
+            this.connection = new NioConnection(ParserFuzz.class.getSimpleName(), "http");
+            this.direct = direct;
+            this.random = random;
+        }
+
+        // bytes at a random position of a larger buffer, as a channel leaves them
+        private ByteBuffer wrap(byte[] data) {
+            int position = random.nextInt(16);
+            int capacity = position + data.length + random.nextInt(16);
+            ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity)
+                    : ByteBuffer.allocate(capacity);
+            buffer.position(position);
+            buffer.put(data);
+            return buffer;
+        }
+
+        @Override
+        public void write(byte[] data) {
+            ByteBuffer buffer = wrap(data);
+            connection.bytesWritten(buffer, buffer.position() - data.length);
+        }
+
+        @Override
+        public void read(byte[] data) {
+            ByteBuffer buffer = wrap(data);
+            connection.bytesRead(buffer, buffer.position() - data.length);
+        }
+
+        @Override
+        public void endOfStream() {
+            connection.endOfStream();
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+
+    /**
+     * Counts Throwables printed by printStackTrace() and drops the output
+     */
+    private static class ThrowableCounter extends PrintStream {
+
+        private final Map<String, Integer> counts;
+
+        ThrowableCounter(Map<String, Integer> counts) {
+            super(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            });
+            this.counts = counts;
+        }
+
+        @Override
+        public void println(Object x) {
+            // printStackTrace() starts with println(this)
+            if (x instanceof Throwable) {
+                String name = x.getClass().getName();
+                Integer count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+        }
+    }
+}
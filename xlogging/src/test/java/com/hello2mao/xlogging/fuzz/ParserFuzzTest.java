@@ -0,0 +1,24 @@
+package com.hello2mao.xlogging.fuzz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fixed seeds of ParserFuzz, run ParserFuzz itself for longer runs
+ */
+public class ParserFuzzTest {
+
+    @Test
+    public void validMessagesMatchReference() throws Exception {
+        ParserFuzz.Result result = ParserFuzz.run(1, 500, 0);
+        assertEquals(result.toString(), result.getValidCases(), result.getValidMatches());
+        assertEquals(result.toString(), 0, result.getSwallowedThrowables().size());
+    }
+
+    @Test
+    public void splitsDoNotChangeRecords() throws Exception {
+        ParserFuzz.Result result = ParserFuzz.run(100, 1000, 1);
+        assertEquals(result.toString(), 0, result.getSplitDivergences());
+    }
+}
@@ -0,0 +1,266 @@
+package com.hello2mao.xlogging.fuzz;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Straightforward HTTP/1.x parser of whole streams, RFC 7230, to compare the streaming
+ * parsers against. Interim 1xx responses are not part of the final response bytes,
+ * same as the parsers count them. Parsing stops at the first message it cannot frame.
+ */
+public class ReferenceParser {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final byte[] data;
+    private int position;
+    // start of the final response, after interim ones
+    private int messageStart;
+
+    private ReferenceParser(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @param requests request stream
+     * @param responses response stream, ends with connection close
+     * @return one TransactionRecord per complete response
+     */
+    public static List<TransactionRecord> parse(byte[] requests, byte[] responses) {
+        List<Request> parsedRequests = new ArrayList<>();
+        ReferenceParser requestParser = new ReferenceParser(requests);
+        while (true) {
+            Request request = requestParser.readRequest();
+            if (request == null) {
+                break;
+            }
+            parsedRequests.add(request);
+        }
+        List<TransactionRecord> records = new ArrayList<>();
+        ReferenceParser responseParser = new ReferenceParser(responses);
+        for (Request request : parsedRequests) {
+            int statusCode = responseParser.readResponse(request.method);
+            if (statusCode == -1) {
+                break;
+            }
+            records.add(new TransactionRecord(request.method, request.pathAndQuery, request.protocol,
+                    statusCode, request.length,
+                    responseParser.position - responseParser.messageStart));
+        }
+        return records;
+    }
+
+    private static class Request {
+        String method;
+        String pathAndQuery;
+        String protocol;
+        int length;
+    }
+
+    private static class Headers {
+        long contentLength = -1;
+        boolean invalidContentLength;
+        boolean transferEncoding;
+        boolean chunked;
+    }
+
+    private Request readRequest() {
+        int start = position;
+        String line = readLine();
+        if (line == null) {
+            return null;
+        }
+        String[] parts = line.split(" ", -1);
+        if (parts.length != 3 || !isToken(parts[0]) || parts[1].isEmpty()
+                || !parts[2].startsWith("HTTP/")) {
+            return null;
+        }
+        Headers headers = readHeaders();
+        if (headers == null) {
+            return null;
+        }
+        if (headers.chunked) {
+            if (!skipChunks()) {
+                return null;
+            }
+        } else if (headers.transferEncoding || headers.invalidContentLength) {
+            // request framing unknown
+            return null;
+        } else if (headers.contentLength > 0 && !skip(headers.contentLength)) {
+            return null;
+        }
+        Request request = new Request();
+        request.method = parts[0];
+        request.pathAndQuery = parts[1];
+        request.protocol = parts[2];
+        request.length = position - start;
+        return request;
+    }
+
+    /**
+     * @return status code, -1 if there is no complete response
+     */
+    private int readResponse(String method) {
+        while (true) {
+            messageStart = position;
+            String line = readLine();
+            if (line == null) {
+                return -1;
+            }
+            String[] parts = line.split(" ", 3);
+            if (parts.length < 3 || !parts[0].startsWith("HTTP/") || parts[1].length() != 3) {
+                return -1;
+            }
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            Headers headers = readHeaders();
+            if (headers == null || statusCode == 101) {
+                return -1;
+            }
+            if (statusCode >= 100 && statusCode <= 199) {
+                // interim, the final response is counted on its own
+                continue;
+            }
+            if (method.equals("HEAD") || statusCode == 204 || statusCode == 304
+                    || method.equals("CONNECT") && statusCode <= 299) {
+                return statusCode;
+            }
+            if (headers.transferEncoding) {
+                if (!headers.chunked) {
+                    position = data.length;
+                    return statusCode;
+                }
+                return skipChunks() ? statusCode : -1;
+            }
+            if (headers.invalidContentLength || headers.contentLength == -1) {
+                // delimited by connection close
+                position = data.length;
+                return statusCode;
+            }
+            return skip(headers.contentLength) ? statusCode : -1;
+        }
+    }
+
+    private Headers readHeaders() {
+        Headers headers = new Headers();
+        while (true) {
+            String line = readLine();
+            if (line == null) {
+                return null;
+            }
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                return null;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                for (String contentLengthValue : value.split(",", -1)) {
+                    long contentLength;
+                    try {
+                        contentLength = Long.parseLong(contentLengthValue.trim());
+                    } catch (NumberFormatException e) {
+                        contentLength = -2;
+                    }
+                    if (contentLength < 0 || contentLength > Integer.MAX_VALUE
+                            || headers.contentLength != -1
+                            && contentLength != headers.contentLength) {
+                        headers.invalidContentLength = true;
+                    }
+                    headers.contentLength = contentLength;
+                }
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                headers.transferEncoding = true;
+                String[] codings = value.split(",", -1);
+                headers.chunked = codings[codings.length - 1].trim().equalsIgnoreCase("chunked");
+            }
+        }
+    }
+
+    /**
+     * @return true if method is a token, tchar of RFC 7230
+     */
+    private static boolean isToken(String method) {
+        if (method.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < method.length(); i++) {
+            char c = method.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || "!#$%&'*+-.^_`|~".indexOf(c) != -1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean skipChunks() {
+        while (true) {
+            String line = readLine();
+            if (line == null) {
+                return false;
+            }
+            int semicolon = line.indexOf(';');
+            String size = (semicolon == -1 ? line : line.substring(0, semicolon)).trim();
+            long chunkSize;
+            try {
+                chunkSize = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (chunkSize < 0 || chunkSize > Integer.MAX_VALUE) {
+                return false;
+            }
+            if (chunkSize == 0) {
+                // trailer section
+                while (true) {
+                    String trailer = readLine();
+                    if (trailer == null) {
+                        return false;
+                    }
+                    if (trailer.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+            if (!skip(chunkSize)) {
+                return false;
+            }
+            String end = readLine();
+            if (end == null || !end.isEmpty()) {
+                return false;
+            }
+        }
+    }
+
+    private boolean skip(long count) {
+        if (data.length - position < count) {
+            return false;
+        }
+        position += (int) count;
+        return true;
+    }
+
+    /**
+     * @return line without CRLF or LF, null if there is no complete line
+     */
+    private String readLine() {
+        for (int i = position; i < data.length; i++) {
+            if (data[i] == '\n') {
+                int end = i > position && data[i - 1] == '\r' ? i - 1 : i;
+                String line = new String(data, position, end - position, ISO_8859_1);
+                position = i + 1;
+                return line;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.hello2mao.xlogging.fuzz;
+
+import com.hello2mao.xlogging.TransactionData;
+
+/**
+ * Fields of a TransactionData compared between the parsers and ReferenceParser
+ */
+public class TransactionRecord {
+
+    private final String requestMethod;
+    private final String pathAndQuery;
+    private final String protocol;
+    private final int statusCode;
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    public TransactionRecord(String requestMethod, String pathAndQuery, String protocol, int statusCode,
+                  long bytesSent, long bytesReceived) {
+        this.requestMethod = requestMethod;
+        this.pathAndQuery = pathAndQuery;
+        this.protocol = protocol;
+        this.statusCode = statusCode;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public TransactionRecord(TransactionData transactionData) {
+        this(transactionData.getRequestMethod(), transactionData.getPathAndQuery(),
+                transactionData.getProtocol(), transactionData.getStatusCode(),
+                transactionData.getBytesSent(), transactionData.getBytesReceived());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransactionRecord)) {
+            return false;
+        }
+        TransactionRecord record = (TransactionRecord) o;
+        return statusCode == record.statusCode
+                && bytesSent == record.bytesSent
+                && bytesReceived == record.bytesReceived
+                && equals(requestMethod, record.requestMethod)
+                && equals(pathAndQuery, record.pathAndQuery)
+                && equals(protocol, record.protocol);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = requestMethod != null ? requestMethod.hashCode() : 0;
+        result = 31 * result + (pathAndQuery != null ? pathAndQuery.hashCode() : 0);
+        result = 31 * result + statusCode;
+        result = 31 * result + (int) (bytesSent ^ (bytesSent >>> 32));
+        result = 31 * result + (int) (bytesReceived ^ (bytesReceived >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return requestMethod + " " + pathAndQuery + " " + protocol + " " + statusCode
+                + " sent=" + bytesSent + " received=" + bytesReceived;
+    }
+}
@@ -0,0 +1,251 @@
+package com.hello2mao.xlogging.internal.io;
+
+import com.hello2mao.xlogging.ErrorPhase;
+import com.hello2mao.xlogging.MetricsData;
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+import com.hello2mao.xlogging.internal.io.parser.NoopLineParser;
+import com.hello2mao.xlogging.internal.metrics.BandwidthEstimator;
+import com.hello2mao.xlogging.replay.Capture;
+import com.hello2mao.xlogging.replay.ReplayConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Connection state kept by ParsingInputStream and ParsingOutputStream, fed through
+ * a ReplayConnection
+ */
+public class ParsingStreamTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final List<TransactionData> records = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        XLogging.setCallback(new XLoggingCallback() {
+            @Override
+            public void handle(TransactionData transactionData) {
+                records.add(transactionData);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        XLogging.getConfig().setErrorBodyMemoryLimit(64 * 1024);
+        XLogging.getConfig().setStreamingReportInterval(60 * 1000);
+    }
+
+    @Test
+    public void socketCloseEndsUpload() throws IOException {
+        ReplayConnection connection = newConnection();
+        connection.write(bytes("POST /upload HTTP/1.1\r\nHost: a.com\r\n"
+                + "Content-Length: 1000\r\n\r\n0123456789"));
+        assertEquals(1, XLogging.getActiveUploads().size());
+        connection.close();
+        assertEquals(0, XLogging.getActiveUploads().size());
+    }
+
+    @Test
+    public void droppedResponseReleasesErrorBody() throws IOException {
+        // room for one slab
+        XLogging.getConfig().setErrorBodyMemoryLimit(XLogging.getConfig().getErrorBodyMaxBytes());
+        for (int i = 0; i < 3; i++) {
+            ReplayConnection connection = newConnection();
+            connection.write(bytes("GET /a HTTP/1.1\r\nHost: a.com\r\n\r\n"));
+            connection.read(bytes("HTTP/1.1 500 Internal Server Error\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n10\r\nfailed"));
+            connection.endOfStream();
+            connection.close();
+        }
+        assertEquals(0, records.size());
+        ReplayConnection connection = newConnection();
+        connection.write(bytes("GET /b HTTP/1.1\r\nHost: a.com\r\n\r\n"));
+        connection.read(bytes("HTTP/1.1 500 Internal Server Error\r\n"
+                + "Content-Length: 6\r\n\r\nfailed"));
+        assertEquals(1, records.size());
+        assertEquals("failed", records.get(0).getErrorBody());
+    }
+
+    @Test
+    public void webSocketIntervalIsNotCountedAsStatus() throws IOException {
+        MetricsData before = XLogging.getMetricsData();
+        ReplayConnection connection = newConnection();
+        connection.write(bytes("GET /ws HTTP/1.1\r\nHost: a.com\r\nUpgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n\r\n"));
+        connection.read(bytes("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n\r\n\u0081\u0002hi"));
+        connection.close();
+        MetricsData after = XLogging.getMetricsData();
+        assertEquals(2, records.size());
+        assertEquals(1, after.getTransactionsByStatusClass()[1]
+                - before.getTransactionsByStatusClass()[1]);
+        assertEquals(1, after.getWebSocketIntervals() - before.getWebSocketIntervals());
+    }
+
+    @Test
+    public void http2EventStreamIsReportedPerInterval() throws IOException {
+        // every DATA frame ends an interval
+        XLogging.getConfig().setStreamingReportInterval(0);
+        ReplayConnection connection = newConnection();
+        // GET http://a.com/ on stream 1, HPACK indexed :method, :scheme, :path and :authority
+        connection.write(concat(bytes("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"),
+                frame(0x1, 0x5, bytes("\u0082\u0086\u0084\u0041\u0005a.com"))));
+        // :status 200, content-type: text/event-stream
+        connection.read(frame(0x1, 0x4, bytes("\u0088\u005f\u0011text/event-stream")));
+        connection.read(frame(0x0, 0x0, bytes("data: a\n\n")));
+        connection.read(frame(0x0, 0x1, bytes("data: b\n\n")));
+        assertEquals(3, records.size());
+        assertEquals(1, records.get(0).getStreamEvents());
+        assertEquals(1, records.get(1).getStreamEvents());
+        assertTrue(records.get(2).isStreaming());
+        assertEquals(-1L, records.get(2).getStreamInterval());
+        assertEquals(2, records.get(2).getStreamEvents());
+    }
+
+    @Test
+    public void tlsIsCountedOnceAsTlsConnection() throws IOException {
+        MetricsData before = XLogging.getMetricsData();
+        ReplayConnection connection = newConnection();
+        connection.write(tlsRecord(100));
+        connection.read(tlsRecord(300));
+        connection.close();
+        MetricsData after = XLogging.getMetricsData();
+        assertEquals(1, records.size());
+        assertEquals(100, after.getHttpsBytesSent() - before.getHttpsBytesSent());
+        assertEquals(300, after.getHttpsBytesReceived() - before.getHttpsBytesReceived());
+        assertEquals(1, after.getTlsConnections() - before.getTlsConnections());
+        for (int i = 0; i < before.getTransactionsByStatusClass().length; i++) {
+            assertEquals(before.getTransactionsByStatusClass()[i],
+                    after.getTransactionsByStatusClass()[i]);
+        }
+    }
+
+    @Test
+    public void tlsUnderMonitoredSslSocketIsNotCounted() throws IOException {
+        MetricsData before = XLogging.getMetricsData();
+        ReplayConnection connection = newConnection();
+        connection.setSslWrapped(true);
+        connection.write(tlsRecord(100));
+        connection.read(tlsRecord(300));
+        connection.close();
+        MetricsData after = XLogging.getMetricsData();
+        assertEquals(0, records.size());
+        assertEquals(before.getHttpsBytesSent(), after.getHttpsBytesSent());
+        assertEquals(before.getHttpsBytesReceived(), after.getHttpsBytesReceived());
+        assertEquals(before.getTlsConnections(), after.getTlsConnections());
+    }
+
+    @Test
+    public void tlsCountsPastIntRange() throws IOException {
+        ReplayConnection connection = newConnection();
+        connection.write(tlsRecord(100));
+        byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < 2049; i++) {
+            connection.write(data);
+        }
+        connection.read(tlsRecord(300));
+        connection.close();
+        assertEquals(1, records.size());
+        assertEquals(100 + 2049L * data.length, records.get(0).getBytesSent());
+        assertEquals(300, records.get(0).getBytesReceived());
+    }
+
+    @Test
+    public void detachedReadsAreNotSampled() throws IOException {
+        long before = BandwidthEstimator.getEstimate();
+        ReplayConnection connection = newConnection();
+        connection.setSslWrapped(true);
+        connection.write(tlsRecord(100));
+        connection.read(tlsRecord(64 * 1024));
+        connection.close();
+        assertEquals(before, BandwidthEstimator.getEstimate());
+    }
+
+    @Test
+    public void detachedStreamsStillReportErrors() {
+        ReplayConnection connection = newConnection();
+        ParsingInputStream inputStream = IOInstrument.instrumentInputStream(connection,
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                }, null);
+        ParsingOutputStream outputStream = IOInstrument.instrumentOutputStream(connection,
+                new OutputStream() {
+                    @Override
+                    public void write(int oneByte) throws IOException {
+                        throw new IOException("Broken pipe");
+                    }
+                }, null);
+        inputStream.setNextParser(NoopLineParser.DEFAULT);
+        outputStream.setNextParser(NoopLineParser.DEFAULT);
+        try {
+            inputStream.read();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            outputStream.write(0);
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(2, records.size());
+        assertEquals(ErrorPhase.RESPONSE, records.get(0).getErrorPhase());
+        assertEquals(ErrorPhase.REQUEST, records.get(1).getErrorPhase());
+    }
+
+    private static ReplayConnection newConnection() {
+        return new ReplayConnection(new Capture().newConnection("127.0.0.1", 80), 4096);
+    }
+
+    // handshake record header, then random bytes
+    private static byte[] tlsRecord(int length) {
+        byte[] record = new byte[length];
+        new Random(length).nextBytes(record);
+        record[0] = 0x16;
+        record[1] = 0x03;
+        record[2] = 0x01;
+        return record;
+    }
+
+    private static byte[] frame(int type, int flags, byte[] payload) {
+        byte[] frame = new byte[9 + payload.length];
+        frame[0] = (byte) (payload.length >> 16);
+        frame[1] = (byte) (payload.length >> 8);
+        frame[2] = (byte) payload.length;
+        frame[3] = (byte) type;
+        frame[4] = (byte) flags;
+        // stream 1
+        frame[8] = 1;
+        System.arraycopy(payload, 0, frame, 9, payload.length);
+        return frame;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(ISO_8859_1);
+    }
+}
@@ -0,0 +1,111 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Header block examples of RFC 7541 Appendix C.3 to C.6, each decoded in order by one
+ * decoder so later blocks use the dynamic table left by the earlier ones
+ */
+public class HpackDecoderTest {
+
+    private static final String DATE_1 = "date: Mon, 21 Oct 2013 20:13:21 GMT";
+    private static final String DATE_2 = "date: Mon, 21 Oct 2013 20:13:22 GMT";
+    private static final String SET_COOKIE = "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; "
+            + "max-age=3600; version=1";
+    // C.5 and C.6 use a 256 octet table, set by a size update before the first block
+    private static final String TABLE_SIZE_256 = "3fe101";
+
+    @Test
+    public void requestsWithoutHuffman() throws IOException {
+        HpackDecoder decoder = new HpackDecoder();
+        assertEquals(Arrays.asList(":method: GET", ":scheme: http", ":path: /",
+                ":authority: www.example.com"),
+                decode(decoder, "828684410f7777772e6578616d706c652e636f6d"));
+        assertEquals(Arrays.asList(":method: GET", ":scheme: http", ":path: /",
+                ":authority: www.example.com", "cache-control: no-cache"),
+                decode(decoder, "828684be58086e6f2d6361636865"));
+        assertEquals(Arrays.asList(":method: GET", ":scheme: https", ":path: /index.html",
+                ":authority: www.example.com", "custom-key: custom-value"),
+                decode(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565"));
+    }
+
+    @Test
+    public void requestsWithHuffman() throws IOException {
+        HpackDecoder decoder = new HpackDecoder();
+        assertEquals(Arrays.asList(":method: GET", ":scheme: http", ":path: /",
+                ":authority: www.example.com"),
+                decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(Arrays.asList(":method: GET", ":scheme: http", ":path: /",
+                ":authority: www.example.com", "cache-control: no-cache"),
+                decode(decoder, "828684be5886a8eb10649cbf"));
+        assertEquals(Arrays.asList(":method: GET", ":scheme: https", ":path: /index.html",
+                ":authority: www.example.com", "custom-key: custom-value"),
+                decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+    }
+
+    @Test
+    public void responsesWithoutHuffman() throws IOException {
+        HpackDecoder decoder = new HpackDecoder();
+        assertEquals(Arrays.asList(":status: 302", "cache-control: private", DATE_1,
+                "location: https://www.example.com"),
+                decode(decoder, TABLE_SIZE_256 + "4803333032580770726976617465611d"
+                        + "4d6f6e2c203231204f637420323031332032303a31333a323120474d54"
+                        + "6e1768747470733a2f2f7777772e6578616d706c652e636f6d"));
+        // :status 302 is evicted to make room for :status 307
+        assertEquals(Arrays.asList(":status: 307", "cache-control: private", DATE_1,
+                "location: https://www.example.com"),
+                decode(decoder, "4803333037c1c0bf"));
+        // evicts again, the indices only match if both evictions dropped the oldest entry
+        assertEquals(Arrays.asList(":status: 200", "cache-control: private", DATE_2,
+                "location: https://www.example.com", "content-encoding: gzip", SET_COOKIE),
+                decode(decoder, "88c1611d4d6f6e2c203231204f637420323031332032303a31333a3232"
+                        + "20474d54c05a04677a69707738666f6f3d4153444a4b48514b425a584f51"
+                        + "57454f50495541585157454f49553b206d61782d6167653d333630303b"
+                        + "2076657273696f6e3d31"));
+    }
+
+    @Test
+    public void responsesWithHuffman() throws IOException {
+        HpackDecoder decoder = new HpackDecoder();
+        assertEquals(Arrays.asList(":status: 302", "cache-control: private", DATE_1,
+                "location: https://www.example.com"),
+                decode(decoder, TABLE_SIZE_256 + "488264025885aec3771a4b6196d07abe"
+                        + "941054d444a8200595040b8166e082a62d1bff6e919d29ad171863c7"
+                        + "8f0b97c8e9ae82ae43d3"));
+        assertEquals(Arrays.asList(":status: 307", "cache-control: private", DATE_1,
+                "location: https://www.example.com"),
+                decode(decoder, "4883640effc1c0bf"));
+        assertEquals(Arrays.asList(":status: 200", "cache-control: private", DATE_2,
+                "location: https://www.example.com", "content-encoding: gzip", SET_COOKIE),
+                decode(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a"
+                        + "839bd9ab77ad94e7821dd7f2e6c7b335dfdfcd5b3960d5af27087f3672"
+                        + "c1ab270fb5291f9587316065c003ed4ee5b1063d5007"));
+    }
+
+    private static List<String> decode(HpackDecoder decoder, String hex) throws IOException {
+        byte[] block = new byte[hex.length() / 2];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        final List<String> headers = new ArrayList<>();
+        decoder.decode(block, 0, block.length, new HpackDecoder.Listener() {
+            @Override
+            public boolean isInterested(String name) {
+                return true;
+            }
+
+            @Override
+            public void header(String name, String value) {
+                headers.add(name + ": " + value);
+            }
+        });
+        return headers;
+    }
+}
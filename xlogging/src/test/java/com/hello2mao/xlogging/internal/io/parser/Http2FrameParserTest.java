@@ -0,0 +1,124 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+import com.hello2mao.xlogging.replay.Capture;
+import com.hello2mao.xlogging.replay.ReplayConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Frames whose payload is split or padded, fed through a ReplayConnection
+ */
+public class Http2FrameParserTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+    private static final int TYPE_DATA = 0x0;
+    private static final int TYPE_HEADERS = 0x1;
+    private static final int TYPE_CONTINUATION = 0x9;
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+    // HPACK indexed :method GET, :scheme http, :path /, then :authority a.com
+    private static final String GET_A_COM = "\u0082\u0086\u0084A\u0005a.com";
+
+    private final List<TransactionData> records = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        XLogging.setCallback(new XLoggingCallback() {
+            @Override
+            public void handle(TransactionData transactionData) {
+                records.add(transactionData);
+            }
+        });
+    }
+
+    @Test
+    public void headerBlockSplitAcrossContinuation() throws IOException {
+        ReplayConnection connection = newConnection();
+        // split inside the :authority value
+        connection.write(concat(bytes(PREFACE), concat(
+                frame(TYPE_HEADERS, FLAG_END_STREAM, 1, bytes("\u0082\u0086\u0084A\u0005a.")),
+                frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 1, bytes("com")))));
+        // :status 200, content-type: text/plain over three frames, split inside the literal
+        connection.read(concat(frame(TYPE_HEADERS, 0, 1, bytes("\u0088_")),
+                concat(frame(TYPE_CONTINUATION, 0, 1, bytes("\ntext/")),
+                        frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 1, bytes("plain")))));
+        assertEquals(0, records.size());
+        connection.read(frame(TYPE_DATA, FLAG_END_STREAM, 1, bytes("hello")));
+        assertEquals(1, records.size());
+        assertEquals("a.com", records.get(0).getHost());
+        assertEquals("/", records.get(0).getPathAndQuery());
+        assertEquals(200, records.get(0).getStatusCode());
+        assertEquals("text/plain", records.get(0).getContentType());
+        assertEquals(5, records.get(0).getResponseBodyBytes());
+    }
+
+    @Test
+    public void paddedFramesKeepFramesInSync() throws IOException {
+        ReplayConnection connection = newConnection();
+        // pad length 2 and stream dependency + weight before the block, 2 octets of padding
+        byte[] request = concat(concat(bytes("\u0002\u0000\u0000\u0000\u0000\u0010"),
+                bytes(GET_A_COM)), new byte[2]);
+        connection.write(concat(bytes(PREFACE), concat(
+                frame(TYPE_HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS | FLAG_PADDED
+                        | FLAG_PRIORITY, 1, request),
+                frame(TYPE_HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 3, bytes(GET_A_COM)))));
+        // :status 200 with 3 octets of padding
+        byte[] headers = frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_PADDED, 1,
+                concat(bytes("\u0003\u0088"), new byte[3]));
+        // "hello" with 4 octets of padding, " h2" with none
+        byte[] data1 = frame(TYPE_DATA, FLAG_PADDED, 1, concat(bytes("\u0004hello"), new byte[4]));
+        byte[] data2 = frame(TYPE_DATA, FLAG_PADDED | FLAG_END_STREAM, 1, bytes("\u0000 h2"));
+        // :status 404 on stream 3 is only found if the padding was skipped
+        connection.read(concat(concat(headers, data1), concat(data2,
+                frame(TYPE_HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 3, bytes("\u008d")))));
+        assertEquals(2, records.size());
+        assertEquals(200, records.get(0).getStatusCode());
+        // padding is counted as body
+        assertEquals(10 + 4, records.get(0).getResponseBodyBytes());
+        assertEquals(headers.length + data1.length + data2.length,
+                records.get(0).getBytesReceived());
+        assertEquals(404, records.get(1).getStatusCode());
+        assertEquals("a.com", records.get(1).getHost());
+    }
+
+    private static ReplayConnection newConnection() {
+        return new ReplayConnection(new Capture().newConnection("127.0.0.1", 80), 4096);
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload) {
+        byte[] frame = new byte[9 + payload.length];
+        frame[0] = (byte) (payload.length >> 16);
+        frame[1] = (byte) (payload.length >> 8);
+        frame[2] = (byte) payload.length;
+        frame[3] = (byte) type;
+        frame[4] = (byte) flags;
+        frame[8] = (byte) streamId;
+        System.arraycopy(payload, 0, frame, 9, payload.length);
+        return frame;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(ISO_8859_1);
+    }
+}
@@ -0,0 +1,167 @@
+package com.hello2mao.xlogging.internal.io.parser;
+
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+import com.hello2mao.xlogging.internal.nio.NioConnection;
+import com.hello2mao.xlogging.replay.Capture;
+import com.hello2mao.xlogging.replay.ReplayConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * One case per parser bug, fed through the instrumented streams of a ReplayConnection
+ */
+public class ParserRegressionTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String GET_A = "GET /a HTTP/1.1\r\nHost: a.com\r\n\r\n";
+    private static final String GET_B = "GET /b HTTP/1.1\r\nHost: a.com\r\n\r\n";
+    private static final String NO_CONTENT = "HTTP/1.1 204 No Content\r\n\r\n";
+
+    private final List<TransactionData> records = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        XLogging.setCallback(new XLoggingCallback() {
+            @Override
+            public void handle(TransactionData transactionData) {
+                records.add(transactionData);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        XLogging.getConfig().setTraceIdHeader(null);
+        XLogging.getConfig().setDecodeServerTiming(false);
+    }
+
+    @Test
+    public void chunkExtensionIsIgnored() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;name=value\r\nhello\r\n0\r\n\r\n";
+        ReplayConnection connection = newConnection();
+        connection.write(bytes(GET_A));
+        connection.read(bytes(response));
+        connection.write(bytes(GET_B));
+        connection.read(bytes(NO_CONTENT));
+        assertEquals(2, records.size());
+        assertEquals(response.length(), records.get(0).getBytesReceived());
+        assertEquals("/b", records.get(1).getPathAndQuery());
+    }
+
+    @Test
+    public void trailerFieldIsSkipped() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n0\r\nX-Checksum: 5d41402a\r\n\r\n";
+        ReplayConnection connection = newConnection();
+        connection.write(bytes(GET_A));
+        connection.read(bytes(response));
+        connection.write(bytes(GET_B));
+        connection.read(bytes(NO_CONTENT));
+        assertEquals(2, records.size());
+        assertEquals(response.length(), records.get(0).getBytesReceived());
+        assertEquals("/b", records.get(1).getPathAndQuery());
+    }
+
+    @Test
+    public void nonAsciiBytesDoNotDependOnWriteSize() throws IOException {
+        // 0xE9, negative as a byte
+        String request = "GET /caf\u00e9 HTTP/1.1\r\nHost: a.com\r\n\r\n";
+        ReplayConnection blockConnection = newConnection();
+        blockConnection.write(bytes(request));
+        blockConnection.read(bytes(NO_CONTENT));
+        ReplayConnection byteConnection = newConnection();
+        byteConnection.writeByByte(bytes(request));
+        byteConnection.readByByte(bytes(NO_CONTENT));
+        assertEquals(2, records.size());
+        assertEquals("/caf\u00e9", records.get(0).getPathAndQuery());
+        assertEquals("/caf\u00e9", records.get(1).getPathAndQuery());
+    }
+
+    @Test
+    public void endOfStreamInChunkedBodyDropsMessage() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "a\r\nhello";
+        ReplayConnection streamConnection = newConnection();
+        streamConnection.write(bytes(GET_A));
+        streamConnection.read(bytes(response));
+        streamConnection.endOfStream();
+        // channels report end of stream one -1 at a time, same as read()
+        NioConnection nioConnection = new NioConnection("test", "http");
+        nioConnection.bytesWritten(ByteBuffer.wrap(bytes(GET_A)), 0);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes(response));
+        buffer.position(buffer.limit());
+        nioConnection.bytesRead(buffer, 0);
+        nioConnection.endOfStream();
+        assertEquals(0, records.size());
+    }
+
+    @Test
+    public void capturedHeaderLongerThanLineLimitIsKept() throws IOException {
+        XLogging.getConfig().setTraceIdHeader("X-Request-Id");
+        String traceId = repeat('t', 600);
+        String request = "GET /a HTTP/1.1\r\nX-Padding: " + repeat('p', 600)
+                + "\r\nX-Request-Id: " + traceId + "\r\nHost: a.com\r\n\r\n";
+        ReplayConnection connection = newConnection();
+        connection.write(bytes(request));
+        connection.read(bytes(NO_CONTENT));
+        assertEquals(1, records.size());
+        assertEquals(traceId, records.get(0).getTraceId());
+        assertEquals(request.length(), records.get(0).getBytesSent());
+    }
+
+    @Test
+    public void serverTimingLongerThanLineLimitIsDecoded() throws IOException {
+        XLogging.getConfig().setDecodeServerTiming(true);
+        String response = "HTTP/1.1 204 No Content\r\nServer-Timing: db;desc=\""
+                + repeat('d', 300) + "\";dur=5, app;dur=7\r\n\r\n";
+        ReplayConnection connection = newConnection();
+        connection.write(bytes(GET_A));
+        connection.read(bytes(response));
+        assertEquals(1, records.size());
+        assertEquals(2, records.get(0).getServerTimingIds().length);
+        assertEquals("app", XLogging.getServerTimingName(records.get(0).getServerTimingIds()[1]));
+        assertEquals(7000L, records.get(0).getServerTimingDurations()[1]);
+    }
+
+    @Test
+    public void truncatedServerTimingKeepsCompleteEntries() throws IOException {
+        XLogging.getConfig().setDecodeServerTiming(true);
+        String response = "HTTP/1.1 204 No Content\r\nServer-Timing: db;dur=5, app;desc=\""
+                + repeat('d', 10000) + "\";dur=7\r\n\r\n";
+        ReplayConnection connection = newConnection();
+        connection.write(bytes(GET_A));
+        connection.read(bytes(response));
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).getServerTimingIds().length);
+        assertEquals("db", XLogging.getServerTimingName(records.get(0).getServerTimingIds()[0]));
+        assertEquals(response.length(), records.get(0).getBytesReceived());
+    }
+
+    private static ReplayConnection newConnection() {
+        return new ReplayConnection(new Capture().newConnection("127.0.0.1", 80), 4096);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(ISO_8859_1);
+    }
+}
@@ -0,0 +1,248 @@
+package com.hello2mao.xlogging.internal.nio;
+
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+import com.hello2mao.xlogging.replay.Capture;
+import com.hello2mao.xlogging.replay.ReplayConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The same captures fed as byte[] through a ReplayConnection and as heap and direct
+ * ByteBuffers through a NioConnection must give the same records
+ */
+public class ByteBufferInputTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    // pieces small enough to split headers, chunk sizes and frames
+    private static final int SMALL_PIECE = 7;
+    private static final String GET_B = "GET /b HTTP/1.1\r\nHost: a.com\r\n\r\n";
+
+    private final List<TransactionData> records = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        XLogging.setCallback(new XLoggingCallback() {
+            @Override
+            public void handle(TransactionData transactionData) {
+                records.add(transactionData);
+            }
+        });
+        XLogging.getConfig().setMeasureDecodedSize(true);
+    }
+
+    @After
+    public void tearDown() {
+        XLogging.getConfig().setMeasureDecodedSize(false);
+    }
+
+    @Test
+    public void contentLengthAndChunkedBodies() throws IOException {
+        Capture capture = new Capture();
+        Capture.Connection connection = capture.newConnection("127.0.0.1", 80);
+        capture.addSegment(connection, Capture.REQUEST, bytes("POST /a HTTP/1.1\r\nHost: a.com\r\n"
+                + "Content-Length: 5\r\n\r\nhello"));
+        capture.addSegment(connection, Capture.RESPONSE, bytes("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain\r\nContent-Length: 12\r\n\r\nhello world!"));
+        capture.addSegment(connection, Capture.REQUEST, bytes(GET_B));
+        capture.addSegment(connection, Capture.RESPONSE, bytes("HTTP/1.1 200 OK\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n1;ext=1\r\n!\r\n0\r\n\r\n"));
+        capture.finish();
+        assertSameRecords(capture, 2);
+    }
+
+    @Test
+    public void gzipBodyIsDecoded() throws IOException {
+        byte[] body = gzip(bytes(repeat("xlogging ", 200)));
+        Capture capture = new Capture();
+        Capture.Connection connection = capture.newConnection("127.0.0.1", 80);
+        capture.addSegment(connection, Capture.REQUEST, bytes(GET_B));
+        capture.addSegment(connection, Capture.RESPONSE, concat(bytes("HTTP/1.1 200 OK\r\n"
+                + "Content-Encoding: gzip\r\nContent-Length: " + body.length + "\r\n\r\n"), body));
+        capture.finish();
+        List<String> fields = assertSameRecords(capture, 1);
+        assertTrue(fields.get(0), fields.get(0).contains("decoded=1800"));
+    }
+
+    @Test
+    public void errorBodyAndEventStream() throws IOException {
+        Capture capture = new Capture();
+        Capture.Connection connection = capture.newConnection("127.0.0.1", 80);
+        capture.addSegment(connection, Capture.REQUEST, bytes(GET_B));
+        // 0xE9, negative as a byte
+        String errorBody = "try \u00e9later";
+        capture.addSegment(connection, Capture.RESPONSE, bytes("HTTP/1.1 503 Service Unavailable"
+                + "\r\nContent-Length: " + errorBody.length() + "\r\n\r\n" + errorBody));
+        capture.addSegment(connection, Capture.REQUEST, bytes(GET_B));
+        String events = "data: a\r\n\r\n: ping\n\ndata: b\n\n";
+        capture.addSegment(connection, Capture.RESPONSE, bytes("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream\r\nContent-Length: " + events.length()
+                + "\r\n\r\n" + events));
+        capture.finish();
+        List<String> fields = assertSameRecords(capture, 2);
+        assertTrue(fields.get(1), fields.get(1).contains("events=2"));
+    }
+
+    @Test
+    public void webSocketFrames() throws IOException {
+        Capture capture = new Capture();
+        Capture.Connection connection = capture.newConnection("127.0.0.1", 80);
+        capture.addSegment(connection, Capture.REQUEST, bytes("GET /ws HTTP/1.1\r\nHost: a.com\r\n"
+                + "Upgrade: websocket\r\nConnection: Upgrade\r\n\r\n"));
+        capture.addSegment(connection, Capture.RESPONSE, bytes("HTTP/1.1 101 Switching Protocols"
+                + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n\r\n\u0081\u0002hi"));
+        // masked text frame "hey" and a ping
+        capture.addSegment(connection, Capture.REQUEST,
+                bytes("\u0081\u0083\u0001\u0002\u0003\u0004igz\u0089\u0080\u0000\u0000\u0000\u0000"));
+        capture.addSegment(connection, Capture.RESPONSE, bytes("\u008a\u0000\u0082\u0003abc"));
+        capture.finish();
+        assertSameRecords(capture, 2);
+    }
+
+    @Test
+    public void http2Frames() throws IOException {
+        Capture capture = new Capture();
+        Capture.Connection connection = capture.newConnection("127.0.0.1", 80);
+        // GET http://a.com/ on streams 1 and 3, HPACK indexed :method, :scheme, :path, :authority
+        byte[] headers = bytes("\u0082\u0086\u0084A\u0005a.com");
+        capture.addSegment(connection, Capture.REQUEST, concat(bytes("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"),
+                concat(frame(0x1, 0x5, 1, headers), frame(0x1, 0x5, 3, headers))));
+        // :status 200 and 404, DATA split over two frames on stream 1
+        capture.addSegment(connection, Capture.RESPONSE, concat(frame(0x4, 0x0, 0, new byte[0]),
+                concat(frame(0x1, 0x4, 1, bytes("\u0088")), frame(0x1, 0x4, 3, bytes("\u008d")))));
+        capture.addSegment(connection, Capture.RESPONSE, concat(frame(0x0, 0x0, 1, bytes("hello")),
+                concat(frame(0x0, 0x1, 3, bytes("not found")), frame(0x0, 0x1, 1, bytes(" h2")))));
+        capture.finish();
+        assertSameRecords(capture, 2);
+    }
+
+    /**
+     * Feed capture whole and in small pieces, as byte[], heap and direct ByteBuffers
+     *
+     * @return fields of the byte[] records
+     */
+    private List<String> assertSameRecords(Capture capture, int count) throws IOException {
+        List<String> expected = replay(capture);
+        assertEquals(expected.toString(), count, expected.size());
+        for (int piece : new int[] {Integer.MAX_VALUE, SMALL_PIECE}) {
+            assertEquals("heap " + piece, expected, feed(capture, piece, false));
+            assertEquals("direct " + piece, expected, feed(capture, piece, true));
+        }
+        return expected;
+    }
+
+    private List<String> replay(Capture capture) throws IOException {
+        records.clear();
+        ReplayConnection connection = new ReplayConnection(capture.getConnections().get(0), 4096);
+        for (Capture.Segment segment : capture.getSegments()) {
+            if (segment.getType() == Capture.REQUEST) {
+                connection.write(segment.getData());
+            } else if (segment.getType() == Capture.RESPONSE) {
+                connection.read(segment.getData());
+            }
+        }
+        connection.close();
+        return toFields(records);
+    }
+
+    private List<String> feed(Capture capture, int piece, boolean direct) {
+        records.clear();
+        NioConnection connection = new NioConnection(ByteBufferInputTest.class.getSimpleName(),
+                "http");
+        for (Capture.Segment segment : capture.getSegments()) {
+            byte[] data = segment.getData();
+            for (int offset = 0; offset < data.length; offset += piece) {
+                int length = Math.min(piece, data.length - offset);
+                ByteBuffer buffer = newBuffer(length, direct);
+                int position = buffer.position();
+                buffer.put(data, offset, length);
+                if (segment.getType() == Capture.REQUEST) {
+                    connection.bytesWritten(buffer, position);
+                } else if (segment.getType() == Capture.RESPONSE) {
+                    connection.bytesRead(buffer, position);
+                }
+            }
+        }
+        connection.close();
+        return toFields(records);
+    }
+
+    // bytes not at the start of the buffer, and a heap buffer with a non-zero array offset
+    private static ByteBuffer newBuffer(int length, boolean direct) {
+        if (direct) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length + 6);
+            buffer.position(3);
+            return buffer;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length + 9);
+        buffer.position(5);
+        ByteBuffer slice = buffer.slice();
+        slice.position(2);
+        return slice;
+    }
+
+    private static List<String> toFields(List<TransactionData> transactionDataList) {
+        List<String> fields = new ArrayList<>();
+        for (TransactionData t : transactionDataList) {
+            fields.add(t.getRequestMethod() + " " + t.getPathAndQuery() + " " + t.getProtocol()
+                    + " " + t.getStatusCode() + " sent=" + t.getBytesSent()
+                    + " received=" + t.getBytesReceived() + " body=" + t.getResponseBodyBytes()
+                    + " decoded=" + t.getDecodedBodyBytes() + " type=" + t.getContentType()
+                    + " error=" + t.getErrorBody() + " streaming=" + t.isStreaming()
+                    + " events=" + t.getStreamEvents()
+                    + " ws=" + t.getWebSocketMessagesSent() + "/" + t.getWebSocketMessagesReceived());
+        }
+        return fields;
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload) {
+        byte[] frame = new byte[9 + payload.length];
+        frame[2] = (byte) payload.length;
+        frame[3] = (byte) type;
+        frame[4] = (byte) flags;
+        frame[8] = (byte) streamId;
+        System.arraycopy(payload, 0, frame, 9, payload.length);
+        return frame;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(ISO_8859_1);
+    }
+}
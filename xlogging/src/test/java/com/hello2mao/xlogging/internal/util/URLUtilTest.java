@@ -0,0 +1,24 @@
+package com.hello2mao.xlogging.internal.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class URLUtilTest {
+
+    @Test
+    public void hostStripsPort() {
+        assertEquals("image.baidu.com", URLUtil.getHost("image.baidu.com:80"));
+        assertEquals("image.baidu.com", URLUtil.getHost("image.baidu.com"));
+        assertEquals("1.2.3.4", URLUtil.getHost("1.2.3.4:8080"));
+    }
+
+    @Test
+    public void hostKeepsIpv6Literal() {
+        assertEquals("[::1]", URLUtil.getHost("[::1]:443"));
+        assertEquals("[::1]", URLUtil.getHost("[::1]"));
+        assertEquals("[2001:db8::1]", URLUtil.getHost("[2001:db8::1]"));
+        assertEquals("2001:db8::1", URLUtil.getHost("2001:db8::1"));
+        assertEquals("::1", URLUtil.getHost("::1"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.hello2mao.xlogging.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reassembled TCP connections of a capture, loaded into memory before the replay so
+ * that the replay measures the parsers only.
+ */
+public class Capture {
+
+    public static final int REQUEST = 0;
+    public static final int RESPONSE = 1;
+    // server closed its side, the response stream ends
+    public static final int END_OF_STREAM = 2;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private long requestBytes;
+    private long responseBytes;
+
+    public static class Connection {
+
+        private final int index;
+        private final String serverIp;
+        private final int serverPort;
+        private String scheme;
+
+        Connection(int index, String serverIp, int serverPort) {
+            this.index = index;
+            this.serverIp = serverIp;
+            this.serverPort = serverPort;
+            this.scheme = "http";
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getServerIp() {
+            return serverIp;
+        }
+
+        public int getServerPort() {
+            return serverPort;
+        }
+
+        public String getScheme() {
+            return scheme;
+        }
+
+        void setScheme(String scheme) {
+            this.scheme = scheme;
+        }
+    }
+
+    /**
+     * Bytes of one direction of a connection, in capture order across connections
+     */
+    public static class Segment {
+
+        private final Connection connection;
+        private final int type;
+        private final byte[] data;
+        // last segment of the connection, it is closed after this one
+        private boolean last;
+
+        Segment(Connection connection, int type, byte[] data) {
+            this.connection = connection;
+            this.type = type;
+            this.data = data;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+    }
+
+    public Connection newConnection(String serverIp, int serverPort) {
+        Connection connection = new Connection(connections.size(), serverIp, serverPort);
+        connections.add(connection);
+        return connection;
+    }
+
+    public void addSegment(Connection connection, int type, byte[] data) {
+        segments.add(new Segment(connection, type, data));
+        if (type == REQUEST) {
+            requestBytes += data.length;
+        } else if (type == RESPONSE) {
+            responseBytes += data.length;
+        }
+    }
+
+    /**
+     * Mark the last segment of each connection, call once all segments are added
+     */
+    public void finish() {
+        boolean[] closed = new boolean[connections.size()];
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            int index = segment.connection.index;
+            if (!closed[index]) {
+                segment.last = true;
+                closed[index] = true;
+            }
+        }
+    }
+
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+}
@@ -0,0 +1,229 @@
+package com.hello2mao.xlogging.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turn HAR entries back into HTTP/1.1 bytes. HAR keeps decoded bodies and no framing, so
+ * responses get Content-Length of the decoded body and no Content-Encoding, and HTTP/2
+ * entries are written as HTTP/1.1. Entries sharing "connection" share a connection.
+ */
+public class HarReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * @param file HAR file
+     * @return Capture
+     * @throws IOException if the file is not a HAR file
+     */
+    public static Capture read(File file) throws IOException {
+        Object har = Json.parse(new String(readFile(file), UTF_8));
+        Map<String, Object> log = getObject(getObject(har), "log");
+        Capture capture = new Capture();
+        Map<String, Capture.Connection> connections = new HashMap<>();
+        for (Object entryValue : getArray(log, "entries")) {
+            Map<String, Object> entry = getObject(entryValue);
+            Map<String, Object> request = getObject(entry, "request");
+            Map<String, Object> response = getObject(entry, "response");
+            URI uri;
+            try {
+                uri = new URI(getString(request, "url", ""));
+            } catch (URISyntaxException e) {
+                continue;
+            }
+            String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+            int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+            String serverIp = getString(entry, "serverIPAddress", "");
+            if (serverIp.startsWith("[") && serverIp.endsWith("]")) {
+                serverIp = serverIp.substring(1, serverIp.length() - 1);
+            }
+            String key = getString(entry, "connection", null);
+            Capture.Connection connection = key != null ? connections.get(key) : null;
+            if (connection == null) {
+                connection = capture.newConnection(serverIp, port);
+                connection.setScheme(scheme);
+                if (key != null) {
+                    connections.put(key, connection);
+                }
+            }
+            String method = getString(request, "method", "GET");
+            capture.addSegment(connection, Capture.REQUEST, toRequest(request, uri, method));
+            int status = getInt(response, "status", 0);
+            if (status <= 0) {
+                // failed, no response, the next request must not pair with this one
+                connections.remove(key);
+                continue;
+            }
+            capture.addSegment(connection, Capture.RESPONSE, toResponse(response, method));
+            if (status == 101) {
+                // upgraded, no more HTTP on this connection
+                connections.remove(key);
+            }
+        }
+        capture.finish();
+        return capture;
+    }
+
+    private static byte[] toRequest(Map<String, Object> request, URI uri, String method) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty()
+                ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String version = getString(request, "httpVersion", "").toUpperCase();
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append(' ').append(path).append(' ')
+                .append(version.equals("HTTP/1.0") ? version : "HTTP/1.1").append("\r\n");
+        boolean hostFound = false;
+        for (Object headerValue : getArray(request, "headers")) {
+            Map<String, Object> header = getObject(headerValue);
+            String name = getString(header, "name", "");
+            if (name.equalsIgnoreCase(":authority")) {
+                name = "Host";
+            }
+            if (name.isEmpty() || name.startsWith(":") || isFramingHeader(name)) {
+                continue;
+            }
+            hostFound |= name.equalsIgnoreCase("Host");
+            appendHeader(sb, name, getString(header, "value", ""));
+        }
+        if (!hostFound && uri.getRawAuthority() != null) {
+            appendHeader(sb, "Host", uri.getRawAuthority());
+        }
+        byte[] body = new byte[0];
+        Object postData = request.get("postData");
+        if (postData instanceof Map) {
+            body = getString(getObject(postData), "text", "").getBytes(UTF_8);
+        }
+        if (body.length > 0) {
+            appendHeader(sb, "Content-Length", String.valueOf(body.length));
+        }
+        sb.append("\r\n");
+        return concat(sb.toString().getBytes(ISO_8859_1), body);
+    }
+
+    private static byte[] toResponse(Map<String, Object> response, String method) {
+        int status = getInt(response, "status", 0);
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append(' ')
+                .append(getString(response, "statusText", "")).append("\r\n");
+        for (Object headerValue : getArray(response, "headers")) {
+            Map<String, Object> header = getObject(headerValue);
+            String name = getString(header, "name", "");
+            if (name.isEmpty() || name.startsWith(":") || isFramingHeader(name)
+                    || name.equalsIgnoreCase("Content-Encoding")) {
+                continue;
+            }
+            appendHeader(sb, name, getString(header, "value", ""));
+        }
+        byte[] body = new byte[0];
+        if (status >= 200 && status != 204 && status != 304 && !method.equals("HEAD")) {
+            body = getBody(getObject(response, "content"));
+            appendHeader(sb, "Content-Length", String.valueOf(body.length));
+        }
+        sb.append("\r\n");
+        return concat(sb.toString().getBytes(ISO_8859_1), body);
+    }
+
+    private static byte[] getBody(Map<String, Object> content) {
+        Object text = content.get("text");
+        if (text instanceof String) {
+            if ("base64".equals(content.get("encoding"))) {
+                try {
+                    return Base64.getMimeDecoder().decode((String) text);
+                } catch (IllegalArgumentException e) {
+                    return new byte[0];
+                }
+            }
+            return ((String) text).getBytes(UTF_8);
+        }
+        // body not saved, only its size
+        return new byte[Math.max(0, getInt(content, "size", 0))];
+    }
+
+    private static boolean isFramingHeader(String name) {
+        return name.equalsIgnoreCase("Content-Length")
+                || name.equalsIgnoreCase("Transfer-Encoding");
+    }
+
+    private static void appendHeader(StringBuilder sb, String name, String value) {
+        sb.append(name).append(": ").append(value).append("\r\n");
+    }
+
+    private static byte[] concat(byte[] head, byte[] body) {
+        byte[] bytes = new byte[head.length + body.length];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        System.arraycopy(body, 0, bytes, head.length, body.length);
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getObject(Object value) {
+        if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        return Collections.emptyMap();
+    }
+
+    private static Map<String, Object> getObject(Map<String, Object> object, String name) {
+        return getObject(object.get(name));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> getArray(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (value instanceof List) {
+            return (List<Object>) value;
+        }
+        return Collections.emptyList();
+    }
+
+    private static String getString(Map<String, Object> object, String name,
+                                    String defaultValue) {
+        Object value = object.get(name);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double) {
+            // e.g. "connection": 123 of some exporters
+            return String.valueOf(((Double) value).longValue());
+        }
+        return defaultValue;
+    }
+
+    private static int getInt(Map<String, Object> object, String name, int defaultValue) {
+        Object value = object.get(name);
+        if (value instanceof Double) {
+            return ((Double) value).intValue();
+        }
+        return defaultValue;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.hello2mao.xlogging.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Read TCP over IPv4/IPv6 from a classic pcap file, e.g. tcpdump -w. pcapng is not
+ * supported, convert it with editcap -F pcap. IP fragments are skipped.
+ */
+public class PcapReader {
+
+    private static final int MAGIC = 0xA1B2C3D4;
+    private static final int MAGIC_NANOS = 0xA1B23C4D;
+
+    // link types
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_IPV4 = 228;
+    private static final int LINKTYPE_IPV6 = 229;
+    private static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+
+    private static final int PROTOCOL_TCP = 6;
+
+    /**
+     * @param file pcap file
+     * @return Capture
+     * @throws IOException if the file is not a classic pcap
+     */
+    public static Capture read(File file) throws IOException {
+        Capture capture = new Capture();
+        TcpReassembler reassembler = new TcpReassembler(capture);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            int magic = in.readInt();
+            boolean swapped;
+            if (magic == MAGIC || magic == MAGIC_NANOS) {
+                swapped = false;
+            } else if (Integer.reverseBytes(magic) == MAGIC
+                    || Integer.reverseBytes(magic) == MAGIC_NANOS) {
+                swapped = true;
+            } else {
+                throw new IOException("Not a pcap file, magic=" + Integer.toHexString(magic));
+            }
+            // version, thiszone, sigfigs, snaplen
+            in.readFully(new byte[16]);
+            int linkType = readInt(in, swapped) & 0xFFFF;
+            byte[] packet = new byte[1 << 16];
+            while (true) {
+                int length;
+                try {
+                    // ts_sec, ts_usec
+                    in.readLong();
+                    length = readInt(in, swapped);
+                    // orig_len
+                    in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0) {
+                    throw new IOException("Bad packet length " + length);
+                }
+                if (length > packet.length) {
+                    packet = new byte[length];
+                }
+                try {
+                    in.readFully(packet, 0, length);
+                } catch (EOFException e) {
+                    // truncated capture
+                    break;
+                }
+                readLinkLayer(reassembler, linkType, packet, length);
+            }
+        } finally {
+            in.close();
+        }
+        capture.finish();
+        return capture;
+    }
+
+    private static int readInt(DataInputStream in, boolean swapped) throws IOException {
+        int value = in.readInt();
+        return swapped ? Integer.reverseBytes(value) : value;
+    }
+
+    private static void readLinkLayer(TcpReassembler reassembler, int linkType, byte[] packet,
+                                      int length) throws IOException {
+        int offset;
+        int etherType;
+        switch (linkType) {
+            case LINKTYPE_ETHERNET:
+                offset = 12;
+                etherType = readShort(packet, offset);
+                offset += 2;
+                while (etherType == ETHERTYPE_VLAN && offset + 4 <= length) {
+                    etherType = readShort(packet, offset + 2);
+                    offset += 4;
+                }
+                break;
+            case LINKTYPE_LINUX_SLL:
+                etherType = readShort(packet, 14);
+                offset = 16;
+                break;
+            case LINKTYPE_LINUX_SLL2:
+                etherType = readShort(packet, 0);
+                offset = 20;
+                break;
+            case LINKTYPE_NULL:
+                // address family in host byte order, AF_INET is 2 everywhere
+                int family = (packet[0] & 0xFF) | (packet[3] & 0xFF);
+                etherType = family == 2 ? ETHERTYPE_IPV4 : ETHERTYPE_IPV6;
+                offset = 4;
+                break;
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+            case LINKTYPE_IPV6:
+                etherType = (packet[0] & 0xF0) == 0x40 ? ETHERTYPE_IPV4 : ETHERTYPE_IPV6;
+                offset = 0;
+                break;
+            default:
+                throw new IOException("Unsupported link type " + linkType);
+        }
+        if (offset >= length) {
+            return;
+        }
+        if (etherType == ETHERTYPE_IPV4) {
+            readIpv4(reassembler, packet, offset, length);
+        } else if (etherType == ETHERTYPE_IPV6) {
+            readIpv6(reassembler, packet, offset, length);
+        }
+    }
+
+    private static void readIpv4(TcpReassembler reassembler, byte[] packet, int offset,
+                                 int length) throws IOException {
+        if (offset + 20 > length) {
+            return;
+        }
+        int headerLength = (packet[offset] & 0x0F) * 4;
+        int totalLength = readShort(packet, offset + 2);
+        int fragment = readShort(packet, offset + 6);
+        // more fragments or fragment offset
+        if ((fragment & 0x3FFF) != 0 || packet[offset + 9] != PROTOCOL_TCP) {
+            return;
+        }
+        String srcIp = getAddress(packet, offset + 12, 4);
+        String dstIp = getAddress(packet, offset + 16, 4);
+        // Ethernet pads short frames, the IP length tells where the segment ends
+        int end = Math.min(length, offset + totalLength);
+        readTcp(reassembler, srcIp, dstIp, packet, offset + headerLength, end);
+    }
+
+    private static void readIpv6(TcpReassembler reassembler, byte[] packet, int offset,
+                                 int length) throws IOException {
+        if (offset + 40 > length) {
+            return;
+        }
+        int payloadLength = readShort(packet, offset + 4);
+        // extension headers are not followed
+        if (packet[offset + 6] != PROTOCOL_TCP) {
+            return;
+        }
+        String srcIp = getAddress(packet, offset + 8, 16);
+        String dstIp = getAddress(packet, offset + 24, 16);
+        int end = Math.min(length, offset + 40 + payloadLength);
+        readTcp(reassembler, srcIp, dstIp, packet, offset + 40, end);
+    }
+
+    private static void readTcp(TcpReassembler reassembler, String srcIp, String dstIp,
+                                byte[] packet, int offset, int end) {
+        if (offset + 20 > end) {
+            return;
+        }
+        int srcPort = readShort(packet, offset);
+        int dstPort = readShort(packet, offset + 2);
+        long seq = readInt(packet, offset + 4) & 0xFFFFFFFFL;
+        int headerLength = ((packet[offset + 12] & 0xF0) >> 4) * 4;
+        int flags = packet[offset + 13] & 0x3F;
+        int payloadOffset = Math.min(offset + headerLength, end);
+        reassembler.segment(srcIp, srcPort, dstIp, dstPort, seq, flags, packet, payloadOffset,
+                end - payloadOffset);
+    }
+
+    private static String getAddress(byte[] packet, int offset, int length)
+            throws IOException {
+        byte[] address = new byte[length];
+        System.arraycopy(packet, offset, address, 0, length);
+        // a literal address, no DNS query
+        return InetAddress.getByAddress(address).getHostAddress();
+    }
+
+    private static int readShort(byte[] packet, int offset) {
+        return ((packet[offset] & 0xFF) << 8) | (packet[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] packet, int offset) {
+        return (readShort(packet, offset) << 16) | readShort(packet, offset + 2);
+    }
+}
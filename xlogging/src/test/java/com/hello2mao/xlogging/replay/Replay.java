@@ -0,0 +1,182 @@
+package com.hello2mao.xlogging.replay;
+
+import com.hello2mao.xlogging.TransactionData;
+import com.hello2mao.xlogging.XLogging;
+import com.hello2mao.xlogging.XLoggingCallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replay a pcap or HAR capture through the request and response parsers on the JVM,
+ * no device needed, and print the TransactionData and throughput.
+ *
+ * Usage: Replay [-q] [-v] [-n passes] [-b readBufferSize] [-m] capture.pcap|capture.har
+ *   -q  no records, throughput only
+ *   -v  print whole records instead of one line each
+ *   -n  timed passes, default 1
+ *   -b  bytes per response read, default 65536
+ *   -m  print MetricsData after the last pass
+ *
+ * Records are printed by an untimed first pass. Timed passes feed every segment
+ * back to back, so times inside the records are replay times, not capture times.
+ * Only plaintext is parsed, TLS connections of a pcap end up in no record.
+ *
+ * From Gradle: ./gradlew :xlogging:replay -PreplayArgs="-n 5 capture.pcap"
+ */
+public class Replay {
+
+    private static final PrintStream out = System.out;
+
+    public static void main(String[] args) throws IOException {
+        boolean quiet = false;
+        boolean verbose = false;
+        boolean metrics = false;
+        int passes = 1;
+        int readBufferSize = 1 << 16;
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-q")) {
+                quiet = true;
+            } else if (arg.equals("-v")) {
+                verbose = true;
+            } else if (arg.equals("-m")) {
+                metrics = true;
+            } else if (arg.equals("-n") && i + 1 < args.length) {
+                passes = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-b") && i + 1 < args.length) {
+                readBufferSize = Integer.parseInt(args[++i]);
+            } else if (!arg.startsWith("-") && path == null) {
+                path = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (path == null || passes < 1 || readBufferSize < 1) {
+            usage();
+            return;
+        }
+
+        File file = new File(path);
+        long loadStartTime = System.nanoTime();
+        Capture capture = path.toLowerCase(Locale.US).endsWith(".har")
+                ? HarReader.read(file) : PcapReader.read(file);
+        out.printf(Locale.US, "Loaded %s: %d connections, %d segments, %d request bytes, "
+                        + "%d response bytes in %.1f ms%n", file.getName(),
+                capture.getConnections().size(), capture.getSegments().size(),
+                capture.getRequestBytes(), capture.getResponseBytes(),
+                (System.nanoTime() - loadStartTime) / 1e6);
+
+        CountingCallback callback = new CountingCallback();
+        XLogging.setCallback(callback);
+        if (!quiet) {
+            callback.printing = true;
+            callback.verbose = verbose;
+            replay(capture, readBufferSize);
+            callback.printing = false;
+            out.println();
+        }
+
+        long bytes = capture.getRequestBytes() + capture.getResponseBytes();
+        long totalTime = 0;
+        long totalRecords = 0;
+        for (int pass = 1; pass <= passes; pass++) {
+            callback.records = 0;
+            long startTime = System.nanoTime();
+            replay(capture, readBufferSize);
+            long time = System.nanoTime() - startTime;
+            totalTime += time;
+            totalRecords += callback.records;
+            printThroughput("Pass " + pass, bytes, callback.records, time);
+        }
+        if (passes > 1) {
+            printThroughput("Total", bytes * passes, totalRecords, totalTime);
+        }
+        if (metrics) {
+            out.println();
+            out.println(XLogging.getMetricsData());
+        }
+    }
+
+    private static void replay(Capture capture, int readBufferSize) throws IOException {
+        List<Capture.Connection> connections = capture.getConnections();
+        ReplayConnection[] replayConnections = new ReplayConnection[connections.size()];
+        for (Capture.Segment segment : capture.getSegments()) {
+            int index = segment.getConnection().getIndex();
+            ReplayConnection replayConnection = replayConnections[index];
+            if (replayConnection == null) {
+                replayConnection = new ReplayConnection(segment.getConnection(), readBufferSize);
+                replayConnections[index] = replayConnection;
+            }
+            switch (segment.getType()) {
+                case Capture.REQUEST:
+                    replayConnection.write(segment.getData());
+                    break;
+                case Capture.RESPONSE:
+                    replayConnection.read(segment.getData());
+                    break;
+                default:
+                    replayConnection.endOfStream();
+                    break;
+            }
+            if (segment.isLast()) {
+                replayConnection.close();
+                replayConnections[index] = null;
+            }
+        }
+    }
+
+    private static void printThroughput(String name, long bytes, long records, long nanos) {
+        double seconds = nanos / 1e9;
+        out.printf(Locale.US, "%s: %d records, %d bytes in %.1f ms, %.1f MB/s, "
+                        + "%.0f records/s%n", name, records, bytes, nanos / 1e6,
+                bytes / seconds / (1 << 20), records / seconds);
+    }
+
+    private static void usage() {
+        out.println("Usage: Replay [-q] [-v] [-n passes] [-b readBufferSize] [-m] "
+                + "capture.pcap|capture.har");
+    }
+
+    private static class CountingCallback implements XLoggingCallback {
+
+        private long records;
+        private boolean printing;
+        private boolean verbose;
+
+        @Override
+        public void handle(TransactionData transactionData) {
+            records++;
+            if (!printing) {
+                return;
+            }
+            if (verbose) {
+                out.println(transactionData);
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(transactionData.getRequestMethod()).append(' ')
+                    .append(transactionData.getScheme()).append("://")
+                    .append(transactionData.getHost()).append(':')
+                    .append(transactionData.getPort())
+                    .append(transactionData.getPathAndQuery()).append(' ')
+                    .append(transactionData.getStatusCode()).append(' ')
+                    .append(transactionData.getProtocol())
+                    .append(" sent=").append(transactionData.getBytesSent())
+                    .append(" received=").append(transactionData.getBytesReceived());
+            if (transactionData.isStreaming()) {
+                sb.append(" streaming");
+            }
+            if (transactionData.getException() != null
+                    && !transactionData.getException().isEmpty()) {
+                sb.append(" exception=").append(transactionData.getException());
+            }
+            out.println(sb);
+        }
+    }
+}
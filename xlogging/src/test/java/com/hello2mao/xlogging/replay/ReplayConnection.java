@@ -0,0 +1,193 @@
+package com.hello2mao.xlogging.replay;
+
+import com.hello2mao.xlogging.internal.Http2Connection;
+import com.hello2mao.xlogging.internal.MonitoredSocket;
+import com.hello2mao.xlogging.internal.TransactionState;
+import com.hello2mao.xlogging.internal.WebSocketConnection;
+import com.hello2mao.xlogging.internal.io.IOInstrument;
+import com.hello2mao.xlogging.internal.io.ParsingInputStream;
+import com.hello2mao.xlogging.internal.io.ParsingOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * MonitoredSocket of one replayed connection. Request bytes are written to a
+ * ParsingOutputStream over a sink, response bytes are read from a ParsingInputStream
+ * over the segment being replayed, same as an app reading a socket.
+ */
+public class ReplayConnection implements MonitoredSocket {
+
+    private final Capture.Connection connection;
+    private final SegmentInputStream segmentInputStream;
+    private final ParsingInputStream parsingInputStream;
+    private final ParsingOutputStream parsingOutputStream;
+    private final byte[] readBuffer;
+    private final Queue<TransactionState> queue;
+    private Http2Connection http2Connection;
+    private WebSocketConnection webSocketConnection;
+    private boolean sslWrapped;
+
+    public ReplayConnection(Capture.Connection connection, int readBufferSize) {
+        this.connection = connection;
+        this.segmentInputStream = new SegmentInputStream();
+        this.readBuffer = new byte[readBufferSize];
+        this.queue = new LinkedList<>();
+        this.parsingOutputStream = IOInstrument.instrumentOutputStream(this, new SinkOutputStream(),
+                null);
+        this.parsingInputStream = IOInstrument.instrumentInputStream(this, segmentInputStream,
+                null);
+    }
+
+    public void write(byte[] data) throws IOException {
+        parsingOutputStream.write(data, 0, data.length);
+    }
+
+    public void read(byte[] data) throws IOException {
+        segmentInputStream.setSegment(data);
+        while (segmentInputStream.available() > 0) {
+            parsingInputStream.read(readBuffer, 0, readBuffer.length);
+        }
+    }
+
+    /**
+     * Same as write(byte[]) one write(int) at a time
+     */
+    public void writeByByte(byte[] data) throws IOException {
+        for (byte b : data) {
+            parsingOutputStream.write(b & 0xFF);
+        }
+    }
+
+    /**
+     * Same as read(byte[]) one read() at a time
+     */
+    public void readByByte(byte[] data) throws IOException {
+        segmentInputStream.setSegment(data);
+        while (segmentInputStream.available() > 0) {
+            parsingInputStream.read();
+        }
+    }
+
+    public void endOfStream() throws IOException {
+        segmentInputStream.setSegment(null);
+        parsingInputStream.read(readBuffer, 0, readBuffer.length);
+    }
+
+    public void close() {
+        parsingOutputStream.notifySocketClosing();
+        parsingInputStream.notifySocketClosing();
+    }
+
+    @Override
+    public TransactionState createTransactionState() {
+        TransactionState transactionState = new TransactionState();
+        // no reverse lookup for requests without Host
+        transactionState.setHost(connection.getServerIp());
+        transactionState.setIp(connection.getServerIp());
+        transactionState.setPort(connection.getServerPort());
+        transactionState.setScheme(connection.getScheme());
+        return transactionState;
+    }
+
+    @Override
+    public void enqueueTransactionState(TransactionState transactionState) {
+        queue.add(transactionState);
+    }
+
+    @Override
+    public TransactionState dequeueTransactionState() {
+        return queue.poll();
+    }
+
+    @Override
+    public String getName() {
+        return ReplayConnection.class.getSimpleName();
+    }
+
+    @Override
+    public Http2Connection getHttp2Connection() {
+        return http2Connection;
+    }
+
+    @Override
+    public void setHttp2Connection(Http2Connection http2Connection) {
+        this.http2Connection = http2Connection;
+        parsingInputStream.setNextParser(parsingInputStream.getInitialParser());
+    }
+
+    @Override
+    public WebSocketConnection getWebSocketConnection() {
+        return webSocketConnection;
+    }
+
+    @Override
+    public void setWebSocketConnection(WebSocketConnection webSocketConnection) {
+        this.webSocketConnection = webSocketConnection;
+        parsingOutputStream.setNextParser(parsingOutputStream.getInitialParser());
+    }
+
+    @Override
+    public boolean isSslWrapped() {
+        return sslWrapped;
+    }
+
+    /**
+     * Same as a plain socket under a monitored SSL socket
+     */
+    public void setSslWrapped(boolean sslWrapped) {
+        this.sslWrapped = sslWrapped;
+    }
+
+    /**
+     * Serves one segment at a time, -1 once the server closed its side
+     */
+    private static class SegmentInputStream extends InputStream {
+
+        private byte[] segment;
+        private int position;
+
+        void setSegment(byte[] segment) {
+            this.segment = segment;
+            this.position = 0;
+        }
+
+        @Override
+        public int available() {
+            return segment == null ? 0 : segment.length - position;
+        }
+
+        @Override
+        public int read() {
+            if (segment == null || position == segment.length) {
+                return -1;
+            }
+            return segment[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (segment == null) {
+                return -1;
+            }
+            int count = Math.min(length, segment.length - position);
+            System.arraycopy(segment, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    private static class SinkOutputStream extends OutputStream {
+
+        @Override
+        public void write(int oneByte) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) {
+        }
+    }
+}
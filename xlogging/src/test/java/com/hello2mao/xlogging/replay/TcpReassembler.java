@@ -0,0 +1,185 @@
+package com.hello2mao.xlogging.replay;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reassemble TCP segments into in-order byte streams per connection and direction.
+ * Retransmissions are dropped, overlaps trimmed and out-of-order segments held until
+ * the gap is filled. A connection captured mid-stream starts at its first segment.
+ */
+public class TcpReassembler {
+
+    private static final int FIN = 0x01;
+    private static final int SYN = 0x02;
+    private static final int RST = 0x04;
+    private static final int ACK = 0x10;
+
+    private static final String[] METHODS = {"GET ", "POST ", "PUT ", "DELETE ", "HEAD ",
+            "OPTIONS ", "PATCH ", "TRACE ", "CONNECT ", "PRI * "};
+
+    private final Capture capture;
+    private final Map<String, Flow> flows = new HashMap<>();
+
+    public TcpReassembler(Capture capture) {
+        this.capture = capture;
+    }
+
+    private class Direction {
+
+        private final int type;
+        // relative sequence numbers from the first byte, so one wrap-around is fine
+        private long initialSeq = -1L;
+        private long nextSeq;
+        private long finSeq = -1L;
+        private final TreeMap<Long, byte[]> pending = new TreeMap<>();
+
+        Direction(int type) {
+            this.type = type;
+        }
+
+        void syn(long seq) {
+            if (initialSeq == -1L) {
+                this.initialSeq = (seq + 1) & 0xFFFFFFFFL;
+            }
+        }
+
+        void segment(Flow flow, long seq, byte[] packet, int offset, int length, boolean fin) {
+            if (initialSeq == -1L) {
+                this.initialSeq = seq;
+            }
+            long relative = (seq - initialSeq) & 0xFFFFFFFFL;
+            if (fin) {
+                this.finSeq = relative + length;
+            }
+            if (length > 0) {
+                if (relative > nextSeq) {
+                    byte[] held = pending.get(relative);
+                    if (held == null || held.length < length) {
+                        byte[] data = new byte[length];
+                        System.arraycopy(packet, offset, data, 0, length);
+                        pending.put(relative, data);
+                    }
+                } else {
+                    deliver(flow, relative, packet, offset, length);
+                    while (!pending.isEmpty() && pending.firstKey() <= nextSeq) {
+                        Map.Entry<Long, byte[]> entry = pending.pollFirstEntry();
+                        byte[] data = entry.getValue();
+                        deliver(flow, entry.getKey(), data, 0, data.length);
+                    }
+                }
+            }
+            if (finSeq != -1L && nextSeq >= finSeq && type == Capture.RESPONSE) {
+                capture.addSegment(flow.connection, Capture.END_OF_STREAM, new byte[0]);
+                this.finSeq = Long.MAX_VALUE;
+            }
+        }
+
+        private void deliver(Flow flow, long relative, byte[] packet, int offset, int length) {
+            long skip = nextSeq - relative;
+            if (skip >= length) {
+                // retransmission
+                return;
+            }
+            byte[] data = new byte[length - (int) skip];
+            System.arraycopy(packet, offset + (int) skip, data, 0, data.length);
+            capture.addSegment(flow.connection, type, data);
+            nextSeq += data.length;
+        }
+    }
+
+    private class Flow {
+
+        private final String clientAddress;
+        private final Capture.Connection connection;
+        private final Direction request = new Direction(Capture.REQUEST);
+        private final Direction response = new Direction(Capture.RESPONSE);
+        private boolean closed;
+
+        Flow(String clientAddress, String serverIp, int serverPort) {
+            this.clientAddress = clientAddress;
+            this.connection = capture.newConnection(serverIp, serverPort);
+        }
+    }
+
+    /**
+     * One TCP segment of the capture
+     *
+     * @param srcIp String
+     * @param srcPort int
+     * @param dstIp String
+     * @param dstPort int
+     * @param seq sequence number, unsigned
+     * @param flags TCP flags
+     * @param packet byte[] holding the payload
+     * @param offset payload offset
+     * @param length payload length
+     */
+    public void segment(String srcIp, int srcPort, String dstIp, int dstPort, long seq,
+                        int flags, byte[] packet, int offset, int length) {
+        String src = srcIp + ":" + srcPort;
+        String dst = dstIp + ":" + dstPort;
+        String key = src.compareTo(dst) < 0 ? src + "-" + dst : dst + "-" + src;
+        Flow flow = flows.get(key);
+        boolean syn = (flags & SYN) != 0;
+        boolean ack = (flags & ACK) != 0;
+        if (flow != null && flow.closed && syn) {
+            // port reused by a new connection
+            flows.remove(key);
+            flow = null;
+        }
+        if (flow == null) {
+            boolean fromClient;
+            if (syn) {
+                fromClient = !ack;
+            } else if (length > 0) {
+                fromClient = isFromClient(packet, offset, length, srcPort, dstPort);
+            } else {
+                // direction unknown until a SYN or payload
+                return;
+            }
+            flow = fromClient ? new Flow(src, dstIp, dstPort) : new Flow(dst, srcIp, srcPort);
+            flows.put(key, flow);
+        }
+        if (flow.closed) {
+            return;
+        }
+        Direction direction = src.equals(flow.clientAddress) ? flow.request : flow.response;
+        if (syn) {
+            direction.syn(seq);
+            return;
+        }
+        if ((flags & RST) != 0) {
+            flow.closed = true;
+            return;
+        }
+        direction.segment(flow, seq, packet, offset, length, (flags & FIN) != 0);
+    }
+
+    private static boolean isFromClient(byte[] packet, int offset, int length, int srcPort,
+                                        int dstPort) {
+        if (startsWith(packet, offset, length, "HTTP/")) {
+            return false;
+        }
+        for (String method : METHODS) {
+            if (startsWith(packet, offset, length, method)) {
+                return true;
+            }
+        }
+        // the server usually has the lower port
+        return dstPort < srcPort;
+    }
+
+    private static boolean startsWith(byte[] packet, int offset, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (packet[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}